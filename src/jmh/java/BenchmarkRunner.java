@@ -0,0 +1,41 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count and writes one JMH JSON result file per
+ * run, so results can be diffed between releases.
+ *
+ * System properties:
+ * - jmh.threads: comma-separated thread counts (default 1)
+ * - jmh.resultDir: directory for results-t&lt;threads&gt;.json (default build/reports/jmh)
+ *
+ * Arguments are ordinary JMH command-line options (benchmark regex, -p, -f, ...).
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        Path dir = Paths.get(System.getProperty("jmh.resultDir", "build/reports/jmh"));
+        Files.createDirectories(dir);
+        for (String count : System.getProperty("jmh.threads", "1").split(",")) {
+            int threads = Integer.parseInt(count.trim());
+            Options options = new OptionsBuilder()
+                    .parent(cli)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(dir.resolve("results-t" + threads + ".json").toString())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the Checkout operations whose cost depends on catalog and patron
+ * counts. The catalog is shared by all benchmark threads; the thread count is chosen
+ * by BenchmarkRunner (or JMH's -t option).
+ *
+ * Checkouts and returns are measured together as one round trip, which keeps the
+ * inventory steady without per-invocation fixtures (JMH warns those distort timings
+ * of operations this short). Round trips where another thread held the last copy,
+ * or the patron was at the limit, take the refusal path instead; they are reported
+ * as the refusedCheckouts and missedReturns counters next to the timings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CheckoutBenchmark {
+    private static final int SAMPLE = 1 << 16;
+    private static final long FIRST_KEY = 9_780_000_000_000L;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    int catalogSize;
+
+    @Param({"1000", "100000"})
+    int patronCount;
+
+    @Param({"heap", "offheap"})
+    String backend;
+
+    Checkout checkout;
+    Map<String, Book> inventory;
+    String[] isbns;
+    Patron[] patrons;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        checkout = "offheap".equals(backend)
+                ? new Checkout(new OffHeapInventory(catalogSize))
+                : new Checkout(catalogSize, patronCount);
+        Book.BookType[] types = Book.BookType.values();
+        for (int i = 0; i < catalogSize; i++) {
+            checkout.addBook(new Book(IsbnKeys.toIsbn13(FIRST_KEY + i), "Title " + i, "Author " + (i % 5000),
+                    types[i % types.length], 1 + i % 3));
+        }
+        patrons = new Patron[patronCount];
+        Patron.PatronType[] patronTypes = Patron.PatronType.values();
+        for (int i = 0; i < patronCount; i++) {
+            patrons[i] = new Patron(String.format("P-%07d", i), "Patron " + i, "p" + i + "@example.com",
+                    patronTypes[i % patronTypes.length]);
+            checkout.registerPatron(patrons[i]);
+        }
+        inventory = checkout.getInventory();
+
+        // A fixed random sample of ISBNs, so large catalogs are touched everywhere
+        SplittableRandom random = new SplittableRandom(42);
+        isbns = new String[SAMPLE];
+        for (int i = 0; i < SAMPLE; i++) {
+            isbns[i] = IsbnKeys.toIsbn13(FIRST_KEY + random.nextInt(catalogSize));
+        }
+    }
+
+    /**
+     * Per-thread random choice of patron and ISBN.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        SplittableRandom random;
+        CheckoutBenchmark shared;
+        Patron patron;
+        String isbn;
+
+        @Setup(Level.Trial)
+        public void setUp(CheckoutBenchmark benchmark) {
+            shared = benchmark;
+            random = new SplittableRandom(System.identityHashCode(this));
+        }
+
+        void next() {
+            patron = shared.patrons[random.nextInt(shared.patrons.length)];
+            isbn = shared.isbns[random.nextInt(SAMPLE)];
+        }
+    }
+
+    /**
+     * A Cursor that counts the round trips that did not complete.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RoundTrip extends Cursor {
+        public long refusedCheckouts;
+        public long missedReturns;
+
+        @Setup(Level.Iteration)
+        public void resetCounts() {
+            refusedCheckouts = 0;
+            missedReturns = 0;
+        }
+    }
+
+    @Benchmark
+    public void checkoutThenReturn(RoundTrip trip, Blackhole blackhole) {
+        trip.next();
+        double code = checkout.checkoutBook(inventory.get(trip.isbn), trip.patron);
+        double fine = checkout.returnBook(trip.isbn, trip.patron);
+        if (code >= 2.0) {
+            trip.refusedCheckouts++;
+        }
+        if (fine < 0) {
+            trip.missedReturns++;
+        }
+        blackhole.consume(code);
+        blackhole.consume(fine);
+    }
+
+    @Benchmark
+    public int countBooksByType(Cursor cursor) {
+        Book.BookType[] types = Book.BookType.values();
+        return checkout.countBooksByType(types[cursor.random.nextInt(types.length)], cursor.random.nextBoolean());
+    }
+
+    @Benchmark
+    public double validatePatronEligibility(Cursor cursor) {
+        return checkout.validatePatronEligibility(patrons[cursor.random.nextInt(patrons.length)]);
+    }
+}
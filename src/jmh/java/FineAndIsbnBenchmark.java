@@ -0,0 +1,61 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the pure computations calculateFine and isValidISBN. Neither depends on
+ * catalog or patron counts, so they are only varied by thread count.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FineAndIsbnBenchmark {
+    private static final int SAMPLE = 1024;
+    private static final int MASK = SAMPLE - 1;
+
+    Checkout checkout;
+    int[] days;
+    Book.BookType[] types;
+    String[] isbns;
+    int next;
+
+    @Setup
+    public void setUp() {
+        checkout = new Checkout();
+        SplittableRandom random = new SplittableRandom(42);
+        Book.BookType[] all = Book.BookType.values();
+        days = new int[SAMPLE];
+        types = new Book.BookType[SAMPLE];
+        isbns = new String[SAMPLE];
+        String[] shapes = {"978-0-306-40615-7", "9780306406157", "0-306-40615-2", "080442957X", "978-0-306", ""};
+        for (int i = 0; i < SAMPLE; i++) {
+            days[i] = random.nextInt(-5, 60);
+            types[i] = all[random.nextInt(all.length)];
+            isbns[i] = shapes[random.nextInt(shapes.length)];
+        }
+    }
+
+    @Benchmark
+    public double calculateFine() {
+        int i = next++ & MASK;
+        return checkout.calculateFine(days[i], types[i]);
+    }
+
+    @Benchmark
+    public boolean isValidISBN() {
+        return checkout.isValidISBN(isbns[next++ & MASK]);
+    }
+}
@@ -0,0 +1,326 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A block of archived (returned) loans stored column by column: one primitive array
+ * per field, with patron IDs and ISBNs dictionary-encoded as int codes into a table of
+ * the distinct strings. Columns compress well and can be scanned without creating an
+ * object per loan. Instances are immutable once built.
+ */
+final class ArchiveSegment {
+    /** Return day of a loan that is still open (analytics snapshots only). */
+    static final int OPEN = Integer.MAX_VALUE;
+    /** Journal offset of a segment whose loans were not journaled. */
+    static final long NO_JOURNAL_OFFSET = -1;
+
+    final int size;
+    final long journalOffset; // TransactionJournal offset just past the last loan's RETURN
+    final String[] patronIds; // distinct patron IDs
+    final int[] patronCodes;  // per loan, index into patronIds
+    final String[] isbns;     // distinct ISBNs
+    final int[] isbnCodes;    // per loan, index into isbns
+    final byte[] patronTypes; // PatronType ordinals
+    final byte[] bookTypes;   // BookType ordinal + 1, 0 for a book without a type
+    final int[] checkoutDays; // epoch days
+    final int[] dueDays;
+    final int[] returnDays;
+    final long[] fineCents;
+
+    private ArchiveSegment(int size, long journalOffset, String[] patronIds, int[] patronCodes, String[] isbns,
+            int[] isbnCodes, byte[] patronTypes, byte[] bookTypes, int[] checkoutDays, int[] dueDays,
+            int[] returnDays, long[] fineCents) {
+        this.size = size;
+        this.journalOffset = journalOffset;
+        this.patronIds = patronIds;
+        this.patronCodes = patronCodes;
+        this.isbns = isbns;
+        this.isbnCodes = isbnCodes;
+        this.patronTypes = patronTypes;
+        this.bookTypes = bookTypes;
+        this.checkoutDays = checkoutDays;
+        this.dueDays = dueDays;
+        this.returnDays = returnDays;
+        this.fineCents = fineCents;
+    }
+
+    /**
+     * Accumulates loans for one segment. Not thread-safe.
+     */
+    static final class Builder {
+        private final Map<String, Integer> patronDictionary = new HashMap<>();
+        private final Map<String, Integer> isbnDictionary = new HashMap<>();
+        private String[] patronIds = new String[64];
+        private String[] isbns = new String[64];
+        private final int[] patronCodes;
+        private final int[] isbnCodes;
+        private final byte[] patronTypes;
+        private final byte[] bookTypes;
+        private final int[] checkoutDays;
+        private final int[] dueDays;
+        private final int[] returnDays;
+        private final long[] fineCents;
+        private int size;
+        private long journalOffset = NO_JOURNAL_OFFSET;
+
+        Builder(int capacity) {
+            patronCodes = new int[capacity];
+            isbnCodes = new int[capacity];
+            patronTypes = new byte[capacity];
+            bookTypes = new byte[capacity];
+            checkoutDays = new int[capacity];
+            dueDays = new int[capacity];
+            returnDays = new int[capacity];
+            fineCents = new long[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isFull() {
+            return size == patronCodes.length;
+        }
+
+        void add(String patronId, Patron.PatronType patronType, String isbn, Book.BookType bookType,
+                int checkoutDay, int dueDay, int returnDay, long fine) {
+            patronCodes[size] = code(patronDictionary, patronId, true);
+            isbnCodes[size] = code(isbnDictionary, isbn, false);
+            patronTypes[size] = (byte) patronType.ordinal();
+            bookTypes[size] = (byte) (bookType == null ? 0 : bookType.ordinal() + 1);
+            checkoutDays[size] = checkoutDay;
+            dueDays[size] = dueDay;
+            returnDays[size] = returnDay;
+            fineCents[size] = fine;
+            size++;
+        }
+
+        /**
+         * Records the journal offset just past the RETURN record of the last loan added.
+         */
+        void setJournalOffset(long offset) {
+            journalOffset = offset;
+        }
+
+        private int code(Map<String, Integer> dictionary, String value, boolean patron) {
+            Integer code = dictionary.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.put(value, code);
+                if (patron) {
+                    if (code == patronIds.length) {
+                        patronIds = Arrays.copyOf(patronIds, code * 2);
+                    }
+                    patronIds[code] = value;
+                } else {
+                    if (code == isbns.length) {
+                        isbns = Arrays.copyOf(isbns, code * 2);
+                    }
+                    isbns[code] = value;
+                }
+            }
+            return code;
+        }
+
+        /**
+         * Returns an immutable copy of the loans added so far.
+         */
+        ArchiveSegment build() {
+            return new ArchiveSegment(size, journalOffset, Arrays.copyOf(patronIds, patronDictionary.size()),
+                    Arrays.copyOf(patronCodes, size), Arrays.copyOf(isbns, isbnDictionary.size()),
+                    Arrays.copyOf(isbnCodes, size), Arrays.copyOf(patronTypes, size),
+                    Arrays.copyOf(bookTypes, size), Arrays.copyOf(checkoutDays, size),
+                    Arrays.copyOf(dueDays, size), Arrays.copyOf(returnDays, size), Arrays.copyOf(fineCents, size));
+        }
+    }
+
+    /**
+     * Serializes the columns and deflates them.
+     *
+     * @return The uncompressed length as an int, followed by the deflated columns
+     */
+    byte[] compress() {
+        byte[][] patronBytes = utf8(patronIds);
+        byte[][] isbnBytes = utf8(isbns);
+        int rawLength = 4 + length(patronBytes) + length(isbnBytes) + size * (4 + 4 + 1 + 1 + 4 + 4 + 4 + 8);
+        ByteBuffer raw = ByteBuffer.allocate(rawLength);
+        raw.putInt(size);
+        putStrings(raw, patronBytes);
+        putStrings(raw, isbnBytes);
+        putInts(raw, patronCodes);
+        putInts(raw, isbnCodes);
+        raw.put(patronTypes);
+        raw.put(bookTypes);
+        // Dates relative to the return day, which is nearly constant within a segment
+        putInts(raw, returnDays);
+        for (int i = 0; i < size; i++) {
+            raw.putInt(returnDays[i] - checkoutDays[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            raw.putInt(dueDays[i] - checkoutDays[i]);
+        }
+        raw.asLongBuffer().put(fineCents);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rawLength / 4 + 64);
+        out.write(rawLength >>> 24);
+        out.write(rawLength >>> 16);
+        out.write(rawLength >>> 8);
+        out.write(rawLength);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw.array());
+            deflater.finish();
+            byte[] chunk = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads columns written by compress().
+     *
+     * @param data The bytes returned by compress()
+     * @param journalOffset The segment's journal offset, which compress() does not store
+     * @return The segment
+     * @throws IOException If the data is not a valid segment
+     */
+    static ArchiveSegment decompress(byte[] data, long journalOffset) throws IOException {
+        int rawLength = ByteBuffer.wrap(data).getInt();
+        byte[] rawBytes = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, 4, data.length - 4);
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(rawBytes, n, rawLength - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != rawLength) {
+                throw new IOException("Truncated archive segment");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt archive segment", e);
+        } finally {
+            inflater.end();
+        }
+
+        ByteBuffer raw = ByteBuffer.wrap(rawBytes);
+        int size = raw.getInt();
+        String[] patronIds = getStrings(raw);
+        String[] isbns = getStrings(raw);
+        int[] patronCodes = getInts(raw, size);
+        int[] isbnCodes = getInts(raw, size);
+        byte[] patronTypes = new byte[size];
+        raw.get(patronTypes);
+        byte[] bookTypes = new byte[size];
+        raw.get(bookTypes);
+        int[] returnDays = getInts(raw, size);
+        int[] checkoutDays = getInts(raw, size);
+        int[] dueDays = getInts(raw, size);
+        for (int i = 0; i < size; i++) {
+            checkoutDays[i] = returnDays[i] - checkoutDays[i];
+            dueDays[i] += checkoutDays[i];
+        }
+        long[] fineCents = new long[size];
+        raw.asLongBuffer().get(fineCents);
+        return new ArchiveSegment(size, journalOffset, patronIds, patronCodes, isbns, isbnCodes, patronTypes,
+                bookTypes, checkoutDays, dueDays, returnDays, fineCents);
+    }
+
+    private static byte[][] utf8(String[] values) {
+        byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = values[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    private static int length(byte[][] strings) {
+        int length = 4;
+        for (byte[] string : strings) {
+            length += 4 + string.length;
+        }
+        return length;
+    }
+
+    private static void putStrings(ByteBuffer raw, byte[][] strings) {
+        raw.putInt(strings.length);
+        for (byte[] string : strings) {
+            raw.putInt(string.length);
+            raw.put(string);
+        }
+    }
+
+    private static String[] getStrings(ByteBuffer raw) {
+        String[] values = new String[raw.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            int length = raw.getInt();
+            values[i] = new String(raw.array(), raw.position(), length, StandardCharsets.UTF_8);
+            raw.position(raw.position() + length);
+        }
+        return values;
+    }
+
+    private static void putInts(ByteBuffer raw, int[] values) {
+        raw.asIntBuffer().put(values);
+        raw.position(raw.position() + values.length * 4);
+    }
+
+    private static int[] getInts(ByteBuffer raw, int count) {
+        int[] values = new int[count];
+        raw.asIntBuffer().get(values);
+        raw.position(raw.position() + count * 4);
+        return values;
+    }
+
+    /**
+     * Builds a Bloom filter over keys (about 10 bits per key, 3 probes, ~2% false
+     * positives), so a lookup can skip segments that cannot contain a key.
+     */
+    static long[] filter(String[] keys) {
+        int bits = Integer.highestOneBit(Math.max(64, keys.length * 10 - 1)) << 1;
+        long[] filter = new long[bits >>> 6];
+        for (String key : keys) {
+            long hash = hash(key);
+            for (int i = 0; i < 3; i++) {
+                int bit = (int) (hash + i * (hash >>> 32)) & (bits - 1);
+                filter[bit >>> 6] |= 1L << bit;
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Returns false if the key was certainly not in the filter's keys.
+     */
+    static boolean mightContain(long[] filter, String key) {
+        int mask = (filter.length << 6) - 1;
+        long hash = hash(key);
+        for (int i = 0; i < 3; i++) {
+            int bit = (int) (hash + i * (hash >>> 32)) & mask;
+            if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash(String key) {
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+}
@@ -1,19 +1,27 @@
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * Represents a book in the library system.
  * Books have ISBN numbers, metadata, and availability status.
+ *
+ * Copy accounting is lock-free: checkouts and returns update the available copy
+ * count with compare-and-set, so concurrent callers can never take more copies
+ * than exist.
  */
 public class Book {
+    private static final AtomicIntegerFieldUpdater<Book> AVAILABLE_COPIES =
+            AtomicIntegerFieldUpdater.newUpdater(Book.class, "availableCopies");
+
     private String isbn;
     private String title;
     private String author;
     private BookType type;
-    private boolean available;
+    private volatile boolean available;
     private boolean referenceOnly;
     private int totalCopies;
-    private int availableCopies;
+    private volatile int availableCopies;
+    private InventoryCounters counters; // guarded by this; set while the book is in an inventory
+    private boolean countedAvailable; // guarded by this; availability as last reported to counters
 
     public enum BookType {
         FICTION,
@@ -84,34 +92,113 @@ public class Book {
     }
 
     // Setters
+
+    /**
+     * Sets the available copies directly. On a journaled Checkout use
+     * Checkout.setAvailableCopies() so the change survives a restart.
+     */
     public void setAvailableCopies(int copies) {
         this.availableCopies = copies;
         this.available = (copies > 0);
+        availabilityMaybeChanged();
     }
 
     /**
      * Decrements available copies when book is checked out.
      */
     public void checkout() {
-        if (availableCopies > 0) {
-            availableCopies--;
+        if (!tryCheckout()) {
+            this.available = false;
         }
-        this.available = (availableCopies > 0);
+    }
+
+    /**
+     * Atomically takes one copy if any are available.
+     * When several threads race for the last copy exactly one of them wins.
+     *
+     * @return true if a copy was taken, false if no copies were available
+     */
+    public boolean tryCheckout() {
+        int current;
+        do {
+            current = availableCopies;
+            if (current <= 0) {
+                return false;
+            }
+        } while (!AVAILABLE_COPIES.compareAndSet(this, current, current - 1));
+        this.available = (current - 1 > 0);
+        if (current == 1) {
+            availabilityMaybeChanged();
+        }
+        return true;
     }
 
     /**
      * Increments available copies when book is returned.
      */
     public void returnBook() {
-        if (availableCopies < 100) {
-            availableCopies++;
+        int current;
+        do {
+            current = availableCopies;
+            if (current >= 100) {
+                this.available = (current > 0);
+                return;
+            }
+        } while (!AVAILABLE_COPIES.compareAndSet(this, current, current + 1));
+        this.available = true;
+        if (current == 0) {
+            availabilityMaybeChanged();
         }
-        this.available = (availableCopies > 0);
     }
 
     public void resetAvailability() {
         this.availableCopies = this.totalCopies;
         this.available = true;
+        availabilityMaybeChanged();
+    }
+
+    /**
+     * Starts reporting this book's availability to an inventory's counters and
+     * counts it as one title there. Re-attaching to the same counters counts the book
+     * once; a book can only be counted by one inventory at a time.
+     *
+     * @throws IllegalStateException If the book is attached to another inventory's counters
+     */
+    synchronized void attachCounters(InventoryCounters inventoryCounters) {
+        if (counters != null && counters != inventoryCounters) {
+            throw new IllegalStateException("Book " + isbn + " is already in another inventory");
+        }
+        detachCounters();
+        this.counters = inventoryCounters;
+        this.countedAvailable = availableCopies > 0;
+        inventoryCounters.adjustTitles(type, countedAvailable, 1);
+    }
+
+    /**
+     * Removes this book from the counters it was attached to, if any.
+     */
+    synchronized void detachCounters() {
+        if (counters != null) {
+            counters.adjustTitles(type, countedAvailable, -1);
+            counters = null;
+        }
+    }
+
+    /**
+     * Reconciles the attached counters with the current copy count. Called only when a
+     * copy update may have crossed zero, so the lock is rarely taken; re-reading the
+     * count under the lock keeps the counters exact however updates interleave.
+     */
+    private synchronized void availabilityMaybeChanged() {
+        if (counters == null) {
+            return;
+        }
+        boolean now = availableCopies > 0;
+        if (now != countedAvailable) {
+            countedAvailable = now;
+            counters.adjustAvailable(type, now ? 1 : -1);
+            counters.notifyAvailability(isbn, now);
+        }
     }
 
     public boolean checkAvailability() {
@@ -0,0 +1,228 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Inventory map from ISBN to Book, keyed by normalized primitive ISBN keys.
+ *
+ * Books whose ISBN normalizes (see IsbnKeys) live in an open-addressing table of
+ * long keys with linear probing, so a lookup hashes a long instead of a string and
+ * an entry costs two array slots instead of a map node. Hyphenated and unhyphenated
+ * forms of the same ISBN find the same book. The rare book whose ISBN is not a valid
+ * ISBN string is kept in a small side map under its raw string.
+ *
+ * Reads are lock-free: they run under a StampedLock optimistic stamp and only fall
+ * back to the read lock if a writer interfered. Writes (addBook) take the write lock.
+ * Iteration is weakly consistent, like ConcurrentHashMap.
+ *
+ * Stored books report availability changes to this map's InventoryCounters, which
+ * answer countByType in O(1).
+ */
+final class BookMap implements Inventory {
+    private static final int MIN_CAPACITY = 16;
+
+    /** Keys and values of one table generation, swapped as a unit on resize. */
+    private static final class Table {
+        final long[] keys;
+        final AtomicReferenceArray<Book> values;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new AtomicReferenceArray<>(capacity);
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private final Map<String, Book> unkeyed = new ConcurrentHashMap<>();
+    private final InventoryCounters counters = new InventoryCounters();
+    private volatile Table table;
+    private int keyedSize; // guarded by lock
+
+    BookMap(int expectedSize) {
+        table = new Table(capacityFor(expectedSize));
+    }
+
+    @Override
+    public Book get(String isbn) {
+        long key = IsbnKeys.toKey(isbn);
+        return key == IsbnKeys.NO_KEY ? (isbn == null ? null : unkeyed.get(isbn)) : get(key);
+    }
+
+    @Override
+    public Book get(long key) {
+        long stamp = lock.tryOptimisticRead();
+        Book book = probe(table, key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                book = probe(table, key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return book;
+    }
+
+    @Override
+    public Book put(Book book) {
+        // Attach first: a book held by another inventory is rejected before the map changes
+        book.attachCounters(counters);
+        Book replaced = store(book);
+        if (replaced != null && replaced != book) {
+            replaced.detachCounters();
+        }
+        return replaced;
+    }
+
+    private Book store(Book book) {
+        long key = IsbnKeys.toKey(book.getIsbn());
+        if (key == IsbnKeys.NO_KEY) {
+            return unkeyed.put(book.getIsbn(), book);
+        }
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            if ((keyedSize + 1) * 2 > t.keys.length) {
+                t = resize(t, t.keys.length * 2);
+            }
+            int mask = t.keys.length - 1;
+            for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+                Book current = t.values.get(i);
+                if (current == null) {
+                    t.keys[i] = key;
+                    t.values.set(i, book);
+                    keyedSize++;
+                    return null;
+                }
+                if (t.keys[i] == key) {
+                    t.values.set(i, book);
+                    return current;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return keyedSize + unkeyed.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int countByType(Book.BookType type, boolean onlyAvailable) {
+        return counters.count(type, onlyAvailable);
+    }
+
+    @Override
+    public void setAvailabilityListener(AvailabilityListener listener) {
+        counters.setListener(listener);
+    }
+
+    @Override
+    public Iterator<Book> iterator() {
+        return new BookIterator();
+    }
+
+    /**
+     * Probes one table generation. The table may be mutated concurrently during an
+     * optimistic read, so the loop is bounded and the caller validates the result.
+     */
+    private static Book probe(Table t, long key) {
+        long[] keys = t.keys;
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (int n = 0; n <= mask; n++, i = (i + 1) & mask) {
+            Book book = t.values.get(i);
+            if (book == null) {
+                return null;
+            }
+            if (keys[i] == key) {
+                return book;
+            }
+        }
+        return null;
+    }
+
+    private Table resize(Table old, int capacity) {
+        Table grown = new Table(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < old.keys.length; j++) {
+            Book book = old.values.get(j);
+            if (book != null) {
+                int i = slot(old.keys[j], mask);
+                while (grown.values.get(i) != null) {
+                    i = (i + 1) & mask;
+                }
+                grown.keys[i] = old.keys[j];
+                grown.values.set(i, book);
+            }
+        }
+        table = grown;
+        return grown;
+    }
+
+    private static int slot(long key, int mask) {
+        // Fibonacci hashing spreads the mostly-sequential ISBN values across the table
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Weakly consistent iterator over every book (keyed table first, then side map).
+     */
+    private final class BookIterator implements Iterator<Book> {
+        private final Table t = table;
+        private final Iterator<Book> rest = unkeyed.values().iterator();
+        private int index;
+        private Book next;
+
+        BookIterator() {
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (index < t.keys.length) {
+                Book book = t.values.get(index++);
+                if (book != null) {
+                    next = book;
+                    return;
+                }
+            }
+            if (rest.hasNext()) {
+                next = rest.next();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Book next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Book book = next;
+            advance();
+            return book;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Inverted index over the words of book titles and authors.
+ *
+ * Each indexed book gets an int document id, assigned in order. Every word
+ * (lower-cased run of letters and digits) maps to a sorted postings list of the
+ * documents containing it; words are kept in a ConcurrentSkipListMap so a prefix is a
+ * range scan. A query is answered by walking the shortest postings list and checking
+ * the others by binary search, so the cost follows the rarest term rather than the
+ * catalog size, and the walk stops as soon as enough matches are found.
+ *
+ * Indexing is serialized on the index; searches take no locks and may run while books
+ * are being added. Since ids only grow, postings are append-only. Re-adding an ISBN
+ * gives the new book a fresh id and clears the old one's key; the old id stays in
+ * its postings and is skipped by searches.
+ *
+ * The index lives on the heap even when the inventory does not. Per document it keeps
+ * the normalized ISBN key (a long, see IsbnKeys), a type byte and one int in the
+ * postings of each distinct word; word strings are shared by every book using them.
+ * Books are fetched from the inventory by key, so no ISBN string is held per document.
+ */
+final class CatalogIndex {
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final long REPLACED = -2; // key of a document whose book was re-added
+
+    private final Inventory inventory;
+    private final ConcurrentSkipListMap<String, Postings> terms = new ConcurrentSkipListMap<>();
+
+    // Document table: ISBN key and type per document id, in fixed-size chunks so that
+    // growing it never moves entries a concurrent search is reading. The rare ISBNs
+    // without a key are kept as strings in unkeyed.
+    private volatile long[][] keyChunks = new long[0][];
+    private volatile byte[][] typeChunks = new byte[0][];
+    private final Map<Integer, String> unkeyed = new ConcurrentHashMap<>();
+    private volatile int documents;
+
+    CatalogIndex(Inventory inventory) {
+        this.inventory = inventory;
+    }
+
+    /**
+     * Indexes a book that was just put into the inventory.
+     *
+     * @param book The new book
+     * @param replaced The book previously stored under the same ISBN, or null
+     */
+    synchronized void update(Book book, Book replaced) {
+        int old = replaced == null ? -1 : findDocument(replaced);
+        if (old >= 0) {
+            keyChunks[old >>> CHUNK_BITS][old & CHUNK_MASK] = REPLACED;
+            unkeyed.remove(old);
+        }
+        int doc = newDocument(book.getIsbn(), book.getType());
+        for (String word : words(book)) {
+            terms.computeIfAbsent(word, w -> new Postings()).add(doc);
+        }
+    }
+
+    /**
+     * Finds books whose title or author contains every term of a query, in the order
+     * they were added. Terms are matched as whole words, case-insensitively; a
+     * term ending in '*' matches any word starting with it (e.g. "prog* java").
+     *
+     * @param query Space-separated terms
+     * @param type Only books of this type, or null for any
+     * @param onlyAvailable If true, only books with a copy on the shelf
+     * @param limit Maximum number of results
+     * @return Matching books from the inventory (empty if the query has no terms)
+     */
+    List<Book> search(String query, Book.BookType type, boolean onlyAvailable, int limit) {
+        List<Postings> exact = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        for (String raw : query.trim().split("\\s+")) {
+            boolean prefix = raw.endsWith("*");
+            List<String> words = tokenize(prefix ? raw.substring(0, raw.length() - 1) : raw);
+            for (int i = 0; i < words.size(); i++) {
+                String word = words.get(i);
+                if (prefix && i == words.size() - 1) {
+                    prefixes.add(word);
+                } else {
+                    Postings postings = terms.get(word);
+                    if (postings == null) {
+                        return Collections.emptyList();
+                    }
+                    exact.add(postings);
+                }
+            }
+        }
+        if (limit <= 0 || (exact.isEmpty() && prefixes.isEmpty())) {
+            return Collections.emptyList();
+        }
+
+        DocCursor driver;
+        if (!exact.isEmpty()) {
+            exact.sort((a, b) -> Integer.compare(a.size, b.size));
+            driver = new ListCursor(exact.remove(0));
+        } else {
+            // Merge the postings of every word under the first prefix
+            String first = prefixes.remove(0);
+            Collection<Postings> matches = terms.subMap(first, first + Character.MAX_VALUE).values();
+            if (matches.isEmpty()) {
+                return Collections.emptyList();
+            }
+            driver = new MergeCursor(matches);
+        }
+
+        List<Book> results = new ArrayList<>(Math.min(limit, 64));
+        int[][] lists = new int[exact.size()][];
+        int[] sizes = new int[exact.size()];
+        for (int i = 0; i < lists.length; i++) {
+            sizes[i] = exact.get(i).size;
+            lists[i] = exact.get(i).docs;
+        }
+        int[] positions = new int[lists.length];
+        long[][] keys = keyChunks;
+        byte[][] types = typeChunks;
+        for (int doc = driver.next(); doc >= 0 && results.size() < limit; doc = driver.next()) {
+            int missing = firstMissing(lists, sizes, positions, doc);
+            if (missing >= 0) {
+                if (positions[missing] == sizes[missing]) {
+                    break; // a required list is used up, nothing later can match
+                }
+                continue;
+            }
+            if (type != null && types[doc >>> CHUNK_BITS][doc & CHUNK_MASK] != type.ordinal() + 1) {
+                continue;
+            }
+            Book book = lookup(keys[doc >>> CHUNK_BITS][doc & CHUNK_MASK], doc);
+            if (book == null || (onlyAvailable && !book.isAvailable()) || !hasPrefixes(book, prefixes)) {
+                continue;
+            }
+            results.add(book);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the number of distinct words indexed.
+     */
+    int termCount() {
+        return terms.size();
+    }
+
+    /**
+     * Checks that every list contains a document. Candidates arrive in ascending order,
+     * so each list is searched forward from where the previous candidate left it,
+     * galloping then binary searching: a whole query costs about the length of the
+     * shortest list times the log of the gaps, not a full binary search per list.
+     *
+     * @return Index of the first list lacking the document, or -1 if all contain it
+     */
+    private static int firstMissing(int[][] lists, int[] sizes, int[] positions, int doc) {
+        for (int i = 0; i < lists.length; i++) {
+            int[] list = lists[i];
+            int low = positions[i];
+            int step = 1;
+            int high = low;
+            while (high < sizes[i] && list[high] < doc) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int at = Arrays.binarySearch(list, low, Math.min(high + 1, sizes[i]), doc);
+            positions[i] = at >= 0 ? at : -at - 1;
+            if (at < 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks the remaining prefix terms against the book's own words. Only candidates
+     * that matched everything else get here, so this is cheaper than merging the
+     * postings of every word under each prefix.
+     */
+    private static boolean hasPrefixes(Book book, List<String> prefixes) {
+        if (prefixes.isEmpty()) {
+            return true;
+        }
+        List<String> words = words(book);
+        for (String prefix : prefixes) {
+            boolean found = false;
+            for (String word : words) {
+                if (word.startsWith(prefix)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Looks up the document of an indexed book through its rarest word, avoiding a
+     * separate ISBN-to-document map for the whole catalog.
+     */
+    private int findDocument(Book book) {
+        Postings rarest = null;
+        for (String word : words(book)) {
+            Postings postings = terms.get(word);
+            if (postings != null && (rarest == null || postings.size < rarest.size)) {
+                rarest = postings;
+            }
+        }
+        if (rarest == null) {
+            return -1;
+        }
+        // Compare normalized keys, so any hyphenation of the ISBN finds the document
+        long key = IsbnKeys.toKey(book.getIsbn());
+        long[][] keys = keyChunks;
+        for (int i = 0; i < rarest.size; i++) {
+            int doc = rarest.docs[i];
+            long docKey = keys[doc >>> CHUNK_BITS][doc & CHUNK_MASK];
+            if (docKey == key && (key != IsbnKeys.NO_KEY || book.getIsbn().equals(unkeyed.get(doc)))) {
+                return doc;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Fetches a document's book from the inventory, or returns null if it was re-added.
+     */
+    private Book lookup(long key, int doc) {
+        if (key == REPLACED) {
+            return null;
+        }
+        if (key == IsbnKeys.NO_KEY) {
+            String isbn = unkeyed.get(doc);
+            return isbn == null ? null : inventory.get(isbn);
+        }
+        return inventory.get(key);
+    }
+
+    private int newDocument(String isbn, Book.BookType type) {
+        int doc = documents;
+        int chunk = doc >>> CHUNK_BITS;
+        if (chunk == keyChunks.length) {
+            long[][] keys = Arrays.copyOf(keyChunks, chunk + 1);
+            keys[chunk] = new long[CHUNK_SIZE];
+            byte[][] types = Arrays.copyOf(typeChunks, chunk + 1);
+            types[chunk] = new byte[CHUNK_SIZE];
+            keyChunks = keys;
+            typeChunks = types;
+        }
+        long key = IsbnKeys.toKey(isbn);
+        if (key == IsbnKeys.NO_KEY) {
+            unkeyed.put(doc, isbn);
+        }
+        keyChunks[chunk][doc & CHUNK_MASK] = key;
+        // As in OffHeapInventory: ordinal + 1, 0 for a book without a type
+        typeChunks[chunk][doc & CHUNK_MASK] = (byte) (type == null ? 0 : type.ordinal() + 1);
+        documents = doc + 1;
+        return doc;
+    }
+
+    /**
+     * Returns the distinct words of a book's title and author.
+     */
+    static List<String> words(Book book) {
+        List<String> words = tokenize(book.getTitle());
+        for (String word : tokenize(book.getAuthor())) {
+            if (!words.contains(word)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Splits text into lower-case runs of letters and digits.
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String word = text.substring(start, i).toLowerCase(Locale.ROOT);
+                if (!words.contains(word)) {
+                    words.add(word);
+                }
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Ascending document ids of one word. Appended only under the index lock; readers
+     * read size before docs, so they never see an array shorter than size.
+     */
+    private static final class Postings {
+        volatile int[] docs = new int[2];
+        volatile int size;
+
+        void add(int doc) {
+            int n = size;
+            int[] current = docs;
+            if (n > 0 && current[n - 1] == doc) {
+                return;
+            }
+            if (n == current.length) {
+                current = Arrays.copyOf(current, n * 2);
+                docs = current;
+            }
+            current[n] = doc;
+            size = n + 1;
+        }
+    }
+
+    /**
+     * Ascending stream of document ids.
+     */
+    private interface DocCursor {
+        /** Returns the next document id, or -1 when exhausted. */
+        int next();
+    }
+
+    private static final class ListCursor implements DocCursor {
+        private final int[] docs;
+        private final int size;
+        private int position;
+
+        ListCursor(Postings postings) {
+            this.size = postings.size;
+            this.docs = postings.docs;
+        }
+
+        @Override
+        public int next() {
+            return position < size ? docs[position++] : -1;
+        }
+    }
+
+    /**
+     * Lazy k-way merge of several postings lists, skipping duplicates.
+     */
+    private static final class MergeCursor implements DocCursor {
+        private final PriorityQueue<int[]> heads; // {doc, list, position}
+        private final int[][] lists;
+        private final int[] sizes;
+        private int last = -1;
+
+        MergeCursor(Collection<Postings> postings) {
+            lists = new int[postings.size()][];
+            sizes = new int[lists.length];
+            heads = new PriorityQueue<>(Math.max(1, lists.length), (a, b) -> Integer.compare(a[0], b[0]));
+            int i = 0;
+            for (Postings p : postings) {
+                sizes[i] = p.size;
+                lists[i] = p.docs;
+                if (sizes[i] > 0) {
+                    heads.add(new int[] {lists[i][0], i, 0});
+                }
+                i++;
+            }
+        }
+
+        @Override
+        public int next() {
+            while (!heads.isEmpty()) {
+                int[] head = heads.poll();
+                int doc = head[0];
+                int list = head[1];
+                int position = head[2] + 1;
+                if (position < sizes[list]) {
+                    head[0] = lists[list][position];
+                    head[2] = position;
+                    heads.add(head);
+                }
+                if (doc != last) {
+                    last = doc;
+                    return doc;
+                }
+            }
+            return -1;
+        }
+    }
+}
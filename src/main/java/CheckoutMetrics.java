@@ -0,0 +1,263 @@
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Operational metrics for a Checkout: a counter per checkoutBook result code, return
+ * outcome counters, and latency histograms for checkout, return and fine calculation.
+ *
+ * Attach with Checkout.setMetrics(). Counters are LongAdders and histograms are
+ * striped, so recording adds no shared contention point. Checkouts and returns are
+ * timed on every call; calculateFine is so cheap that timing it would dominate its
+ * cost, so it is timed on a random sample of calls (see FINE_SAMPLE_MASK).
+ *
+ * Metrics can be read three ways: snapshot() on demand, publishEvery() for a periodic
+ * callback, or JMX after registerMBean().
+ */
+public final class CheckoutMetrics implements CheckoutMetricsMXBean {
+    /** calculateFine is timed on one call in FINE_SAMPLE_MASK + 1. */
+    static final int FINE_SAMPLE_MASK = 63;
+
+    private static final String[] CHECKOUT_CODES = {
+        "0.0", "0.1", "1.0", "1.1", "2.0", "2.1", "3.0", "3.1", "3.2", "4.0", "4.1", "5.0"
+    };
+    private static final String OTHER = "other";
+    private static final String[] RETURN_OUTCOMES = {"returned", "fined", "notFound"};
+
+    /** Maps round(code * 10) to an index in CHECKOUT_CODES. */
+    private static final int[] CODE_INDEX = new int[51];
+
+    static {
+        Arrays.fill(CODE_INDEX, -1);
+        for (int i = 0; i < CHECKOUT_CODES.length; i++) {
+            CODE_INDEX[(int) Math.round(Double.parseDouble(CHECKOUT_CODES[i]) * 10)] = i;
+        }
+    }
+
+    private static final ScheduledExecutorService PUBLISHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "checkout-metrics");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final LongAdder[] checkoutCodes = adders(CHECKOUT_CODES.length + 1);
+    private final LongAdder[] returnOutcomes = adders(RETURN_OUTCOMES.length);
+    private final LatencyHistogram checkoutLatency = new LatencyHistogram();
+    private final LatencyHistogram returnLatency = new LatencyHistogram();
+    private final LatencyHistogram fineLatency = new LatencyHistogram();
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Counts one checkoutBook result, without timing (batch checkouts).
+     */
+    void countCheckout(double code) {
+        long scaled = Math.round(code * 10);
+        int index = scaled >= 0 && scaled < CODE_INDEX.length ? CODE_INDEX[(int) scaled] : -1;
+        checkoutCodes[index < 0 ? CHECKOUT_CODES.length : index].increment();
+    }
+
+    void recordCheckout(double code, long nanos) {
+        countCheckout(code);
+        checkoutLatency.record(nanos);
+    }
+
+    /**
+     * Counts one returnBook result, without timing (batch returns).
+     */
+    void countReturn(double fine) {
+        returnOutcomes[fine < 0 ? 2 : fine > 0 ? 1 : 0].increment();
+    }
+
+    void recordReturn(double fine, long nanos) {
+        countReturn(fine);
+        returnLatency.record(nanos);
+    }
+
+    /**
+     * Decides whether this calculateFine call is timed.
+     */
+    boolean sampleFine() {
+        return (ThreadLocalRandom.current().nextInt() & FINE_SAMPLE_MASK) == 0;
+    }
+
+    void recordFine(long nanos) {
+        fineLatency.record(nanos);
+    }
+
+    /**
+     * Returns a point-in-time copy of all metrics.
+     *
+     * @return The snapshot
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(Instant.now(), getCheckoutResultCounts(), getReturnResultCounts(),
+                checkoutLatency.snapshot(), returnLatency.snapshot(), fineLatency.snapshot());
+    }
+
+    /**
+     * Delivers a snapshot to a listener at a fixed rate, on a shared daemon thread.
+     *
+     * @param period Time between snapshots
+     * @param listener Receives each snapshot; must not block for long
+     * @return Handle to cancel the publication
+     */
+    public ScheduledFuture<?> publishEvery(Duration period, Consumer<Snapshot> listener) {
+        long nanos = period.toNanos();
+        return PUBLISHER.scheduleAtFixedRate(() -> listener.accept(snapshot()), nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server as
+     * library:type=CheckoutMetrics,name=&lt;name&gt;.
+     *
+     * @param name Distinguishes several checkouts in one JVM
+     * @return The registered object name
+     * @throws JMException If the name is invalid or already registered
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("library:type=CheckoutMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public Map<String, Long> getCheckoutResultCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < CHECKOUT_CODES.length; i++) {
+            counts.put(CHECKOUT_CODES[i], checkoutCodes[i].sum());
+        }
+        counts.put(OTHER, checkoutCodes[CHECKOUT_CODES.length].sum());
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getReturnResultCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < RETURN_OUTCOMES.length; i++) {
+            counts.put(RETURN_OUTCOMES[i], returnOutcomes[i].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public long getCheckoutLatencyP50() {
+        return checkoutLatency.snapshot().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getCheckoutLatencyP99() {
+        return checkoutLatency.snapshot().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getCheckoutLatencyP999() {
+        return checkoutLatency.snapshot().getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getCheckoutLatencyMax() {
+        return checkoutLatency.snapshot().getMax();
+    }
+
+    @Override
+    public long getReturnLatencyP50() {
+        return returnLatency.snapshot().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getReturnLatencyP99() {
+        return returnLatency.snapshot().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getReturnLatencyP999() {
+        return returnLatency.snapshot().getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getReturnLatencyMax() {
+        return returnLatency.snapshot().getMax();
+    }
+
+    @Override
+    public long getFineLatencyP99() {
+        return fineLatency.snapshot().getValueAtPercentile(99);
+    }
+
+    /**
+     * Immutable copy of all metrics at one point in time. Counts are cumulative since
+     * the metrics were created; subtract two snapshots for per-interval rates.
+     */
+    public static final class Snapshot {
+        private final Instant time;
+        private final Map<String, Long> checkoutResults;
+        private final Map<String, Long> returnResults;
+        private final LatencyHistogram.Snapshot checkoutLatency;
+        private final LatencyHistogram.Snapshot returnLatency;
+        private final LatencyHistogram.Snapshot fineLatency;
+
+        Snapshot(Instant time, Map<String, Long> checkoutResults, Map<String, Long> returnResults,
+                LatencyHistogram.Snapshot checkoutLatency, LatencyHistogram.Snapshot returnLatency,
+                LatencyHistogram.Snapshot fineLatency) {
+            this.time = time;
+            this.checkoutResults = Collections.unmodifiableMap(checkoutResults);
+            this.returnResults = Collections.unmodifiableMap(returnResults);
+            this.checkoutLatency = checkoutLatency;
+            this.returnLatency = returnLatency;
+            this.fineLatency = fineLatency;
+        }
+
+        public Instant getTime() {
+            return time;
+        }
+
+        public Map<String, Long> getCheckoutResults() {
+            return checkoutResults;
+        }
+
+        public Map<String, Long> getReturnResults() {
+            return returnResults;
+        }
+
+        public LatencyHistogram.Snapshot getCheckoutLatency() {
+            return checkoutLatency;
+        }
+
+        public LatencyHistogram.Snapshot getReturnLatency() {
+            return returnLatency;
+        }
+
+        /**
+         * Returns calculateFine latencies (sampled, see CheckoutMetrics).
+         */
+        public LatencyHistogram.Snapshot getFineLatency() {
+            return fineLatency;
+        }
+
+        @Override
+        public String toString() {
+            return "CheckoutMetrics[" + time + " checkout=" + checkoutResults + " {" + checkoutLatency + "} return="
+                    + returnResults + " {" + returnLatency + "} fine={" + fineLatency + "}]";
+        }
+    }
+}
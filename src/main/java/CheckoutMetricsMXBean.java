@@ -0,0 +1,35 @@
+import java.util.Map;
+
+/**
+ * JMX view of {@link CheckoutMetrics}. Latencies are in nanoseconds.
+ */
+public interface CheckoutMetricsMXBean {
+
+    /**
+     * Returns the number of checkoutBook calls per result code ("0.0", "2.0", ...).
+     */
+    Map<String, Long> getCheckoutResultCounts();
+
+    /**
+     * Returns the number of returnBook calls per outcome ("returned", "fined", "notFound").
+     */
+    Map<String, Long> getReturnResultCounts();
+
+    long getCheckoutLatencyP50();
+
+    long getCheckoutLatencyP99();
+
+    long getCheckoutLatencyP999();
+
+    long getCheckoutLatencyMax();
+
+    long getReturnLatencyP50();
+
+    long getReturnLatencyP99();
+
+    long getReturnLatencyP999();
+
+    long getReturnLatencyMax();
+
+    long getFineLatencyP99();
+}
@@ -0,0 +1,344 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Embedded HTTP front end for a Checkout, for desk and kiosk clients.
+ *
+ * Endpoints (parameters in the query string, responses are small JSON objects):
+ * <pre>
+ *   POST /checkout?patron=ID&amp;isbn=ISBN    {"code":0.0}          checkoutBook result code
+ *   POST /renew?patron=ID&amp;isbn=ISBN       {"code":0.1}          404 unless the patron holds the book
+ *   POST /return?patron=ID&amp;isbn=ISBN      {"fine":0.00}         fine charged, in dollars
+ *   POST /hold?patron=ID&amp;isbn=ISBN        {"position":3}        placeHold; 409 if not possible
+ *   GET  /fines?patron=ID                 {"patron":"ID","balanceCents":250}
+ *   GET  /inventory/count?type=FICTION[&amp;available=true]   {"count":42}
+ * </pre>
+ * Unknown patrons and books get 404, missing or malformed parameters 400, the wrong
+ * method 405 and a failure inside the checkout (e.g. a failed journal write) 500, each
+ * with an {"error":...} body.
+ *
+ * Each request runs on its own virtual thread, so a client stalled on a slow network
+ * ties up no platform thread. Response bodies are written into byte buffers taken from
+ * a shared pool and returned after the write; buffers are pooled rather than held in
+ * ThreadLocals because every virtual thread is new and would never reuse one.
+ *
+ * Launch flag: run with -Dsun.net.httpserver.nodelay=true (Main's serve mode sets it).
+ * The JDK server leaves Nagle on by default, so small keep-alive responses wait on
+ * the client's delayed ACK, which caps throughput at a few hundred requests per second
+ * per connection. The JDK reads the property once, when its server classes load.
+ */
+public final class CheckoutServer implements AutoCloseable {
+    private static final int BUFFER_SIZE = 256;
+    private static final int POOLED_BUFFERS = 1024;
+
+    private final Checkout checkout;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ArrayBlockingQueue<ResponseBuffer> buffers = new ArrayBlockingQueue<>(POOLED_BUFFERS);
+
+    /**
+     * Creates a server bound to an address. Call start() to begin serving.
+     *
+     * @param checkout The checkout to serve
+     * @param address Address to bind; port 0 picks a free port
+     * @throws IOException If the address cannot be bound
+     */
+    public CheckoutServer(Checkout checkout, InetSocketAddress address) throws IOException {
+        this.checkout = checkout;
+        this.server = HttpServer.create(address, 1024);
+        server.setExecutor(executor);
+        server.createContext("/checkout", exchange -> handle(exchange, Endpoint.CHECKOUT));
+        server.createContext("/renew", exchange -> handle(exchange, Endpoint.RENEW));
+        server.createContext("/return", exchange -> handle(exchange, Endpoint.RETURN));
+        server.createContext("/hold", exchange -> handle(exchange, Endpoint.HOLD));
+        server.createContext("/fines", exchange -> handle(exchange, Endpoint.FINES));
+        server.createContext("/inventory/count", exchange -> handle(exchange, Endpoint.COUNT));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Returns the port the server is bound to.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, waits up to a second for in-flight ones and shuts down.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.close();
+    }
+
+    private enum Endpoint {
+        CHECKOUT("POST"),
+        RENEW("POST"),
+        RETURN("POST"),
+        HOLD("POST"),
+        FINES("GET"),
+        COUNT("GET");
+
+        final String method;
+
+        Endpoint(String method) {
+            this.method = method;
+        }
+    }
+
+    /**
+     * Status and body for a rejected request.
+     */
+    private static final class RequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        RequestException(int status, String message) {
+            super(message, null, false, false);
+            this.status = status;
+        }
+    }
+
+    private void handle(HttpExchange exchange, Endpoint endpoint) throws IOException {
+        ResponseBuffer out = buffers.poll();
+        if (out == null) {
+            out = new ResponseBuffer();
+        }
+        try (exchange) {
+            drain(exchange.getRequestBody());
+            int status = 200;
+            try {
+                if (!endpoint.method.equals(exchange.getRequestMethod())) {
+                    throw new RequestException(405, "use " + endpoint.method);
+                }
+                dispatch(endpoint, exchange.getRequestURI().getRawQuery(), out);
+            } catch (RequestException e) {
+                status = e.status;
+                out.reset().append("{\"error\":\"").appendEscaped(e.getMessage()).append("\"}");
+            } catch (RuntimeException e) {
+                status = 500;
+                out.reset().append("{\"error\":\"").appendEscaped(String.valueOf(e.getMessage())).append("\"}");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, out.length);
+            OutputStream body = exchange.getResponseBody();
+            body.write(out.bytes, 0, out.length);
+        } finally {
+            out.reset();
+            buffers.offer(out);
+        }
+    }
+
+    private void dispatch(Endpoint endpoint, String query, ResponseBuffer out) throws RequestException {
+        switch (endpoint) {
+            case CHECKOUT: {
+                Patron patron = patron(query);
+                double code = checkout.checkoutBook(book(query), patron);
+                out.append("{\"code\":").appendTenths(code).append('}');
+                break;
+            }
+            case RENEW: {
+                Patron patron = patron(query);
+                double code = checkout.renewBook(book(query), patron);
+                if (code < 0) {
+                    throw new RequestException(404, "book is not on loan to this patron");
+                }
+                out.append("{\"code\":").appendTenths(code).append('}');
+                break;
+            }
+            case RETURN: {
+                double fine = checkout.returnBook(required(query, "isbn"), patron(query));
+                if (fine < 0) {
+                    throw new RequestException(404, "book is not on loan to this patron");
+                }
+                out.append("{\"fine\":").appendCents(FineLedger.toCents(fine)).append('}');
+                break;
+            }
+            case HOLD: {
+                Patron patron = patron(query);
+                int position = checkout.placeHold(book(query).getIsbn(), patron);
+                if (position < 0) {
+                    throw new RequestException(409, "hold not possible for this patron and book");
+                }
+                out.append("{\"position\":").append(position).append('}');
+                break;
+            }
+            case FINES: {
+                Patron patron = patron(query);
+                out.append("{\"patron\":\"").appendEscaped(patron.getPatronId())
+                        .append("\",\"balanceCents\":").append(patron.getFineBalanceCents()).append('}');
+                break;
+            }
+            case COUNT: {
+                Book.BookType type;
+                try {
+                    type = Book.BookType.valueOf(required(query, "type"));
+                } catch (IllegalArgumentException e) {
+                    throw new RequestException(400, "unknown book type");
+                }
+                boolean available = "true".equals(parameter(query, "available"));
+                out.append("{\"count\":").append(checkout.countBooksByType(type, available)).append('}');
+                break;
+            }
+            default:
+                throw new IllegalStateException(endpoint.name());
+        }
+    }
+
+    private Patron patron(String query) throws RequestException {
+        Patron patron = checkout.getPatrons().get(required(query, "patron"));
+        if (patron == null) {
+            throw new RequestException(404, "unknown patron");
+        }
+        return patron;
+    }
+
+    private Book book(String query) throws RequestException {
+        Book book = checkout.getInventory().get(required(query, "isbn"));
+        if (book == null) {
+            throw new RequestException(404, "unknown book");
+        }
+        return book;
+    }
+
+    private static String required(String query, String name) throws RequestException {
+        String value = parameter(query, name);
+        if (value == null || value.isEmpty()) {
+            throw new RequestException(400, "missing parameter " + name);
+        }
+        return value;
+    }
+
+    /**
+     * Finds a parameter in a raw query string without splitting the whole string.
+     *
+     * @return The decoded value, or null if absent
+     */
+    static String parameter(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        int from = 0;
+        while (from < query.length()) {
+            int end = query.indexOf('&', from);
+            if (end < 0) {
+                end = query.length();
+            }
+            if (query.startsWith(name, from) && from + name.length() < end
+                    && query.charAt(from + name.length()) == '=') {
+                String raw = query.substring(from + name.length() + 1, end);
+                return raw.indexOf('%') < 0 && raw.indexOf('+') < 0
+                        ? raw : URLDecoder.decode(raw, StandardCharsets.UTF_8);
+            }
+            from = end + 1;
+        }
+        return null;
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        while (in.read() >= 0) {
+            in.skip(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Growable ASCII byte buffer for response bodies.
+     */
+    private static final class ResponseBuffer {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        int length;
+
+        ResponseBuffer reset() {
+            length = 0;
+            return this;
+        }
+
+        ResponseBuffer append(char c) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) c;
+            return this;
+        }
+
+        ResponseBuffer append(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                append(s.charAt(i));
+            }
+            return this;
+        }
+
+        /**
+         * Appends a string as the inside of a JSON string literal. Characters outside
+         * printable ASCII are escaped.
+         */
+        ResponseBuffer appendEscaped(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    append('\\').append(c);
+                } else if (c < 0x20 || c > 0x7e) {
+                    append("\\u");
+                    for (int shift = 12; shift >= 0; shift -= 4) {
+                        append(Character.forDigit((c >> shift) & 0xf, 16));
+                    }
+                } else {
+                    append(c);
+                }
+            }
+            return this;
+        }
+
+        ResponseBuffer append(long value) {
+            if (value < 0) {
+                append('-');
+                value = -value;
+            }
+            long divisor = 1;
+            while (value / divisor >= 10) {
+                divisor *= 10;
+            }
+            for (; divisor > 0; divisor /= 10) {
+                append((char) ('0' + value / divisor % 10));
+            }
+            return this;
+        }
+
+        /**
+         * Appends a result code with one decimal, e.g. 3.2.
+         */
+        ResponseBuffer appendTenths(double code) {
+            long tenths = Math.round(code * 10);
+            if (tenths < 0) {
+                append('-');
+                tenths = -tenths;
+            }
+            return append(tenths / 10).append('.').append((char) ('0' + tenths % 10));
+        }
+
+        /**
+         * Appends a cent amount as dollars with two decimals.
+         */
+        ResponseBuffer appendCents(long cents) {
+            append(cents / 100).append('.');
+            long rest = cents % 100;
+            return append((char) ('0' + rest / 10)).append((char) ('0' + rest % 10));
+        }
+    }
+}
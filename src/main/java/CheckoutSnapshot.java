@@ -0,0 +1,336 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Binary snapshot of a Checkout: inventory, and patrons with their fines and open
+ * loans.
+ *
+ * File layout: magic, format version, book and patron counts (sizing hints), then
+ * three sections of records (books, patrons with their loans, late returns), each
+ * record prefixed by a 1 marker byte and each section ended by a 0 byte. Strings
+ * are length-prefixed UTF-8, dates are epoch days. All I/O goes through one large
+ * buffer per file so that tens of millions of records stream at disk speed.
+ *
+ * Snapshots can be taken while checkouts continue. Each patron is copied together
+ * with its open loans while holding its monitor, under which loans are opened and
+ * closed, so a patron's loans, checkout count, fines and overdue count always agree.
+ * Available copies are not copied at all: restore recomputes them from the loans.
+ * Across patrons, a copy returned by a patron already copied could be checked out by
+ * one not copied yet and be restored as lent twice; so every return made by an
+ * already-copied patron while the snapshot runs is recorded too (the late returns)
+ * and applied on restore. Restored copies and loans therefore match a state the
+ * checkout was actually in, though operations that run concurrently with the
+ * snapshot may or may not be included. A loan of a book added after the inventory
+ * was copied is dropped, and copies set aside for holds go back on the shelf (holds
+ * are not part of the snapshot). A snapshot is a standalone copy of the state, not a
+ * starting point for journal replay. The file is written to a temporary sibling and
+ * moved into place, so a crash never leaves a half-written snapshot behind.
+ */
+public final class CheckoutSnapshot {
+    private static final long MAGIC = 0x434B534E41503031L; // "CKSNAP01"
+    private static final int VERSION = 3; // 2: fine balances in cents; 3: loans with their patron, late returns
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final byte NO_BOOK_TYPE = -1;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int NULL_STRING = 0xFFFF;
+
+    private CheckoutSnapshot() {
+    }
+
+    /**
+     * A return made by a patron after the snapshot copied it.
+     */
+    private static final class LateReturn {
+        final String patronId;
+        final String isbn;
+        final LocalDate returnDate;
+        final long fineCents;
+
+        LateReturn(String patronId, String isbn, LocalDate returnDate, long fineCents) {
+            this.patronId = patronId;
+            this.isbn = isbn;
+            this.returnDate = returnDate;
+            this.fineCents = fineCents;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the checkout to a file, replacing any existing one.
+     *
+     * @param checkout The checkout to snapshot
+     * @param file Destination file
+     * @throws IOException If the snapshot cannot be written
+     * @throws IllegalStateException If a snapshot of the checkout is already being written
+     */
+    public static void write(Checkout checkout, Path file) throws IOException {
+        Object snapshot = new Object();
+        Queue<LateReturn> lateReturns = new ConcurrentLinkedQueue<>();
+        boolean attached = checkout.attachReturnRecorder((patron, isbn, returnDate, fineCents) -> {
+            if (patron.isSnapshotted(snapshot)) {
+                lateReturns.add(new LateReturn(patron.getPatronId(), isbn, returnDate, fineCents));
+            }
+        });
+        if (!attached) {
+            throw new IllegalStateException("A snapshot of this checkout is already being written");
+        }
+        try {
+            writeFile(checkout, file, snapshot, lateReturns);
+        } finally {
+            checkout.detachReturnRecorder();
+        }
+    }
+
+    private static void writeFile(Checkout checkout, Path file, Object snapshot, Queue<LateReturn> lateReturns)
+            throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Output out = new Output(temp)) {
+            out.buffer(Long.BYTES + 3 * Integer.BYTES);
+            out.buf.putLong(MAGIC);
+            out.buf.putInt(VERSION);
+            out.buf.putInt(checkout.getInventory().size());
+            out.buf.putInt(checkout.getPatrons().size());
+
+            for (Book book : checkout.getInventory().values()) {
+                out.marker(true);
+                out.putString(book.getIsbn());
+                out.putString(book.getTitle());
+                out.putString(book.getAuthor());
+                out.buffer(1 + Integer.BYTES);
+                out.buf.put(book.getType() == null ? NO_BOOK_TYPE : (byte) book.getType().ordinal());
+                out.buf.putInt(book.getTotalCopies());
+            }
+            out.marker(false);
+
+            for (Patron patron : checkout.getPatrons().values()) {
+                synchronized (patron) {
+                    writePatron(out, checkout, patron);
+                    patron.markSnapshotted(snapshot);
+                }
+            }
+            out.marker(false);
+
+            // Every return whose copy a patron copied above could have taken is queued by now
+            for (LateReturn late : lateReturns) {
+                out.marker(true);
+                out.putString(late.patronId);
+                out.putString(late.isbn);
+                out.buffer(Integer.BYTES + Long.BYTES);
+                out.buf.putInt((int) late.returnDate.toEpochDay());
+                out.buf.putLong(late.fineCents);
+            }
+            out.marker(false);
+            out.sync();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writePatron(Output out, Checkout checkout, Patron patron) {
+        out.marker(true);
+        out.putString(patron.getPatronId());
+        out.putString(patron.getName());
+        out.putString(patron.getEmail());
+        out.buffer(2 + Integer.BYTES + Long.BYTES + 2 * Integer.BYTES);
+        out.buf.put((byte) patron.getType().ordinal());
+        out.buf.put((byte) (patron.isAccountSuspended() ? 1 : 0));
+        out.buf.putInt(patron.getOverdueCount());
+        out.buf.putLong(patron.getFineBalanceCents());
+        out.buf.putInt((int) patron.getMemberSince().toEpochDay());
+        out.buf.putInt(patron.loanCount());
+        checkout.forEachOpenLoan(patron, (isbn, checkoutDate, dueDate, overdue) -> {
+            out.putString(isbn);
+            out.buffer(2 * Integer.BYTES + 1);
+            out.buf.putInt(checkoutDate == null ? NO_DATE : (int) checkoutDate.toEpochDay());
+            out.buf.putInt((int) dueDate.toEpochDay());
+            out.buf.put((byte) (overdue ? 1 : 0));
+        });
+    }
+
+    /**
+     * Restores a checkout from a snapshot file. Maps are pre-sized from the counts in
+     * the header and objects are inserted directly, without per-call validation. Each
+     * book's available copies are its total copies less its restored loans.
+     *
+     * @param file Snapshot file written by {@link #write(Checkout, Path)}
+     * @return A new checkout holding the snapshot state (no journal attached)
+     * @throws IOException If the file cannot be read or is not a snapshot
+     */
+    public static Checkout read(Path file) throws IOException {
+        try (Input in = new Input(file)) {
+            in.require(Long.BYTES + 3 * Integer.BYTES);
+            if (in.buf.getLong() != MAGIC || in.buf.getInt() != VERSION) {
+                throw new IOException("Not a checkout snapshot: " + file);
+            }
+            Checkout checkout = new Checkout(in.buf.getInt(), in.buf.getInt());
+
+            while (in.marker()) {
+                String isbn = in.getString();
+                String title = in.getString();
+                String author = in.getString();
+                in.require(1 + Integer.BYTES);
+                byte type = in.buf.get();
+                Book.BookType bookType = type == NO_BOOK_TYPE ? null : Book.BookType.values()[type];
+                checkout.addBook(new Book(isbn, title, author, bookType, in.buf.getInt()));
+            }
+
+            while (in.marker()) {
+                readPatron(in, checkout);
+            }
+
+            while (in.marker()) {
+                String patronId = in.getString();
+                String isbn = in.getString();
+                in.require(Integer.BYTES + Long.BYTES);
+                LocalDate returnDate = LocalDate.ofEpochDay(in.buf.getInt());
+                checkout.restoreReturn(patronId, isbn, returnDate, in.buf.getLong());
+            }
+            return checkout;
+        }
+    }
+
+    private static void readPatron(Input in, Checkout checkout) throws IOException {
+        String patronId = in.getString();
+        String name = in.getString();
+        String email = in.getString();
+        in.require(2 + Integer.BYTES + Long.BYTES + 2 * Integer.BYTES);
+        Patron patron = new Patron(patronId, name, email, Patron.PatronType.values()[in.buf.get()]);
+        patron.setAccountSuspended(in.buf.get() != 0);
+        patron.setOverdueCount(in.buf.getInt());
+        patron.restoreFineBalance(in.buf.getLong());
+        patron.setMemberSince(LocalDate.ofEpochDay(in.buf.getInt()));
+        int loans = in.buf.getInt();
+        checkout.registerPatron(patron);
+        for (int i = 0; i < loans; i++) {
+            String isbn = in.getString();
+            in.require(2 * Integer.BYTES + 1);
+            int checkoutDay = in.buf.getInt();
+            LocalDate dueDate = LocalDate.ofEpochDay(in.buf.getInt());
+            // A loan put on the patron directly has no checkout date; assume a full loan period
+            LocalDate checkoutDate = checkoutDay == NO_DATE ? dueDate.minusDays(patron.getLoanPeriodDays())
+                    : LocalDate.ofEpochDay(checkoutDay);
+            checkout.restoreOpenLoan(patron, isbn, checkoutDate, dueDate, in.buf.get() != 0);
+        }
+    }
+
+    /**
+     * Buffered writer over a FileChannel.
+     */
+    private static final class Output implements Closeable {
+        final FileChannel channel;
+        final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        Output(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        /** Makes room for at least the given number of bytes, draining to disk if needed. */
+        void buffer(int bytes) {
+            if (buf.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        void marker(boolean more) {
+            buffer(1);
+            buf.put((byte) (more ? 1 : 0));
+        }
+
+        void putString(String value) {
+            if (value == null) {
+                buffer(2);
+                buf.putShort((short) NULL_STRING);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length >= NULL_STRING) {
+                throw new IllegalArgumentException("String too long for snapshot: " + bytes.length + " bytes");
+            }
+            buffer(2 + bytes.length);
+            buf.putShort((short) bytes.length);
+            buf.put(bytes);
+        }
+
+        void drain() {
+            buf.flip();
+            try {
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buf.clear();
+        }
+
+        void sync() throws IOException {
+            drain();
+            channel.force(true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Buffered reader over a FileChannel.
+     */
+    private static final class Input implements Closeable {
+        final FileChannel channel;
+        final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        Input(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            buf.limit(0);
+        }
+
+        /** Ensures at least the given number of bytes can be read from the buffer. */
+        void require(int bytes) throws IOException {
+            if (buf.remaining() >= bytes) {
+                return;
+            }
+            buf.compact();
+            while (buf.position() < bytes) {
+                if (channel.read(buf) < 0) {
+                    throw new EOFException("Truncated checkout snapshot");
+                }
+            }
+            buf.flip();
+        }
+
+        boolean marker() throws IOException {
+            require(1);
+            return buf.get() != 0;
+        }
+
+        String getString() throws IOException {
+            require(2);
+            int length = Short.toUnsignedInt(buf.getShort());
+            if (length == NULL_STRING) {
+                return null;
+            }
+            require(length);
+            byte[] bytes = new byte[length];
+            buf.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
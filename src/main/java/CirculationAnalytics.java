@@ -0,0 +1,418 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Circulation reports over all loans: the archived (returned) ones in a
+ * TransactionArchive and the open ones in a Checkout.
+ *
+ * A report scans column arrays, never Transaction objects: archived loans are already
+ * stored by column (ArchiveSegment), and open loans are copied into the same layout
+ * without locking anything. Segments are aggregated in parallel as a parallel stream on
+ * a dedicated fork/join pool that by default leaves one core free, each worker reading
+ * and decompressing one segment file at a time and folding it into its own partial
+ * result; partial results are merged at the end. Checkouts and returns never wait for a
+ * report, and a report's memory is a few segments plus the per-ISBN counts.
+ *
+ * A loan is in a report if it was checked out within the report's date range, except
+ * for utilization, which counts every loan day that falls within the range.
+ */
+public final class CirculationAnalytics implements AutoCloseable {
+    private static final Patron.PatronType[] PATRON_TYPES = Patron.PatronType.values();
+    private static final Book.BookType[] BOOK_TYPES = Book.BookType.values();
+
+    private final Checkout checkout;
+    private final TransactionArchive archive;
+    private final ForkJoinPool pool;
+
+    /**
+     * Result of report(). Immutable.
+     */
+    public static final class Report {
+        private final LocalDate from;
+        private final LocalDate to;
+        private final long loans;
+        private final Map<String, Long> mostBorrowed;
+        private final double[] utilization;
+        private final double[] averageLoanDays;
+        private final double[] overdueRate;
+        private final double overallOverdueRate;
+
+        private Report(LocalDate from, LocalDate to, long loans, Map<String, Long> mostBorrowed,
+                double[] utilization, double[] averageLoanDays, double[] overdueRate, double overallOverdueRate) {
+            this.from = from;
+            this.to = to;
+            this.loans = loans;
+            this.mostBorrowed = mostBorrowed;
+            this.utilization = utilization;
+            this.averageLoanDays = averageLoanDays;
+            this.overdueRate = overdueRate;
+            this.overallOverdueRate = overallOverdueRate;
+        }
+
+        /** Loans checked out in the range, returned or not. */
+        public long getLoanCount() {
+            return loans;
+        }
+
+        /**
+         * Returns the most-borrowed ISBNs (normalized to ISBN-13 where possible) with their
+         * loan counts, most borrowed first.
+         */
+        public Map<String, Long> getMostBorrowed() {
+            return mostBorrowed;
+        }
+
+        /**
+         * Returns the share of the type's copies that were on loan over the range: loan
+         * days within the range divided by copies times days. Copies are counted from the
+         * current inventory.
+         */
+        public double getUtilization(Book.BookType type) {
+            return utilization[type.ordinal()];
+        }
+
+        /**
+         * Returns the average days from checkout to return of the type's returned loans,
+         * or NaN if there are none.
+         */
+        public double getAverageLoanDays(Patron.PatronType type) {
+            return averageLoanDays[type.ordinal()];
+        }
+
+        /**
+         * Returns the share of the type's loans that were returned late or are open and
+         * past due, or NaN if there are none.
+         */
+        public double getOverdueRate(Patron.PatronType type) {
+            return overdueRate[type.ordinal()];
+        }
+
+        /** Returns getOverdueRate() across all patron types. */
+        public double getOverdueRate() {
+            return overallOverdueRate;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("Circulation %s to %s: %d loans, %.1f%% overdue%n", from, to, loans,
+                    overallOverdueRate * 100));
+            sb.append("Most borrowed:\n");
+            mostBorrowed.forEach((isbn, count) -> sb.append(String.format("  %-17s %d%n", isbn, count)));
+            sb.append("Utilization:\n");
+            for (Book.BookType type : BOOK_TYPES) {
+                sb.append(String.format("  %-10s %5.1f%%%n", type, getUtilization(type) * 100));
+            }
+            sb.append("Average loan days / overdue rate:\n");
+            for (Patron.PatronType type : PATRON_TYPES) {
+                sb.append(String.format("  %-10s %5.1f / %5.1f%%%n", type, getAverageLoanDays(type),
+                        getOverdueRate(type) * 100));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Open-addressing map from ISBN-13 key to loan count; ISBNs without a key are
+     * counted in a HashMap.
+     */
+    private static final class IsbnCounts {
+        private static final long EMPTY = Long.MIN_VALUE;
+        private long[] keys = newKeys(1024);
+        private long[] counts = new long[1024];
+        private int size;
+        private final Map<String, Long> unkeyed = new HashMap<>();
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+
+        void add(long key, long count) {
+            int mask = keys.length - 1;
+            long hash = key * 0x9E3779B97F4A7C15L;
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                if (++size * 2 > keys.length) {
+                    counts[slot] = count;
+                    grow();
+                    return;
+                }
+            }
+            counts[slot] += count;
+        }
+
+        void add(String isbn, long count) {
+            unkeyed.merge(isbn, count, Long::sum);
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldCounts = counts;
+            keys = newKeys(oldKeys.length * 2);
+            counts = new long[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    add(oldKeys[i], oldCounts[i]);
+                }
+            }
+        }
+
+        void addAll(IsbnCounts other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.keys[i] != EMPTY) {
+                    add(other.keys[i], other.counts[i]);
+                }
+            }
+            other.unkeyed.forEach(this::add);
+        }
+
+        Map<String, Long> top(int n) {
+            PriorityQueue<Map.Entry<String, Long>> best = new PriorityQueue<>(Map.Entry.comparingByValue());
+            for (int i = 0; i < keys.length; i++) {
+                // Only format the ISBN of a count that makes the list
+                if (keys[i] != EMPTY && n > 0 && (best.size() < n || counts[i] > best.peek().getValue())) {
+                    offer(best, n, IsbnKeys.toIsbn13(keys[i]), counts[i]);
+                }
+            }
+            unkeyed.forEach((isbn, count) -> offer(best, n, isbn, count));
+            List<Map.Entry<String, Long>> sorted = new ArrayList<>(best);
+            sorted.sort(Map.Entry.<String, Long>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey()));
+            Map<String, Long> result = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> entry : sorted) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+            return result;
+        }
+
+        private static void offer(PriorityQueue<Map.Entry<String, Long>> best, int n, String isbn, long count) {
+            if (n <= 0) {
+                return;
+            }
+            if (best.size() < n) {
+                best.add(Map.entry(isbn, count));
+            } else if (count > best.peek().getValue()) {
+                best.poll();
+                best.add(Map.entry(isbn, count));
+            }
+        }
+    }
+
+    /**
+     * Partial result of one or more segments.
+     */
+    private static final class Totals {
+        final int from;
+        final int to;
+        final int today;
+        final long[] loans = new long[PATRON_TYPES.length];
+        final long[] overdue = new long[PATRON_TYPES.length];
+        final long[] returned = new long[PATRON_TYPES.length];
+        final long[] returnedDays = new long[PATRON_TYPES.length];
+        final long[] loanDays = new long[BOOK_TYPES.length];
+        final IsbnCounts isbns = new IsbnCounts();
+
+        Totals(int from, int to, int today) {
+            this.from = from;
+            this.to = to;
+            this.today = today;
+        }
+
+        void add(ArchiveSegment segment) {
+            int[] perIsbn = new int[segment.isbns.length];
+            for (int i = 0; i < segment.size; i++) {
+                int checkoutDay = segment.checkoutDays[i];
+                int returnDay = segment.returnDays[i];
+                boolean open = returnDay == ArchiveSegment.OPEN;
+                // Loan days inside [from, to]; an open loan runs through today
+                int end = Math.min(open ? today + 1 : returnDay, to + 1);
+                int start = Math.max(checkoutDay, from);
+                if (end > start && segment.bookTypes[i] != 0) {
+                    loanDays[segment.bookTypes[i] - 1] += end - start;
+                }
+                if (checkoutDay < from || checkoutDay > to) {
+                    continue;
+                }
+                int type = segment.patronTypes[i];
+                loans[type]++;
+                perIsbn[segment.isbnCodes[i]]++;
+                if (open) {
+                    if (today > segment.dueDays[i]) {
+                        overdue[type]++;
+                    }
+                } else {
+                    returned[type]++;
+                    returnedDays[type] += returnDay - checkoutDay;
+                    if (returnDay > segment.dueDays[i]) {
+                        overdue[type]++;
+                    }
+                }
+            }
+            // One map update per distinct ISBN in the segment, not per loan
+            for (int code = 0; code < perIsbn.length; code++) {
+                if (perIsbn[code] > 0) {
+                    long key = IsbnKeys.toKey(segment.isbns[code]);
+                    if (key == IsbnKeys.NO_KEY) {
+                        isbns.add(segment.isbns[code], perIsbn[code]);
+                    } else {
+                        isbns.add(key, perIsbn[code]);
+                    }
+                }
+            }
+        }
+
+        void addAll(Totals other) {
+            for (int t = 0; t < loans.length; t++) {
+                loans[t] += other.loans[t];
+                overdue[t] += other.overdue[t];
+                returned[t] += other.returned[t];
+                returnedDays[t] += other.returnedDays[t];
+            }
+            for (int t = 0; t < loanDays.length; t++) {
+                loanDays[t] += other.loanDays[t];
+            }
+            isbns.addAll(other.isbns);
+        }
+    }
+
+    /**
+     * Creates analytics that leave one core free for checkouts.
+     *
+     * @param checkout The checkout whose open loans are included
+     * @param archive The archive of returned loans, or null to report on open loans only
+     */
+    public CirculationAnalytics(Checkout checkout, TransactionArchive archive) {
+        this(checkout, archive, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Creates analytics.
+     *
+     * @param checkout The checkout whose open loans are included
+     * @param archive The archive of returned loans, or null to report on open loans only
+     * @param parallelism Maximum threads a report uses
+     */
+    public CirculationAnalytics(Checkout checkout, TransactionArchive archive, int parallelism) {
+        this.checkout = checkout;
+        this.archive = archive;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Computes a report as of the checkout's overdue clock
+     * (Checkout.advanceOverdueClock()), so open loans are overdue in the report exactly
+     * when the checkout counts them as overdue.
+     *
+     * @param from First checkout date included
+     * @param to Last checkout date included
+     * @param topCount Number of most-borrowed ISBNs to list
+     * @return The report
+     * @throws IOException If an archive segment cannot be read
+     */
+    public Report report(LocalDate from, LocalDate to, int topCount) throws IOException {
+        return report(from, to, checkout.getOverdueClockDate(), topCount);
+    }
+
+    /**
+     * Computes a report as of a given day, e.g. the day of the last OverdueSweep. Open
+     * loans due before that day count as overdue, and run through it for utilization.
+     *
+     * @param from First checkout date included
+     * @param to Last checkout date included
+     * @param asOf The day open loans are measured against
+     * @param topCount Number of most-borrowed ISBNs to list
+     * @return The report
+     * @throws IOException If an archive segment cannot be read
+     */
+    public Report report(LocalDate from, LocalDate to, LocalDate asOf, int topCount) throws IOException {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("to must not be before from");
+        }
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        int today = (int) asOf.toEpochDay();
+
+        List<TransactionArchive.SegmentLoader> sources = new ArrayList<>();
+        if (archive != null) {
+            sources.addAll(archive.scan(null, null));
+        }
+        for (ArchiveSegment segment : checkout.openLoanSegments(TransactionArchive.DEFAULT_SEGMENT_RECORDS)) {
+            sources.add(() -> segment);
+        }
+
+        Totals totals;
+        try {
+            totals = pool.submit(() -> sources.parallelStream().collect(
+                    () -> new Totals(fromDay, toDay, today),
+                    (partial, source) -> partial.add(load(source)),
+                    Totals::addAll)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while computing report", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IllegalStateException("Report failed", e.getCause());
+        }
+
+        long[] copies = new long[BOOK_TYPES.length];
+        for (Book book : checkout.getInventory().values()) {
+            if (book.getType() != null) {
+                copies[book.getType().ordinal()] += book.getTotalCopies();
+            }
+        }
+        long days = toDay - fromDay + 1L;
+        double[] utilization = new double[BOOK_TYPES.length];
+        for (int t = 0; t < utilization.length; t++) {
+            utilization[t] = copies[t] == 0 ? 0.0 : totals.loanDays[t] / (double) (copies[t] * days);
+        }
+        double[] averageLoanDays = new double[PATRON_TYPES.length];
+        double[] overdueRate = new double[PATRON_TYPES.length];
+        long loans = 0;
+        long overdue = 0;
+        for (int t = 0; t < PATRON_TYPES.length; t++) {
+            averageLoanDays[t] = totals.returned[t] == 0 ? Double.NaN
+                    : totals.returnedDays[t] / (double) totals.returned[t];
+            overdueRate[t] = totals.loans[t] == 0 ? Double.NaN : totals.overdue[t] / (double) totals.loans[t];
+            loans += totals.loans[t];
+            overdue += totals.overdue[t];
+        }
+        return new Report(from, to, loans, Collections.unmodifiableMap(totals.isbns.top(topCount)), utilization,
+                averageLoanDays, overdueRate, loans == 0 ? Double.NaN : overdue / (double) loans);
+    }
+
+    private static ArchiveSegment load(TransactionArchive.SegmentLoader source) {
+        try {
+            return source.load();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stops the report threads.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
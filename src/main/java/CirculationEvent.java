@@ -0,0 +1,122 @@
+import java.time.LocalDate;
+
+/**
+ * One change to circulation state, as published by a CirculationEventPublisher.
+ *
+ * Fields that do not apply to a type are null (patronId, isbn, date) or 0/false.
+ * Immutable once published.
+ */
+public final class CirculationEvent {
+
+    /** Kind of change. */
+    public enum Type {
+        /** A copy was checked out; date is the due date. */
+        CHECKOUT,
+        /** A loan was renewed; date is the new due date. */
+        RENEWAL,
+        /** A copy was returned; date is the return date, cents the fine charged. */
+        RETURN,
+        /** A fine was charged; isbn is set for overdue fines, null for other charges. */
+        FINE_CHARGED,
+        /** A payment was applied; cents is the amount actually taken off the balance. */
+        FINE_PAID,
+        /** A title went from no copies on the shelf to some, or back (see isAvailable). */
+        AVAILABILITY_CHANGED
+    }
+
+    private final Type type;
+    private final String patronId;
+    private final String isbn;
+    private final LocalDate date;
+    private final long cents;
+    private final boolean available;
+    long sequence; // assigned by the publisher's dispatcher before delivery
+
+    private CirculationEvent(Type type, String patronId, String isbn, LocalDate date, long cents,
+            boolean available) {
+        this.type = type;
+        this.patronId = patronId;
+        this.isbn = isbn;
+        this.date = date;
+        this.cents = cents;
+        this.available = available;
+    }
+
+    static CirculationEvent checkout(String patronId, String isbn, LocalDate dueDate) {
+        return new CirculationEvent(Type.CHECKOUT, patronId, isbn, dueDate, 0, false);
+    }
+
+    static CirculationEvent renewal(String patronId, String isbn, LocalDate dueDate) {
+        return new CirculationEvent(Type.RENEWAL, patronId, isbn, dueDate, 0, false);
+    }
+
+    static CirculationEvent returned(String patronId, String isbn, LocalDate returnDate, long fineCents) {
+        return new CirculationEvent(Type.RETURN, patronId, isbn, returnDate, fineCents, false);
+    }
+
+    static CirculationEvent fineCharged(String patronId, String isbn, long cents) {
+        return new CirculationEvent(Type.FINE_CHARGED, patronId, isbn, null, cents, false);
+    }
+
+    static CirculationEvent finePaid(String patronId, long cents) {
+        return new CirculationEvent(Type.FINE_PAID, patronId, null, null, cents, false);
+    }
+
+    static CirculationEvent availabilityChanged(String isbn, boolean available) {
+        return new CirculationEvent(Type.AVAILABILITY_CHANGED, null, isbn, null, 0, available);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the position of this event in the stream, starting at 1. Numbers are
+     * consecutive unless events were dropped, so a gap tells a subscriber it missed
+     * some (see CirculationEventPublisher.getDroppedCount()).
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getPatronId() {
+        return patronId;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append('#').append(sequence).append(' ').append(type);
+        if (patronId != null) {
+            sb.append(" patron=").append(patronId);
+        }
+        if (isbn != null) {
+            sb.append(" isbn=").append(isbn);
+        }
+        if (date != null) {
+            sb.append(" date=").append(date);
+        }
+        if (cents != 0) {
+            sb.append(" cents=").append(cents);
+        }
+        if (type == Type.AVAILABILITY_CHANGED) {
+            sb.append(" available=").append(available);
+        }
+        return sb.toString();
+    }
+}
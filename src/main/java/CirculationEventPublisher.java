@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes circulation events (checkouts, renewals, returns, fines, availability
+ * changes) to Flow subscribers in batches. Attach it with Checkout.setEventPublisher().
+ *
+ * The checkout path only ever calls publish(), which appends to a bounded lock-free
+ * intake queue and never waits: when the queue is full the event is dropped and
+ * counted. A single dispatcher thread drains the queue into batches of up to
+ * batchSize events and hands each batch to a SubmissionPublisher, which gives every
+ * subscriber its own bounded buffer and honours its request(n) demand. A slow
+ * subscriber therefore holds back the dispatcher, then fills the intake queue, and
+ * only then costs events; it never slows down a checkout. Subscribers can spot
+ * dropped events as gaps in CirculationEvent.getSequence().
+ *
+ * close() waits for subscribers to take the queued events only up to a timeout. After
+ * that, a subscriber that still has no room (one that stopped calling request(), say)
+ * loses the remaining batches, so closing never hangs on it.
+ */
+public final class CirculationEventPublisher implements Flow.Publisher<List<CirculationEvent>>, AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 65_536;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = 5_000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ConcurrentLinkedQueue<CirculationEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder(); // never given a sequence number
+    private final LongAdder undelivered = new LongAdder(); // dropped for a subscriber after close() timed out
+    private final int capacity;
+    private final int batchSize;
+    private final SubmissionPublisher<List<CirculationEvent>> publisher;
+    private final Thread dispatcher;
+    private volatile boolean idle; // dispatcher is parked or about to park
+    private volatile boolean closed;
+    private volatile long closeDeadline; // System.nanoTime() when close() stops waiting for subscribers
+    private long sequence; // dispatcher thread only
+    private long droppedSeen; // dispatcher thread only
+
+    /**
+     * Creates a publisher with default sizes, delivering on the common fork/join pool.
+     */
+    public CirculationEventPublisher() {
+        this(DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, ForkJoinPool.commonPool(), Flow.defaultBufferSize());
+    }
+
+    /**
+     * Creates a publisher.
+     *
+     * @param capacity Maximum events waiting for the dispatcher before new ones are dropped
+     * @param batchSize Maximum events per delivered batch
+     * @param executor Runs subscriber callbacks
+     * @param subscriberBuffer Maximum batches buffered per subscriber
+     */
+    public CirculationEventPublisher(int capacity, int batchSize, Executor executor, int subscriberBuffer) {
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("capacity and batchSize must be positive");
+        }
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.publisher = new SubmissionPublisher<>(executor, subscriberBuffer);
+        this.dispatcher = new Thread(this::dispatch, "circulation-events");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<CirculationEvent>> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Queues an event without blocking.
+     *
+     * @param event The event
+     * @return False if the event was dropped because the queue is full or closed
+     */
+    boolean publish(CirculationEvent event) {
+        if (closed) {
+            dropped.increment();
+            return false;
+        }
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            dropped.increment();
+            return false;
+        }
+        queue.offer(event);
+        if (idle) {
+            LockSupport.unpark(dispatcher);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of events dropped because the intake queue was full, the
+     * publisher was closed, or close() timed out before a subscriber made room for them
+     * (counted once per such subscriber).
+     */
+    public long getDroppedCount() {
+        return dropped.sum() + undelivered.sum();
+    }
+
+    /**
+     * Returns the number of current subscribers.
+     */
+    public int getSubscriberCount() {
+        return publisher.getNumberOfSubscribers();
+    }
+
+    /**
+     * Stops accepting events, delivers the ones already queued and completes every
+     * subscriber, waiting up to DEFAULT_CLOSE_TIMEOUT_MILLIS for slow subscribers.
+     */
+    @Override
+    public void close() {
+        close(DEFAULT_CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops accepting events, delivers the ones already queued and completes every
+     * subscriber. Waits for the dispatcher to finish. Once the timeout has passed,
+     * queued batches are dropped for subscribers with no room for them.
+     *
+     * @param timeout How long to wait for subscribers to make room
+     * @param unit Unit of the timeout
+     */
+    public void close(long timeout, TimeUnit unit) {
+        closeDeadline = System.nanoTime() + unit.toNanos(timeout);
+        closed = true;
+        LockSupport.unpark(dispatcher);
+        boolean interrupted = false;
+        while (dispatcher.isAlive()) {
+            try {
+                dispatcher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch() {
+        while (true) {
+            CirculationEvent event = queue.poll();
+            if (event == null) {
+                if (closed && queue.isEmpty()) {
+                    break;
+                }
+                idle = true;
+                // Re-check after announcing idleness so a concurrent publish is not missed
+                if (queue.isEmpty() && !closed) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+                continue;
+            }
+            // Leave a gap in the sequence where events were dropped
+            long droppedNow = dropped.sum();
+            sequence += droppedNow - droppedSeen;
+            droppedSeen = droppedNow;
+
+            List<CirculationEvent> batch = new ArrayList<>(Math.min(batchSize, queued.get()));
+            do {
+                queued.decrementAndGet();
+                event.sequence = ++sequence;
+                batch.add(event);
+            } while (batch.size() < batchSize && (event = queue.poll()) != null);
+            // Waits while a subscriber's buffer is full; publish() keeps queueing meanwhile
+            deliver(Collections.unmodifiableList(batch));
+        }
+        publisher.close();
+    }
+
+    /**
+     * Hands a batch to every subscriber. Like SubmissionPublisher.submit() this waits
+     * while any subscriber's buffer is full, but once close() has timed out the batch is
+     * dropped for subscribers that still have no room instead.
+     */
+    private void deliver(List<CirculationEvent> batch) {
+        int room = publisher.getMaxBufferCapacity();
+        while (publisher.estimateMaximumLag() >= room && !(closed && System.nanoTime() - closeDeadline >= 0)) {
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+        publisher.offer(batch, (subscriber, items) -> {
+            undelivered.add(items.size());
+            return false;
+        });
+    }
+}
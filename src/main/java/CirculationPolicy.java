@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Library circulation policy: checkout limits and loan periods per PatronType, the
+ * overdue fine tiers, a fine multiplier per BookType and the per-book fine cap.
+ *
+ * A policy is immutable; all values live in small arrays indexed by enum ordinal. Each
+ * Checkout has its own policy setting (Checkout.setPolicy(), shared by the shards of a
+ * ShardedCheckout and read by the patrons registered with it); a checkout that has no
+ * policy set follows the global default, which install() and reload() replace.
+ * Patron.getMaxCheckoutLimit(), Patron.getLoanPeriodDays() and Checkout.calculateFine()
+ * read the policy with a few volatile loads and allocate nothing, and either kind of
+ * swap is atomic and needs no restart. A checkout in progress may still finish under
+ * the policy it started with.
+ *
+ * Policies load from a properties file; every key is optional and falls back to the
+ * built-in default:
+ * <pre>
+ *   limit.STUDENT=10            # max books checked out, per PatronType
+ *   loanDays.STUDENT=30         # loan period in days, per PatronType
+ *   fine.tiers=1:0.25,8:0.50,15:1.00   # from overdue day N on, dollars per day
+ *   fine.multiplier.TEXTBOOK=2  # per BookType, applied before the cap
+ *   fine.max=25.00              # cap per returned book, in dollars
+ * </pre>
+ */
+public final class CirculationPolicy {
+    private static final Patron.PatronType[] PATRON_TYPES = Patron.PatronType.values();
+    private static final Book.BookType[] BOOK_TYPES = Book.BookType.values();
+
+    /** The built-in policy. */
+    public static final CirculationPolicy DEFAULT = new CirculationPolicy(
+            new int[] {10, 20, 15, 5, 3},   // STUDENT, FACULTY, STAFF, PUBLIC, CHILD
+            new int[] {30, 60, 45, 21, 14},
+            new int[] {1, 8, 15},
+            new long[] {25, 50, 100},
+            new int[] {100, 100, 200, 200, 100}, // FICTION, NONFICTION, REFERENCE, TEXTBOOK, CHILDREN
+            FineLedger.toCents(Checkout.MAX_FINE_AMOUNT));
+
+    private static final AtomicReference<CirculationPolicy> CURRENT = new AtomicReference<>(DEFAULT);
+
+    private final int[] maxCheckouts;
+    private final int[] loanDays;
+    private final int[] tierStartDays; // ascending, first is 1
+    private final long[] tierCentsPerDay;
+    private final int[] multiplierPercent;
+    private final long maxFineCents;
+
+    private CirculationPolicy(int[] maxCheckouts, int[] loanDays, int[] tierStartDays, long[] tierCentsPerDay,
+            int[] multiplierPercent, long maxFineCents) {
+        this.maxCheckouts = maxCheckouts;
+        this.loanDays = loanDays;
+        this.tierStartDays = tierStartDays;
+        this.tierCentsPerDay = tierCentsPerDay;
+        this.multiplierPercent = multiplierPercent;
+        this.maxFineCents = maxFineCents;
+    }
+
+    /**
+     * One checkout's policy setting. Until a policy is set it follows the global
+     * default, so checkouts and patrons that were never given a policy keep working as
+     * before.
+     */
+    static final class Setting {
+        private volatile CirculationPolicy policy;
+
+        /**
+         * Returns the policy in force: the one set here, or else the global default.
+         */
+        CirculationPolicy get() {
+            CirculationPolicy own = policy;
+            return own != null ? own : CURRENT.get();
+        }
+
+        /**
+         * Sets the policy, or with null goes back to following the global default.
+         *
+         * @return The policy set before, or null if it followed the global default
+         */
+        CirculationPolicy set(CirculationPolicy replacement) {
+            CirculationPolicy previous = policy;
+            policy = replacement;
+            return previous;
+        }
+    }
+
+    /**
+     * Returns the global default policy, in force for checkouts that have no policy of
+     * their own and for patrons not registered with any checkout.
+     */
+    public static CirculationPolicy current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes a policy the global default.
+     *
+     * @param policy The new policy
+     * @return The policy it replaced
+     */
+    public static CirculationPolicy install(CirculationPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must not be null");
+        }
+        return CURRENT.getAndSet(policy);
+    }
+
+    /**
+     * Loads a policy file and makes it the global default. If the file cannot be read
+     * or is invalid the current default stays in force.
+     *
+     * @param file The properties file
+     * @return The policy it replaced
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If a value is invalid
+     */
+    public static CirculationPolicy reload(Path file) throws IOException {
+        return install(load(file));
+    }
+
+    /**
+     * Reads a policy file (UTF-8 properties, see the class comment).
+     *
+     * @param file The file
+     * @return The policy
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If a value is invalid
+     */
+    public static CirculationPolicy load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * Builds a policy from properties, using DEFAULT for missing keys.
+     *
+     * @param properties The settings
+     * @return The policy
+     * @throws IllegalArgumentException If a key is unknown or a value is invalid
+     */
+    public static CirculationPolicy fromProperties(Properties properties) {
+        int[] limits = DEFAULT.maxCheckouts.clone();
+        int[] days = DEFAULT.loanDays.clone();
+        int[] starts = DEFAULT.tierStartDays;
+        long[] rates = DEFAULT.tierCentsPerDay;
+        int[] multipliers = DEFAULT.multiplierPercent.clone();
+        long maxFine = DEFAULT.maxFineCents;
+
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            try {
+                if (key.startsWith("limit.")) {
+                    limits[patronType(key, "limit.").ordinal()] = positive(Integer.parseInt(value), key);
+                } else if (key.startsWith("loanDays.")) {
+                    days[patronType(key, "loanDays.").ordinal()] = positive(Integer.parseInt(value), key);
+                } else if (key.startsWith("fine.multiplier.")) {
+                    String name = key.substring("fine.multiplier.".length()).toUpperCase(Locale.ROOT);
+                    int percent = Math.toIntExact(Math.round(Double.parseDouble(value) * 100));
+                    if (percent < 0) {
+                        throw new IllegalArgumentException(key + " must not be negative");
+                    }
+                    multipliers[Book.BookType.valueOf(name).ordinal()] = percent;
+                } else if (key.equals("fine.max")) {
+                    maxFine = FineLedger.toCents(Double.parseDouble(value));
+                    if (maxFine < 0) {
+                        throw new IllegalArgumentException(key + " must not be negative");
+                    }
+                } else if (key.equals("fine.tiers")) {
+                    String[] tiers = value.split(",");
+                    starts = new int[tiers.length];
+                    rates = new long[tiers.length];
+                    for (int i = 0; i < tiers.length; i++) {
+                        String[] parts = tiers[i].trim().split(":");
+                        if (parts.length != 2) {
+                            throw new IllegalArgumentException(key + ": expected day:dollars, got " + tiers[i]);
+                        }
+                        starts[i] = Integer.parseInt(parts[0].trim());
+                        rates[i] = FineLedger.toCents(Double.parseDouble(parts[1].trim()));
+                        if (rates[i] < 0 || (i == 0 ? starts[i] != 1 : starts[i] <= starts[i - 1])) {
+                            throw new IllegalArgumentException(
+                                    key + ": tiers must start at day 1, ascend and have non-negative rates");
+                        }
+                    }
+                } else {
+                    throw new IllegalArgumentException("Unknown policy key: " + key);
+                }
+            } catch (NumberFormatException | ArithmeticException e) {
+                throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+            }
+        }
+        return new CirculationPolicy(limits, days, starts, rates, multipliers, maxFine);
+    }
+
+    private static Patron.PatronType patronType(String key, String prefix) {
+        return Patron.PatronType.valueOf(key.substring(prefix.length()).toUpperCase(Locale.ROOT));
+    }
+
+    private static int positive(int value, String key) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(key + " must be positive");
+        }
+        return value;
+    }
+
+    public int getMaxCheckouts(Patron.PatronType type) {
+        return maxCheckouts[type.ordinal()];
+    }
+
+    public int getLoanDays(Patron.PatronType type) {
+        return loanDays[type.ordinal()];
+    }
+
+    public long getMaxFineCents() {
+        return maxFineCents;
+    }
+
+    /**
+     * Computes the fine for a book returned late: each overdue day is charged at the
+     * rate of the tier it falls in, the total is multiplied for the book's type and
+     * then capped.
+     *
+     * @param daysOverdue Days past the due date
+     * @param type The book type (null is charged at the base rate)
+     * @return Fine in cents, 0 if not overdue
+     */
+    public long fineCents(int daysOverdue, Book.BookType type) {
+        if (daysOverdue <= 0) {
+            return 0;
+        }
+        long fine = 0;
+        for (int i = 0; i < tierStartDays.length; i++) {
+            int from = tierStartDays[i];
+            if (daysOverdue < from) {
+                break;
+            }
+            int to = i + 1 < tierStartDays.length ? Math.min(daysOverdue, tierStartDays[i + 1] - 1) : daysOverdue;
+            fine += (long) (to - from + 1) * tierCentsPerDay[i];
+        }
+        if (type != null) {
+            fine = fine * multiplierPercent[type.ordinal()] / 100;
+        }
+        return Math.min(fine, maxFineCents);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("CirculationPolicy[");
+        for (Patron.PatronType type : PATRON_TYPES) {
+            sb.append(type).append('=').append(getMaxCheckouts(type)).append('/').append(getLoanDays(type))
+                    .append("d ");
+        }
+        sb.append("tiers=");
+        for (int i = 0; i < tierStartDays.length; i++) {
+            sb.append(i == 0 ? "" : ",").append(tierStartDays[i]).append(':').append(tierCentsPerDay[i]).append('c');
+        }
+        sb.append(" multipliers=").append(Arrays.toString(multiplierPercent)).append("% of ")
+                .append(Arrays.toString(BOOK_TYPES)).append(" max=").append(maxFineCents).append("c]");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,110 @@
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Hashed timing wheel of loans keyed by due date (epoch day).
+ *
+ * Each day maps to one of {@link #SLOTS} slots; loans due more than SLOTS days ahead
+ * share a slot with nearer ones and are simply skipped until their own round comes
+ * up. Advancing the clock by one day visits a single slot, so the work done is
+ * proportional to the loans that actually became overdue rather than to all open
+ * loans. Scheduling and cancelling are O(1) and safe to call concurrently with
+ * {@link #advanceTo(long, Consumer)}.
+ *
+ * @param <T> The loan type stored in the wheel
+ */
+final class DueDateWheel<T> {
+    static final int SLOTS = 256;
+    private static final int MASK = SLOTS - 1;
+
+    private final Set<T>[] slots;
+    private final ToLongFunction<T> dueDayOf;
+    private volatile long currentDay;
+
+    /**
+     * Creates a wheel whose clock starts at the given day.
+     *
+     * @param dueDayOf Reads an item's current due date as an epoch day
+     * @param startDay First day of the clock; loans due before it are already overdue
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    DueDateWheel(ToLongFunction<T> dueDayOf, long startDay) {
+        this.dueDayOf = dueDayOf;
+        this.currentDay = startDay;
+        this.slots = new Set[SLOTS];
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    /**
+     * Returns the day the wheel has been advanced to.
+     */
+    long currentDay() {
+        return currentDay;
+    }
+
+    /**
+     * Adds a loan to the wheel.
+     *
+     * @param item The loan
+     * @param dueDay Its due date as an epoch day
+     * @return false if the loan is already overdue on the wheel's current day, in which
+     *         case it was not scheduled
+     */
+    boolean schedule(T item, long dueDay) {
+        if (dueDay < currentDay) {
+            return false;
+        }
+        Set<T> slot = slots[(int) (dueDay & MASK)];
+        slot.add(item);
+        // The clock may have swept past this slot while we were adding
+        if (dueDay < currentDay && slot.remove(item)) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes a loan from the wheel (on return or before a renewal).
+     *
+     * @param item The loan
+     * @param dueDay The due date it was scheduled with
+     */
+    void cancel(T item, long dueDay) {
+        slots[(int) (dueDay & MASK)].remove(item);
+    }
+
+    /**
+     * Moves the clock forward, handing every loan that is now overdue (due date before
+     * {@code day}) to the callback exactly once.
+     *
+     * @param day The new current day
+     * @param onOverdue Called for each loan that crossed its due date
+     * @return Number of loans handed to the callback
+     */
+    synchronized int advanceTo(long day, Consumer<T> onOverdue) {
+        long from = currentDay;
+        if (day <= from) {
+            return 0;
+        }
+        currentDay = day;
+        int crossed = 0;
+        long steps = Math.min(day - from, SLOTS);
+        for (long d = from; d < from + steps; d++) {
+            Iterator<T> it = slots[(int) (d & MASK)].iterator();
+            while (it.hasNext()) {
+                T item = it.next();
+                if (dueDayOf.applyAsLong(item) < day) {
+                    it.remove();
+                    onOverdue.accept(item);
+                    crossed++;
+                }
+            }
+        }
+        return crossed;
+    }
+}
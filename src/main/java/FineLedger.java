@@ -0,0 +1,110 @@
+import java.time.LocalDate;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Library-wide view of outstanding fines, in integer cents.
+ *
+ * Every registered patron reports each change of its balance here. The total is kept
+ * in a LongAdder, so concurrent returns and payments on different patrons update
+ * separate cells instead of contending on one counter, and reading the total never
+ * locks any patron. Per-patron history lives on the patron itself (see
+ * Patron.getFineHistory()).
+ */
+public final class FineLedger {
+
+    /**
+     * Kind of a ledger entry.
+     */
+    public enum Kind {
+        /** A fine added to the balance (overdue return, lost-book fee, ...). */
+        CHARGE,
+        /** A payment taken off the balance. */
+        PAYMENT,
+        /** A balance cleared without payment (Patron.resetFines()). */
+        WAIVER
+    }
+
+    /**
+     * One change to a patron's balance. Immutable.
+     */
+    public static final class Entry {
+        private final Kind kind;
+        private final long cents;
+        private final long balanceCents;
+        private final LocalDate date;
+
+        Entry(Kind kind, long cents, long balanceCents, LocalDate date) {
+            this.kind = kind;
+            this.cents = cents;
+            this.balanceCents = balanceCents;
+            this.date = date;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Returns the amount that was actually applied, in cents. For a payment this is
+         * at most the balance at the time, since balances never go below zero.
+         */
+        public long getCents() {
+            return cents;
+        }
+
+        /**
+         * Returns the patron's balance right after this entry, in cents.
+         */
+        public long getBalanceCents() {
+            return balanceCents;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + cents + "c on " + date + " -> " + balanceCents + "c";
+        }
+    }
+
+    private final LongAdder outstanding = new LongAdder();
+
+    FineLedger() {
+    }
+
+    /**
+     * Records a change to some patron's balance.
+     *
+     * @param deltaCents Change in cents (negative for payments)
+     */
+    void adjust(long deltaCents) {
+        outstanding.add(deltaCents);
+    }
+
+    /**
+     * Returns the total unpaid fines across all registered patrons.
+     *
+     * @return Outstanding fines in cents
+     */
+    public long getOutstandingCents() {
+        return outstanding.sum();
+    }
+
+    /**
+     * Returns the total unpaid fines across all registered patrons.
+     *
+     * @return Outstanding fines in dollars
+     */
+    public double getOutstanding() {
+        return outstanding.sum() / 100.0;
+    }
+
+    /**
+     * Converts a dollar amount to cents, rounding to the nearest cent.
+     */
+    static long toCents(double dollars) {
+        return Math.round(dollars * 100);
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Patrons waiting for a copy of one title, in the order they placed their holds,
+ * together with the returned copies held back for them.
+ *
+ * A return that finds someone waiting keeps its copy here (holdCopy) instead of
+ * putting it back into the book's available copies, so walk-up checkouts cannot take
+ * it first. The copy is then handed to the next waiting patron with claimNext. All
+ * methods lock only this queue; callers must not hold a patron's monitor while
+ * lending a claimed copy to a different patron.
+ */
+final class HoldQueue {
+    private final ArrayDeque<Patron> waiting = new ArrayDeque<>();
+    private final Set<String> patronIds = new HashSet<>();
+    private int copiesInHand;
+
+    /**
+     * Adds a patron to the end of the queue.
+     *
+     * @return The patron's position (1 = next in line), or -1 if already waiting
+     */
+    synchronized int add(Patron patron) {
+        if (!patronIds.add(patron.getPatronId())) {
+            return -1;
+        }
+        waiting.addLast(patron);
+        return waiting.size();
+    }
+
+    /**
+     * Removes a patron's hold. Linear in the queue length; cancellations are rare.
+     *
+     * @return True if the patron was waiting
+     */
+    synchronized boolean remove(Patron patron) {
+        if (!patronIds.remove(patron.getPatronId())) {
+            return false;
+        }
+        for (Iterator<Patron> it = waiting.iterator(); it.hasNext(); ) {
+            if (it.next().getPatronId().equals(patron.getPatronId())) {
+                it.remove();
+                break;
+            }
+        }
+        return true;
+    }
+
+    synchronized int size() {
+        return waiting.size();
+    }
+
+    /**
+     * Keeps a returned copy for the queue if anyone is waiting.
+     *
+     * @return True if the copy was kept; false if the caller must release it to the book
+     */
+    synchronized boolean holdCopy() {
+        if (waiting.isEmpty()) {
+            return false;
+        }
+        copiesInHand++;
+        return true;
+    }
+
+    /**
+     * Takes the next waiting patron together with a copy for them: a held-back copy if
+     * there is one, otherwise an available copy claimed from the book. When no one is
+     * left waiting, held-back copies are released to the book.
+     *
+     * @param book The title this queue belongs to
+     * @return The patron the copy now belongs to, or null if no one is waiting or no
+     *         copy is free
+     */
+    synchronized Patron claimNext(Book book) {
+        if (waiting.isEmpty()) {
+            for (; copiesInHand > 0; copiesInHand--) {
+                book.returnBook();
+            }
+            return null;
+        }
+        if (copiesInHand > 0) {
+            copiesInHand--;
+        } else if (!book.tryCheckout()) {
+            return null;
+        }
+        Patron next = waiting.pollFirst();
+        patronIds.remove(next.getPatronId());
+        return next;
+    }
+
+    /**
+     * Gives back a copy claimed for a patron who could not take it.
+     */
+    synchronized void giveBack() {
+        copiesInHand++;
+    }
+}
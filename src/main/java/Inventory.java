@@ -0,0 +1,94 @@
+import java.util.Map;
+
+/**
+ * Storage backend for the books of a Checkout.
+ *
+ * Implementations are safe for concurrent use: lookups may run while books are being
+ * added and while copies are checked out and returned. Each backend keeps its own
+ * per-BookType title counters so that countByType is O(1).
+ *
+ * Two backends exist: {@link BookMap}, the default on-heap map of Book objects, and
+ * {@link OffHeapInventory}, a columnar store for very large catalogs.
+ */
+public interface Inventory extends Iterable<Book> {
+
+    /**
+     * Told when a title's available copies go from zero to non-zero or back. Called
+     * while the backend holds a lock on the title, so it must be quick and must not
+     * call back into the inventory.
+     */
+    interface AvailabilityListener {
+        void availabilityChanged(String isbn, boolean available);
+    }
+
+    /**
+     * Looks up a book by ISBN in any hyphenation.
+     *
+     * @param isbn The ISBN (can be null)
+     * @return The book, or null if none
+     */
+    Book get(String isbn);
+
+    /**
+     * Looks up a book by normalized key, without parsing an ISBN string.
+     *
+     * @param key Key from IsbnKeys.toKey
+     * @return The book, or null if none
+     */
+    Book get(long key);
+
+    /**
+     * Adds a book, replacing any book with the same normalized ISBN.
+     *
+     * @param book The book to add
+     * @return The book previously stored under that ISBN, or null
+     */
+    Book put(Book book);
+
+    /**
+     * Returns the number of titles.
+     *
+     * @return Number of titles
+     */
+    int size();
+
+    /**
+     * Counts titles of a type.
+     *
+     * @param type The book type (not null)
+     * @param onlyAvailable If true, counts only titles with available copies
+     * @return Number of matching titles
+     */
+    int countByType(Book.BookType type, boolean onlyAvailable);
+
+    /**
+     * Sets the listener told about availability changes.
+     *
+     * @param listener The listener, or null for none
+     */
+    void setAvailabilityListener(AvailabilityListener listener);
+
+    /**
+     * Maps a Book passed in by a caller to the object whose copy counts this backend
+     * tracks. The default returns the book unchanged, since on-heap backends store
+     * the caller's objects.
+     *
+     * @param book The book (not null)
+     * @return The book to check out or return
+     * @throws IllegalArgumentException If the backend cannot track the book's copies
+     */
+    default Book resolve(Book book) {
+        return book;
+    }
+
+    /**
+     * Returns a live, read-only Map view keyed by ISBN string. get() and containsKey()
+     * accept any hyphenation; put() and remove() throw UnsupportedOperationException.
+     * Iteration is weakly consistent.
+     *
+     * @return The map view
+     */
+    default Map<String, Book> asMap() {
+        return new InventoryMapView(this);
+    }
+}
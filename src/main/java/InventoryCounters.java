@@ -0,0 +1,71 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Running per-BookType title counts for one inventory: total titles and titles with
+ * at least one available copy. Books report their own zero/non-zero availability
+ * transitions here, so reading a count is O(1) no matter how large the catalog is.
+ */
+final class InventoryCounters {
+    private final AtomicIntegerArray titles = new AtomicIntegerArray(Book.BookType.values().length);
+    private final AtomicIntegerArray available = new AtomicIntegerArray(Book.BookType.values().length);
+    private volatile Inventory.AvailabilityListener listener;
+
+    /**
+     * Adds or removes one title.
+     *
+     * @param type The title's type (null types are not counted)
+     * @param isAvailable Whether the title currently counts as available
+     * @param delta +1 to add, -1 to remove
+     */
+    void adjustTitles(Book.BookType type, boolean isAvailable, int delta) {
+        if (type == null) {
+            return;
+        }
+        titles.addAndGet(type.ordinal(), delta);
+        if (isAvailable) {
+            available.addAndGet(type.ordinal(), delta);
+        }
+    }
+
+    /**
+     * Records a title becoming available (+1) or unavailable (-1).
+     */
+    void adjustAvailable(Book.BookType type, int delta) {
+        if (type != null) {
+            available.addAndGet(type.ordinal(), delta);
+        }
+    }
+
+    void setListener(Inventory.AvailabilityListener availabilityListener) {
+        this.listener = availabilityListener;
+    }
+
+    /**
+     * Returns true if availability changes should be passed to notifyAvailability, so
+     * callers can skip looking up the ISBN otherwise.
+     */
+    boolean hasListener() {
+        return listener != null;
+    }
+
+    /**
+     * Passes an availability change to the listener, if any.
+     */
+    void notifyAvailability(String isbn, boolean isAvailable) {
+        Inventory.AvailabilityListener l = listener;
+        if (l != null) {
+            l.availabilityChanged(isbn, isAvailable);
+        }
+    }
+
+    /**
+     * Returns the number of titles of a type.
+     *
+     * @param type The book type
+     * @param onlyAvailable If true, counts only titles with available copies
+     * @return The count
+     */
+    int count(Book.BookType type, boolean onlyAvailable) {
+        return onlyAvailable ? available.get(type.ordinal()) : titles.get(type.ordinal());
+    }
+}
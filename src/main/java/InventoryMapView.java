@@ -0,0 +1,86 @@
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Read-only Map&lt;String, Book&gt; view of an Inventory, returned by
+ * Checkout.getInventory(). Books are added with Checkout.addBook(), which also indexes
+ * and journals them; put() and remove() throw UnsupportedOperationException.
+ */
+final class InventoryMapView extends AbstractMap<String, Book> {
+    private final Inventory inventory;
+
+    InventoryMapView(Inventory inventory) {
+        this.inventory = inventory;
+    }
+
+    @Override
+    public Book get(Object key) {
+        return key instanceof String ? inventory.get((String) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Book put(String key, Book value) {
+        throw new UnsupportedOperationException("Add books with Checkout.addBook()");
+    }
+
+    @Override
+    public Book remove(Object key) {
+        throw new UnsupportedOperationException("Inventories do not remove books");
+    }
+
+    @Override
+    public int size() {
+        return inventory.size();
+    }
+
+    @Override
+    public Collection<Book> values() {
+        return new AbstractCollection<Book>() {
+            @Override
+            public Iterator<Book> iterator() {
+                return inventory.iterator();
+            }
+
+            @Override
+            public int size() {
+                return inventory.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<String, Book>> entrySet() {
+        return new AbstractSet<Entry<String, Book>>() {
+            @Override
+            public Iterator<Entry<String, Book>> iterator() {
+                Iterator<Book> books = inventory.iterator();
+                return new Iterator<Entry<String, Book>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return books.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Book> next() {
+                        Book book = books.next();
+                        return new SimpleImmutableEntry<>(book.getIsbn(), book);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return inventory.size();
+            }
+        };
+    }
+}
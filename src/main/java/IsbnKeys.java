@@ -0,0 +1,99 @@
+/**
+ * Packs ISBNs into primitive long keys.
+ *
+ * Any string that passes the ISBN format rules is normalized to its 13-digit ISBN-13
+ * value: hyphens are ignored and an ISBN-10 is converted by prefixing 978 and
+ * recomputing the check digit. So "978-0-306-40615-7", "9780306406157" and
+ * "0-306-40615-2" all share one key. Strings that are not ISBNs map to {@link #NO_KEY},
+ * and so does an ISBN-10 whose check digit is wrong: the conversion drops that digit,
+ * so accepting it would give "0-306-40615-3" the key of "0-306-40615-2".
+ */
+public final class IsbnKeys {
+    /** Key returned for strings that are not ISBNs. */
+    public static final long NO_KEY = -1L;
+
+    private static final long ISBN13_PREFIX = 978_000_000_000L;
+
+    private IsbnKeys() {
+    }
+
+    /**
+     * Normalizes an ISBN to its 13-digit key without allocating.
+     *
+     * @param isbn The ISBN text (can be null)
+     * @return The ISBN-13 value, or NO_KEY if the text is not an ISBN or is an
+     *         ISBN-10 with a wrong check digit
+     */
+    public static long toKey(CharSequence isbn) {
+        if (isbn == null) {
+            return NO_KEY;
+        }
+        long value = 0;
+        int digits = 0;
+        boolean checkX = false;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            if (checkX || digits == 13) {
+                return NO_KEY;
+            }
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+            } else if ((c == 'X' || c == 'x') && digits == 9) {
+                checkX = true;
+            } else {
+                return NO_KEY;
+            }
+            digits++;
+        }
+        if (digits == 13 && !checkX) {
+            return value;
+        }
+        if (digits != 10) {
+            return NO_KEY;
+        }
+        long firstNine = checkX ? value : value / 10;
+        if (!isbn10CheckDigitMatches(firstNine, checkX ? 10 : (int) (value % 10))) {
+            return NO_KEY;
+        }
+        // Drop the ISBN-10 check digit and compute the ISBN-13 one
+        long body = ISBN13_PREFIX + firstNine;
+        return body * 10 + isbn13CheckDigit(body);
+    }
+
+    /**
+     * Formats a key back into an unhyphenated 13-digit ISBN.
+     *
+     * @param key A key returned by toKey (not NO_KEY)
+     * @return The ISBN-13 string
+     */
+    public static String toIsbn13(long key) {
+        String digits = Long.toString(key);
+        return digits.length() == 13 ? digits : "0".repeat(13 - digits.length()) + digits;
+    }
+
+    private static boolean isbn10CheckDigitMatches(long firstNine, int checkDigit) {
+        int sum = checkDigit;
+        long rest = firstNine;
+        // Digit 9 (rightmost of the nine) has weight 2, then 3, ... up to 10
+        for (int weight = 2; weight <= 10; weight++) {
+            sum += weight * (int) (rest % 10);
+            rest /= 10;
+        }
+        return sum % 11 == 0;
+    }
+
+    private static int isbn13CheckDigit(long firstTwelve) {
+        int sum = 0;
+        long rest = firstTwelve;
+        // Digit 12 (rightmost of the twelve) has weight 3, then alternating 1, 3, ...
+        for (int i = 0; i < 12; i++) {
+            int d = (int) (rest % 10);
+            sum += (i & 1) == 0 ? 3 * d : d;
+            rest /= 10;
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,198 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Allocation-free ISBN validation.
+ *
+ * Every check is a single pass over the characters (or bytes) with no intermediate
+ * strings or regular expressions, and the scan state is packed into one int, so
+ * checking an ISBN allocates nothing (validateLines allocates only its result).
+ * Two modes are offered:
+ * - format only: the rules of Checkout.isValidISBN (digits and hyphens, 10 or 13
+ *   digits once hyphens are ignored);
+ * - with check digit: the format rules plus a valid ISBN-10 (mod 11) or ISBN-13
+ *   (mod 10) check digit. In this mode an ISBN-10 may end in 'X', meaning 10.
+ */
+public final class IsbnValidator {
+    private static final int NOT_A_DIGIT = -1;
+    private static final int CHECK_X = 10;
+
+    // Scan state: bits 0-3 count the digits, bit 4 marks an 'X' check character, and
+    // one byte each holds the ISBN-10 prefix sum and sum of prefix sums (both mod 11)
+    // and the ISBN-13 weighted sum (mod 10). A rejected scan is REJECT.
+    private static final int START = 0;
+    private static final int REJECT = -1;
+    private static final int DIGIT_MASK = 0xF;
+    private static final int X_SEEN = 0x10;
+
+    private IsbnValidator() {
+    }
+
+    /**
+     * Validates ISBN format only (same rules as Checkout.isValidISBN).
+     *
+     * @param isbn The text to validate (can be null)
+     * @return true if the format is valid
+     */
+    public static boolean isValidFormat(CharSequence isbn) {
+        if (isbn == null) {
+            return false;
+        }
+        int digits = 0;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c != '-') {
+                return false;
+            }
+        }
+        return digits == 10 || digits == 13;
+    }
+
+    /**
+     * Validates ISBN format and check digit.
+     *
+     * @param isbn The text to validate (can be null)
+     * @return true if the format and check digit are valid
+     */
+    public static boolean isValid(CharSequence isbn) {
+        if (isbn == null) {
+            return false;
+        }
+        int state = START;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c > 0x7F || (state = accept(state, (byte) c, true)) == REJECT) {
+                return false;
+            }
+        }
+        return result(state, true);
+    }
+
+    /**
+     * Validates an ISBN stored as ASCII bytes inside a larger buffer, e.g. one field of
+     * an import file.
+     *
+     * @param buf The buffer
+     * @param offset Start of the ISBN
+     * @param length Number of bytes
+     * @param checkDigits If true, also verify the check digit
+     * @return true if valid
+     */
+    public static boolean isValid(byte[] buf, int offset, int length, boolean checkDigits) {
+        int state = START;
+        for (int i = offset; i < offset + length; i++) {
+            if ((state = accept(state, buf[i], checkDigits)) == REJECT) {
+                return false;
+            }
+        }
+        return result(state, checkDigits);
+    }
+
+    /**
+     * Validates an import buffer holding one ISBN per line ("\n" or "\r\n" endings).
+     * The buffer is read from its position to its limit without being modified.
+     *
+     * @param input The lines to validate
+     * @param checkDigits If true, also verify check digits
+     * @return A bit set with bit i set if line i (zero-based) is a valid ISBN
+     */
+    public static BitSet validateLines(ByteBuffer input, boolean checkDigits) {
+        BitSet valid = new BitSet();
+        int state = START;
+        boolean empty = true;
+        int line = 0;
+        for (int i = input.position(); i < input.limit(); i++) {
+            byte b = input.get(i);
+            if (b == '\n') {
+                if (!empty && result(state, checkDigits)) {
+                    valid.set(line);
+                }
+                line++;
+                state = START;
+                empty = true;
+            } else if (b != '\r') {
+                empty = false;
+                if (state != REJECT) {
+                    state = accept(state, b, checkDigits);
+                }
+            }
+        }
+        if (!empty && result(state, checkDigits)) {
+            valid.set(line);
+        }
+        return valid;
+    }
+
+    /**
+     * Validates an import file with one ISBN per line by memory-mapping it.
+     *
+     * @param file The file to validate (must be smaller than 2 GB)
+     * @param checkDigits If true, also verify check digits
+     * @return A bit set with bit i set if line i (zero-based) is a valid ISBN
+     * @throws IOException If the file cannot be read
+     */
+    public static BitSet validateFile(Path file, boolean checkDigits) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return validateLines(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), checkDigits);
+        }
+    }
+
+    /**
+     * Advances a scan by one character. ISBN-10 and ISBN-13 checksums are both
+     * accumulated as digits arrive, since the final length is not known up front.
+     *
+     * @return The new state, or REJECT
+     */
+    private static int accept(int state, byte b, boolean checkDigits) {
+        if (b == '-') {
+            return state;
+        }
+        int d = digitValue(b, checkDigits);
+        int digits = state & DIGIT_MASK;
+        // Nothing may follow an 'X' check character, and no ISBN has 14+ digits
+        if (d == NOT_A_DIGIT || (state & X_SEEN) != 0 || digits == 13) {
+            return REJECT;
+        }
+        int x = 0;
+        if (d == CHECK_X) {
+            if (digits != 9) {
+                return REJECT;
+            }
+            x = X_SEEN;
+        }
+        int prefix10 = (((state >>> 8) & 0xFF) + d) % 11;
+        int sum10 = (((state >>> 16) & 0xFF) + prefix10) % 11; // sum of (10 - i) * d_i
+        int sum13 = (((state >>> 24) & 0xFF) + ((digits & 1) == 0 ? d : 3 * d)) % 10; // d_i * (1, 3, 1, ...)
+        return (digits + 1) | x | prefix10 << 8 | sum10 << 16 | sum13 << 24;
+    }
+
+    private static boolean result(int state, boolean checkDigits) {
+        if (state == REJECT) {
+            return false;
+        }
+        int digits = state & DIGIT_MASK;
+        if (!checkDigits) {
+            return digits == 10 || digits == 13;
+        }
+        if (digits == 10) {
+            return ((state >>> 16) & 0xFF) == 0;
+        }
+        return digits == 13 && (state & X_SEEN) == 0 && ((state >>> 24) & 0xFF) == 0;
+    }
+
+    private static int digitValue(byte b, boolean allowX) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        if (allowX && (b == 'X' || b == 'x')) {
+            return CHECK_X;
+        }
+        return NOT_A_DIGIT;
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent log-linear latency histogram in the style of HdrHistogram.
+ *
+ * Values (nanoseconds) below 32 get their own bucket; above that every power of two is
+ * split into 32 sub-buckets, so a reported percentile is within about 3% of the true
+ * value across the whole range from nanoseconds to hours. Recording is one atomic
+ * increment with no allocation. Counts are striped by thread so that threads
+ * recording similar latencies do not fight over one cache line.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+    private static final int STRIPES = 8;
+
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value.
+     *
+     * @param nanos Latency in nanoseconds (negative values are recorded as 0)
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int stripe = Thread.currentThread().hashCode() & (STRIPES - 1);
+        counts.getAndIncrement(stripe * BUCKETS + bucketOf(value));
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Returns a point-in-time copy. Values recorded concurrently may or may not be
+     * included.
+     *
+     * @return The snapshot
+     */
+    public Snapshot snapshot() {
+        long[] merged = new long[BUCKETS];
+        for (int s = 0; s < STRIPES; s++) {
+            for (int b = 0; b < BUCKETS; b++) {
+                merged[b] += counts.get(s * BUCKETS + b);
+            }
+        }
+        return new Snapshot(merged, max.get());
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int high = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (high - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (high - SUB_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the largest value that falls into a bucket.
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int high = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+        long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long low = (1L << high) | (sub << (high - SUB_BITS));
+        return low + (1L << (high - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Immutable histogram contents.
+     */
+    public static final class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long max;
+        private final double mean;
+
+        Snapshot(long[] buckets, long max) {
+            this.buckets = buckets;
+            long n = 0;
+            double sum = 0;
+            for (int b = 0; b < buckets.length; b++) {
+                n += buckets[b];
+                sum += (double) buckets[b] * highestValueIn(b);
+            }
+            this.count = n;
+            this.max = max;
+            this.mean = n == 0 ? 0.0 : sum / n;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns the mean, computed from bucket upper bounds.
+         */
+        public double getMean() {
+            return mean;
+        }
+
+        /**
+         * Returns the value at a percentile.
+         *
+         * @param percentile Percentile between 0 and 100
+         * @return Upper bound of the bucket holding that percentile, in nanoseconds,
+         *         never more than the recorded maximum; 0 if empty
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * Math.min(100.0, percentile) / 100.0));
+            long seen = 0;
+            for (int b = 0; b < buckets.length; b++) {
+                seen += buckets[b];
+                if (seen >= rank) {
+                    return Math.min(highestValueIn(b), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ",p50=" + getValueAtPercentile(50) + "ns,p99=" + getValueAtPercentile(99)
+                    + "ns,p99.9=" + getValueAtPercentile(99.9) + "ns,max=" + max + "ns";
+        }
+    }
+}
@@ -0,0 +1,411 @@
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Synthetic load driver for capacity planning.
+ *
+ * Builds a catalog and patron population with a realistic mix of BookTypes and
+ * PatronTypes, then runs one virtual thread per simulated user. Each user repeatedly
+ * picks a random patron and performs a checkout, renewal, return or fine payment
+ * according to a weighted mix. Book popularity follows a Zipf distribution, so a few
+ * titles see most of the traffic, as in a real library.
+ *
+ * With a target rate, users issue operations on a fixed schedule and latency is
+ * measured from the scheduled start rather than from when the operation actually
+ * began. A stalled system therefore shows up in the percentiles instead of silently
+ * lowering the offered load. Without a rate, users run flat out.
+ */
+public final class LoadGenerator {
+    private static final long FIRST_KEY = 9_780_000_000_000L;
+
+    /** Operations the generator issues. */
+    public enum Operation {
+        CHECKOUT,
+        RENEWAL,
+        RETURN,
+        PAY_FINE
+    }
+
+    /**
+     * Run settings. Defaults model a mid-sized university library.
+     */
+    public static final class Settings {
+        private int books = 100_000;
+        private int patrons = 10_000;
+        private int users = 2_000;
+        private Duration duration = Duration.ofSeconds(10);
+        private double rate;
+        private double zipfExponent = 1.0;
+        private int[] mix = {50, 10, 35, 5}; // indexed by Operation.ordinal()
+        private long seed = 42;
+
+        public Settings books(int count) {
+            this.books = count;
+            return this;
+        }
+
+        public Settings patrons(int count) {
+            this.patrons = count;
+            return this;
+        }
+
+        /**
+         * Sets the number of concurrent simulated users (virtual threads).
+         */
+        public Settings users(int count) {
+            this.users = count;
+            return this;
+        }
+
+        public Settings duration(Duration runTime) {
+            this.duration = runTime;
+            return this;
+        }
+
+        /**
+         * Sets the total target rate in operations per second; 0 means unthrottled.
+         */
+        public Settings rate(double opsPerSecond) {
+            this.rate = opsPerSecond;
+            return this;
+        }
+
+        /**
+         * Sets the Zipf skew of book popularity; 0 makes all books equally popular.
+         */
+        public Settings zipfExponent(double exponent) {
+            this.zipfExponent = exponent;
+            return this;
+        }
+
+        /**
+         * Sets the relative weights of the operations.
+         */
+        public Settings mix(int checkouts, int renewals, int returns, int finePayments) {
+            this.mix = new int[] {checkouts, renewals, returns, finePayments};
+            return this;
+        }
+
+        public Settings seed(long value) {
+            this.seed = value;
+            return this;
+        }
+
+        /**
+         * Parses key=value arguments: books, patrons, users, seconds, rate, zipf,
+         * mix (four comma-separated weights: checkout,renewal,return,payFine) and seed.
+         *
+         * @param args The arguments
+         * @return Settings with the given values applied over the defaults
+         */
+        public static Settings parse(String... args) {
+            Settings settings = new Settings();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Expected key=value: " + arg);
+                }
+                String value = arg.substring(eq + 1);
+                switch (arg.substring(0, eq)) {
+                    case "books":
+                        settings.books(Integer.parseInt(value));
+                        break;
+                    case "patrons":
+                        settings.patrons(Integer.parseInt(value));
+                        break;
+                    case "users":
+                        settings.users(Integer.parseInt(value));
+                        break;
+                    case "seconds":
+                        settings.duration(Duration.ofSeconds(Long.parseLong(value)));
+                        break;
+                    case "rate":
+                        settings.rate(Double.parseDouble(value));
+                        break;
+                    case "zipf":
+                        settings.zipfExponent(Double.parseDouble(value));
+                        break;
+                    case "mix": {
+                        String[] w = value.split(",");
+                        if (w.length != 4) {
+                            throw new IllegalArgumentException("mix needs four weights: " + value);
+                        }
+                        settings.mix(Integer.parseInt(w[0]), Integer.parseInt(w[1]), Integer.parseInt(w[2]),
+                                Integer.parseInt(w[3]));
+                        break;
+                    }
+                    case "seed":
+                        settings.seed(Long.parseLong(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown setting: " + arg);
+                }
+            }
+            return settings;
+        }
+
+        @Override
+        public String toString() {
+            return "books=" + books + " patrons=" + patrons + " users=" + users + " duration=" + duration
+                    + " rate=" + (rate > 0 ? rate + "/s" : "unthrottled") + " zipf=" + zipfExponent
+                    + " mix(checkout,renewal,return,payFine)=" + mix[0] + "," + mix[1] + "," + mix[2] + "," + mix[3];
+        }
+    }
+
+    /**
+     * Outcome of one run.
+     */
+    public static final class Report {
+        private final Settings settings;
+        private final long elapsedNanos;
+        private final Map<Operation, Long> operations;
+        private final Map<Operation, LatencyHistogram.Snapshot> latencies;
+        private final CheckoutMetrics.Snapshot codes;
+
+        Report(Settings settings, long elapsedNanos, Map<Operation, Long> operations,
+                Map<Operation, LatencyHistogram.Snapshot> latencies, CheckoutMetrics.Snapshot codes) {
+            this.settings = settings;
+            this.elapsedNanos = elapsedNanos;
+            this.operations = operations;
+            this.latencies = latencies;
+            this.codes = codes;
+        }
+
+        public long getTotalOperations() {
+            return operations.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        /**
+         * Returns completed operations per second over the whole run.
+         */
+        public double getThroughput() {
+            return getTotalOperations() * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        public Map<Operation, Long> getOperations() {
+            return operations;
+        }
+
+        /**
+         * Returns the latency distribution of each operation, in nanoseconds.
+         */
+        public Map<Operation, LatencyHistogram.Snapshot> getLatencies() {
+            return latencies;
+        }
+
+        /**
+         * Returns the Checkout's own counters: checkoutBook result codes (renewals
+         * included, as 0.1) and return outcomes.
+         */
+        public CheckoutMetrics.Snapshot getResultCodes() {
+            return codes;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("=== Load report ===\n").append(settings).append('\n');
+            sb.append(String.format("elapsed %.1f s, %d ops, %.0f ops/s%n", elapsedNanos / 1e9,
+                    getTotalOperations(), getThroughput()));
+            sb.append(String.format("%-9s %10s %10s %10s %10s %10s%n", "op", "count", "p50 us", "p99 us",
+                    "p99.9 us", "max us"));
+            for (Operation op : Operation.values()) {
+                LatencyHistogram.Snapshot h = latencies.get(op);
+                sb.append(String.format("%-9s %10d %10.1f %10.1f %10.1f %10.1f%n", op, operations.get(op),
+                        h.getValueAtPercentile(50) / 1e3, h.getValueAtPercentile(99) / 1e3,
+                        h.getValueAtPercentile(99.9) / 1e3, h.getMax() / 1e3));
+            }
+            sb.append("checkout result codes: ").append(codes.getCheckoutResults()).append('\n');
+            sb.append("return outcomes: ").append(codes.getReturnResults());
+            return sb.toString();
+        }
+    }
+
+    private final Settings settings;
+    private final Checkout checkout;
+    private final Map<String, Book> inventory;
+    private final String[] isbns;
+    private final Patron[] patrons;
+    private final ZipfSampler popularity;
+
+    /**
+     * Builds the catalog and patron population. About 10% of patrons start with unpaid
+     * fines, some of them above the $10 checkout threshold.
+     *
+     * @param settings Run settings
+     */
+    public LoadGenerator(Settings settings) {
+        this(settings, new Checkout(settings.books, settings.patrons));
+    }
+
+    /**
+     * Builds the population into a given (empty) checkout, e.g. one with a journal
+     * attached so the population is journaled too.
+     */
+    LoadGenerator(Settings settings, Checkout checkout) {
+        this.settings = settings;
+        this.checkout = checkout;
+        SplittableRandom random = new SplittableRandom(settings.seed);
+
+        Book.BookType[] bookTypes = Book.BookType.values();
+        int[] bookWeights = {35, 30, 5, 20, 10}; // FICTION, NONFICTION, REFERENCE, TEXTBOOK, CHILDREN
+        isbns = new String[settings.books];
+        for (int i = 0; i < settings.books; i++) {
+            isbns[i] = IsbnKeys.toIsbn13(FIRST_KEY + i);
+            Book.BookType type = bookTypes[pick(bookWeights, random)];
+            checkout.addBook(new Book(isbns[i], "Title " + i, "Author " + (i % 10_000), type, 1 + random.nextInt(5)));
+        }
+
+        Patron.PatronType[] patronTypes = Patron.PatronType.values();
+        int[] patronWeights = {60, 10, 10, 15, 5}; // STUDENT, FACULTY, STAFF, PUBLIC, CHILD
+        patrons = new Patron[settings.patrons];
+        for (int i = 0; i < settings.patrons; i++) {
+            Patron patron = new Patron("P-" + i, "Patron " + i, "patron" + i + "@example.com",
+                    patronTypes[pick(patronWeights, random)]);
+            patrons[i] = patron;
+            checkout.registerPatron(patron);
+            if (random.nextInt(10) == 0) {
+                checkout.chargeFine(patron, random.nextLong(1, 1_500) / 100.0);
+            }
+        }
+        inventory = checkout.getInventory();
+        popularity = new ZipfSampler(settings.books, settings.zipfExponent);
+    }
+
+    /**
+     * Returns the checkout under load, e.g. to inspect it after a run.
+     */
+    public Checkout getCheckout() {
+        return checkout;
+    }
+
+    /**
+     * Runs the load for the configured duration and waits for every user to finish.
+     *
+     * @return The report
+     */
+    public Report run() {
+        CheckoutMetrics metrics = new CheckoutMetrics();
+        checkout.setMetrics(metrics);
+        int ops = Operation.values().length;
+        LongAdder[] counts = new LongAdder[ops];
+        LatencyHistogram[] latencies = new LatencyHistogram[ops];
+        for (int i = 0; i < ops; i++) {
+            counts[i] = new LongAdder();
+            latencies[i] = new LatencyHistogram();
+        }
+
+        long intervalNanos = settings.rate > 0 ? (long) (settings.users * 1e9 / settings.rate) : 0;
+        SplittableRandom root = new SplittableRandom(settings.seed + 1);
+        long start = System.nanoTime();
+        long deadline = start + settings.duration.toNanos();
+        try (ExecutorService users = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int u = 0; u < settings.users; u++) {
+                SplittableRandom random = root.split();
+                users.execute(() -> simulateUser(random, start, deadline, intervalNanos, counts, latencies));
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        checkout.setMetrics(null);
+
+        Map<Operation, Long> operations = new EnumMap<>(Operation.class);
+        Map<Operation, LatencyHistogram.Snapshot> snapshots = new EnumMap<>(Operation.class);
+        for (Operation op : Operation.values()) {
+            operations.put(op, counts[op.ordinal()].sum());
+            snapshots.put(op, latencies[op.ordinal()].snapshot());
+        }
+        return new Report(settings, elapsed, operations, snapshots, metrics.snapshot());
+    }
+
+    private void simulateUser(SplittableRandom random, long start, long deadline, long intervalNanos,
+            LongAdder[] counts, LatencyHistogram[] latencies) {
+        // Stagger the first operation so throttled users do not fire in lockstep
+        long next = start + (intervalNanos > 0 ? random.nextLong(intervalNanos) : 0);
+        while (true) {
+            long intended;
+            if (intervalNanos > 0) {
+                if (next >= deadline) {
+                    return;
+                }
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                intended = next;
+                next += intervalNanos;
+            } else {
+                intended = System.nanoTime();
+                if (intended >= deadline) {
+                    return;
+                }
+            }
+            Operation op = perform(Operation.values()[pick(settings.mix, random)], random);
+            latencies[op.ordinal()].record(System.nanoTime() - intended);
+            counts[op.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Performs one operation for a random patron.
+     *
+     * @return The operation actually performed: a renewal or return for a patron
+     *         with no loans becomes a checkout
+     */
+    private Operation perform(Operation op, SplittableRandom random) {
+        Patron patron = patrons[random.nextInt(patrons.length)];
+        switch (op) {
+            case RENEWAL:
+            case RETURN: {
+                String isbn = randomLoan(patron, random);
+                if (isbn != null) {
+                    if (op == Operation.RENEWAL) {
+                        checkout.checkoutBook(inventory.get(isbn), patron);
+                    } else {
+                        checkout.returnBook(isbn, patron);
+                    }
+                    return op;
+                }
+                break;
+            }
+            case PAY_FINE: {
+                long cents = patron.getFineBalanceCents();
+                if (cents > 0) {
+                    checkout.payFine(patron, random.nextLong(1, cents + 1) / 100.0);
+                }
+                return op;
+            }
+            default:
+                break;
+        }
+        checkout.checkoutBook(inventory.get(isbns[popularity.sample(random) - 1]), patron);
+        return Operation.CHECKOUT;
+    }
+
+    private static String randomLoan(Patron patron, SplittableRandom random) {
+        synchronized (patron) {
+            int loans = patron.loanCount();
+            return loans == 0 ? null : patron.loanIsbn(random.nextInt(loans));
+        }
+    }
+
+    private static int pick(int[] weights, SplittableRandom random) {
+        int total = 0;
+        for (int w : weights) {
+            total += w;
+        }
+        int r = random.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            r -= weights[i];
+            if (r < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+}
@@ -1,15 +1,44 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Demo application for the Library Management System.
  * Demonstrates checkout operations and various scenarios.
+ *
+ * Run with "load" as the first argument to drive a synthetic load instead; the
+ * remaining key=value arguments are passed to LoadGenerator.Settings.parse().
+ * Run with "serve" to expose a synthetic population over HTTP (CheckoutServer);
+ * port=N picks the port (default 8080) and the other arguments size the population.
+ * journal=FILE makes the server durable (an existing journal is replayed instead of
+ * building a population) and replicate=N ships that journal to followers on port N.
+ * Run with "follow leader=HOST:PORT journal=FILE" to keep a replica; when the leader
+ * is lost the replica is promoted and serves HTTP on port=N (default 8081).
  */
 public class Main {
     public static void main(String[] args) {
+        if (args.length > 0 && "load".equals(args[0])) {
+            runLoad(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && "serve".equals(args[0])) {
+            serve(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && "follow".equals(args[0])) {
+            follow(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         System.out.println("=== Library Management System Demo ===\n");
 
         // Create checkout system
-        Checkout checkout = new Checkout(); // will not work for checkoutBook since it is not implemented  yet.
+        Checkout checkout = new Checkout();
 
         // Add some books to inventory
         Book book1 = new Book("978-0-1234-5678-9", "Introduction to Java", "John Smith",
@@ -88,4 +117,111 @@ public class Main {
 
         System.out.println("\n=== Demo Complete ===");
     }
+
+    private static void runLoad(String[] args) {
+        LoadGenerator.Settings settings = LoadGenerator.Settings.parse(args);
+        System.out.println("Building population: " + settings);
+        LoadGenerator generator = new LoadGenerator(settings);
+        System.out.println("Running...");
+        System.out.println(generator.run());
+    }
+
+    private static void serve(String[] args) {
+        int port = 8080;
+        int replicatePort = -1;
+        Path journalFile = null;
+        List<String> rest = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("port=")) {
+                port = Integer.parseInt(arg.substring(5));
+            } else if (arg.startsWith("replicate=")) {
+                replicatePort = Integer.parseInt(arg.substring(10));
+            } else if (arg.startsWith("journal=")) {
+                journalFile = Path.of(arg.substring(8));
+            } else {
+                rest.add(arg);
+            }
+        }
+        LoadGenerator.Settings settings = LoadGenerator.Settings.parse(rest.toArray(new String[0]));
+        try {
+            Checkout checkout;
+            TransactionJournal journal = null;
+            if (journalFile == null) {
+                System.out.println("Building population: " + settings);
+                checkout = new LoadGenerator(settings).getCheckout();
+            } else {
+                checkout = new Checkout();
+                if (TransactionJournal.replay(journalFile, checkout) == 0) {
+                    System.out.println("Building journaled population: " + settings);
+                    try (TransactionJournal bulk = TransactionJournal.open(journalFile, false)) {
+                        checkout.setJournal(bulk);
+                        new LoadGenerator(settings, checkout);
+                        checkout.setJournal(null);
+                    }
+                } else {
+                    System.out.println("Replayed " + journalFile);
+                }
+                journal = TransactionJournal.open(journalFile, true);
+                checkout.setJournal(journal);
+            }
+            serve(checkout, journal, port, replicatePort);
+        } catch (IOException e) {
+            System.out.println("Cannot start server: " + e.getMessage());
+        }
+    }
+
+    private static void serve(Checkout checkout, TransactionJournal journal, int port, int replicatePort)
+            throws IOException {
+        if (journal != null && replicatePort >= 0) {
+            ReplicationLeader leader = new ReplicationLeader(journal, new InetSocketAddress(replicatePort));
+            leader.start();
+            System.out.println("Replicating on port " + leader.getPort());
+        }
+        // Must be set before the JDK's HTTP server classes load; see CheckoutServer
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        CheckoutServer server = new CheckoutServer(checkout, new InetSocketAddress(port));
+        server.start();
+        System.out.println("Serving on port " + server.getPort()
+                + " (patrons P-0.., ISBNs from " + IsbnKeys.toIsbn13(9_780_000_000_000L) + ")");
+    }
+
+    private static void follow(String[] args) {
+        int port = 8081;
+        int replicatePort = -1;
+        Path journalFile = Path.of("follower.journal");
+        InetSocketAddress leaderAddress = null;
+        for (String arg : args) {
+            if (arg.startsWith("port=")) {
+                port = Integer.parseInt(arg.substring(5));
+            } else if (arg.startsWith("replicate=")) {
+                replicatePort = Integer.parseInt(arg.substring(10));
+            } else if (arg.startsWith("journal=")) {
+                journalFile = Path.of(arg.substring(8));
+            } else if (arg.startsWith("leader=")) {
+                String[] hostPort = arg.substring(7).split(":");
+                leaderAddress = new InetSocketAddress(hostPort[0], Integer.parseInt(hostPort[1]));
+            }
+        }
+        if (leaderAddress == null) {
+            System.out.println("Usage: follow leader=HOST:PORT [journal=FILE] [port=N] [replicate=N]");
+            return;
+        }
+        try {
+            Checkout checkout = new Checkout();
+            ReplicationFollower follower = new ReplicationFollower(checkout, journalFile, leaderAddress);
+            follower.start();
+            System.out.println("Following " + leaderAddress + " from offset " + follower.getAppliedOffset());
+            while (!follower.awaitLeaderLost(1, TimeUnit.MINUTES)) {
+                System.out.println("Applied up to offset " + follower.getAppliedOffset());
+            }
+            System.out.println("Leader lost at offset " + follower.getAppliedOffset() + "; promoting");
+            serve(checkout, follower.promote(true), port, replicatePort);
+        } catch (IOException e) {
+            System.out.println("Cannot follow: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -0,0 +1,606 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Columnar inventory kept in direct (off-heap) memory, for catalogs of tens of
+ * millions of titles.
+ *
+ * Each title is a row number. Rows live in fixed-size chunks of columns: normalized
+ * ISBN key, type, reference flag, total and available copies, plus references into a
+ * string arena that holds ISBN, title and author as length-prefixed UTF-8. The heap
+ * holds no per-title objects, so the garbage collector has nothing to trace however
+ * large the catalog grows. Chunks are only ever appended, never moved, so copy counts
+ * can be updated in place with compare-and-set while books are being added.
+ *
+ * Lookups go through an off-heap open-addressing index of (key, row) pairs, read under
+ * a StampedLock optimistic stamp as in BookMap. get() returns a small flyweight Book
+ * bound to the row; it reads and writes the columns directly, so checkouts and
+ * returns made through it are immediately visible to every other flyweight of the
+ * same title. Replacing a title (addBook with an existing ISBN) overwrites its row in
+ * place.
+ *
+ * Note on MemorySegment: the foreign memory API is still a preview on the JDK this
+ * project targets, so the columns are direct ByteBuffers accessed through VarHandle
+ * views.
+ */
+public final class OffHeapInventory implements Inventory {
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private static final int CHUNK_SHIFT = 14;
+    private static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+    private static final int ARENA_CHUNK_BYTES = 1 << 22;
+    private static final int MAX_STRING_BYTES = 0xFFFE;
+    private static final long NULL_REF = -1L;
+    private static final int MIN_INDEX_CAPACITY = 16;
+    private static final int STRIPES = 64;
+
+    private static final byte FLAG_REFERENCE = 1;
+    private static final byte FLAG_COUNTED_AVAILABLE = 2;
+
+    /** One block of CHUNK_ROWS rows, one buffer per column. */
+    private static final class Chunk {
+        final ByteBuffer keys = column(Long.BYTES);
+        final ByteBuffer isbns = column(Long.BYTES);
+        final ByteBuffer titles = column(Long.BYTES);
+        final ByteBuffer authors = column(Long.BYTES);
+        final ByteBuffer totals = column(Integer.BYTES);
+        final ByteBuffer available = column(Integer.BYTES);
+        final ByteBuffer types = column(1);   // ordinal + 1, 0 for a null type
+        final ByteBuffer flags = column(1);   // FLAG_* bits
+
+        private static ByteBuffer column(int width) {
+            return ByteBuffer.allocateDirect(CHUNK_ROWS * width).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /** One generation of the (key, row) index, swapped as a unit on resize. */
+    private static final class Index {
+        final int capacity;
+        final ByteBuffer keys;
+        final ByteBuffer rows; // row + 1, 0 for an empty slot
+
+        Index(int capacity) {
+            this.capacity = capacity;
+            this.keys = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder());
+            this.rows = ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private final Map<String, Integer> unkeyed = new ConcurrentHashMap<>();
+    private final InventoryCounters counters = new InventoryCounters();
+    private final Object[] stripes = new Object[STRIPES];
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile ByteBuffer[] arena = new ByteBuffer[0];
+    private volatile Index index;
+    private volatile int rowCount;
+    private int keyedCount; // guarded by lock
+
+    /**
+     * Creates an empty inventory.
+     *
+     * @param expectedTitles Sizing hint for the ISBN index
+     */
+    public OffHeapInventory(int expectedTitles) {
+        int capacity = MIN_INDEX_CAPACITY;
+        while (capacity < expectedTitles * 2L && capacity < (1 << 28)) {
+            capacity <<= 1;
+        }
+        index = new Index(capacity);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    @Override
+    public Book get(String isbn) {
+        long key = IsbnKeys.toKey(isbn);
+        if (key == IsbnKeys.NO_KEY) {
+            Integer row = isbn == null ? null : unkeyed.get(isbn);
+            return row == null ? null : new Row(row);
+        }
+        return get(key);
+    }
+
+    @Override
+    public Book get(long key) {
+        int row = key == IsbnKeys.NO_KEY ? -1 : find(key);
+        return row < 0 ? null : new Row(row);
+    }
+
+    /**
+     * Adds a book by copying its fields into a row. The Book object itself is not
+     * retained; later changes must go through the flyweight returned by get().
+     */
+    @Override
+    public Book put(Book book) {
+        String isbn = book.getIsbn();
+        long key = IsbnKeys.toKey(isbn);
+        long stamp = lock.writeLock();
+        try {
+            int row = key == IsbnKeys.NO_KEY ? unkeyed.getOrDefault(isbn, -1) : findLocked(key);
+            Book replaced = null;
+            if (row >= 0) {
+                replaced = copyOf(row);
+            } else {
+                row = appendRow();
+            }
+            writeRow(row, key, book, replaced != null);
+            if (replaced == null) {
+                if (key == IsbnKeys.NO_KEY) {
+                    unkeyed.put(isbn, row);
+                } else {
+                    insertLocked(key, row);
+                }
+                rowCount = row + 1;
+            }
+            return replaced;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns a flyweight of this inventory unchanged and looks any other Book up by
+     * ISBN, since a Book that is not a flyweight only carries a copy of the row's
+     * counts and checking it out would leave the row untouched.
+     *
+     * @throws IllegalArgumentException If no title has the book's ISBN
+     */
+    @Override
+    public Book resolve(Book book) {
+        if (book instanceof Row && ((Row) book).owner() == this) {
+            return book;
+        }
+        Book row = get(book.getIsbn());
+        if (row == null) {
+            throw new IllegalArgumentException("Book is not in this inventory: " + book.getIsbn());
+        }
+        return row;
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    @Override
+    public int countByType(Book.BookType type, boolean onlyAvailable) {
+        return counters.count(type, onlyAvailable);
+    }
+
+    @Override
+    public void setAvailabilityListener(AvailabilityListener listener) {
+        counters.setListener(listener);
+    }
+
+    /**
+     * Iterates over every title in insertion order, returning flyweights.
+     */
+    @Override
+    public Iterator<Book> iterator() {
+        int end = rowCount;
+        return new Iterator<Book>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            @Override
+            public Book next() {
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+                return new Row(next++);
+            }
+        };
+    }
+
+    // --- index ---
+
+    private int find(long key) {
+        long stamp = lock.tryOptimisticRead();
+        int row = probe(index, key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                row = probe(index, key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return row;
+    }
+
+    private int findLocked(long key) {
+        return probe(index, key);
+    }
+
+    /**
+     * Probes one index generation. Bounded because an optimistic reader may see the
+     * index mid-update; the caller validates the stamp afterwards.
+     */
+    private static int probe(Index idx, long key) {
+        int mask = idx.capacity - 1;
+        int i = slot(key, mask);
+        for (int n = 0; n <= mask; n++, i = (i + 1) & mask) {
+            int row = idx.rows.getInt(i * Integer.BYTES) - 1;
+            if (row < 0) {
+                return -1;
+            }
+            if (idx.keys.getLong(i * Long.BYTES) == key) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private void insertLocked(long key, int row) {
+        Index idx = index;
+        if ((keyedCount + 1) * 2L > idx.capacity) {
+            idx = new Index(idx.capacity * 2);
+            Index old = index;
+            for (int j = 0; j < old.capacity; j++) {
+                int oldRow = old.rows.getInt(j * Integer.BYTES);
+                if (oldRow != 0) {
+                    place(idx, old.keys.getLong(j * Long.BYTES), oldRow);
+                }
+            }
+            index = idx;
+        }
+        place(idx, key, row + 1);
+        keyedCount++;
+    }
+
+    private static void place(Index idx, long key, int rowPlusOne) {
+        int mask = idx.capacity - 1;
+        int i = slot(key, mask);
+        while (idx.rows.getInt(i * Integer.BYTES) != 0) {
+            i = (i + 1) & mask;
+        }
+        idx.keys.putLong(i * Long.BYTES, key);
+        idx.rows.putInt(i * Integer.BYTES, rowPlusOne);
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    // --- rows ---
+
+    private int appendRow() {
+        int row = rowCount;
+        if (row == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Inventory is full");
+        }
+        Chunk[] current = chunks;
+        if ((row >>> CHUNK_SHIFT) == current.length) {
+            Chunk[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = new Chunk();
+            chunks = grown;
+        }
+        return row;
+    }
+
+    private void writeRow(int row, long key, Book book, boolean replacing) {
+        Chunk c = chunk(row);
+        int i = row & CHUNK_MASK;
+        long isbnRef = intern(book.getIsbn());
+        long titleRef = intern(book.getTitle());
+        long authorRef = intern(book.getAuthor());
+        Book.BookType type = book.getType();
+        int copies = book.getAvailableCopies();
+        synchronized (stripe(row)) {
+            if (replacing) {
+                counters.adjustTitles(type(row), (c.flags.get(i) & FLAG_COUNTED_AVAILABLE) != 0, -1);
+            }
+            c.keys.putLong(i * Long.BYTES, key);
+            c.isbns.putLong(i * Long.BYTES, isbnRef);
+            c.titles.putLong(i * Long.BYTES, titleRef);
+            c.authors.putLong(i * Long.BYTES, authorRef);
+            c.totals.putInt(i * Integer.BYTES, book.getTotalCopies());
+            INTS.setVolatile(c.available, i * Integer.BYTES, copies);
+            c.types.put(i, (byte) (type == null ? 0 : type.ordinal() + 1));
+            c.flags.put(i, (byte) ((book.isReferenceOnly() ? FLAG_REFERENCE : 0)
+                    | (copies > 0 ? FLAG_COUNTED_AVAILABLE : 0)));
+            counters.adjustTitles(type, copies > 0, 1);
+        }
+    }
+
+    private Book copyOf(int row) {
+        Book copy = new Book(string(chunk(row).isbns, row), string(chunk(row).titles, row),
+                string(chunk(row).authors, row), type(row), totalCopies(row));
+        copy.setAvailableCopies(availableCopies(row));
+        return copy;
+    }
+
+    private Chunk chunk(int row) {
+        return chunks[row >>> CHUNK_SHIFT];
+    }
+
+    private Object stripe(int row) {
+        return stripes[row & (STRIPES - 1)];
+    }
+
+    private Book.BookType type(int row) {
+        int t = chunk(row).types.get(row & CHUNK_MASK);
+        return t == 0 ? null : Book.BookType.values()[t - 1];
+    }
+
+    private boolean referenceOnly(int row) {
+        return (chunk(row).flags.get(row & CHUNK_MASK) & FLAG_REFERENCE) != 0;
+    }
+
+    private int totalCopies(int row) {
+        return chunk(row).totals.getInt((row & CHUNK_MASK) * Integer.BYTES);
+    }
+
+    private int availableCopies(int row) {
+        return (int) INTS.getVolatile(chunk(row).available, (row & CHUNK_MASK) * Integer.BYTES);
+    }
+
+    private boolean casAvailable(int row, int expected, int update) {
+        return INTS.compareAndSet(chunk(row).available, (row & CHUNK_MASK) * Integer.BYTES, expected, update);
+    }
+
+    private void setAvailable(int row, int copies) {
+        INTS.setVolatile(chunk(row).available, (row & CHUNK_MASK) * Integer.BYTES, copies);
+        availabilityMaybeChanged(row);
+    }
+
+    /**
+     * Same contract as Book.tryCheckout, on the row's available column.
+     */
+    private boolean tryCheckout(int row) {
+        int current;
+        do {
+            current = availableCopies(row);
+            if (current <= 0) {
+                return false;
+            }
+        } while (!casAvailable(row, current, current - 1));
+        if (current == 1) {
+            availabilityMaybeChanged(row);
+        }
+        return true;
+    }
+
+    /**
+     * Same contract as Book.returnBook (capped at 100 copies).
+     */
+    private void returnCopy(int row) {
+        int current;
+        do {
+            current = availableCopies(row);
+            if (current >= 100) {
+                return;
+            }
+        } while (!casAvailable(row, current, current + 1));
+        if (current == 0) {
+            availabilityMaybeChanged(row);
+        }
+    }
+
+    /**
+     * Reconciles the counters with a row's copy count after a possible zero crossing,
+     * like Book.availabilityMaybeChanged but under a lock stripe instead of a monitor.
+     */
+    private void availabilityMaybeChanged(int row) {
+        synchronized (stripe(row)) {
+            ByteBuffer flags = chunk(row).flags;
+            int i = row & CHUNK_MASK;
+            boolean counted = (flags.get(i) & FLAG_COUNTED_AVAILABLE) != 0;
+            boolean now = availableCopies(row) > 0;
+            if (now != counted) {
+                flags.put(i, (byte) (flags.get(i) ^ FLAG_COUNTED_AVAILABLE));
+                counters.adjustAvailable(type(row), now ? 1 : -1);
+                if (counters.hasListener()) {
+                    counters.notifyAvailability(string(chunk(row).isbns, row), now);
+                }
+            }
+        }
+    }
+
+    // --- string arena ---
+
+    /**
+     * Appends a string to the arena (caller holds the write lock).
+     *
+     * @return Reference (chunk index in the high word, offset in the low word)
+     */
+    private long intern(String value) {
+        if (value == null) {
+            return NULL_REF;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("String too long for inventory: " + bytes.length + " bytes");
+        }
+        ByteBuffer[] current = arena;
+        ByteBuffer tail = current.length == 0 ? null : current[current.length - 1];
+        if (tail == null || tail.remaining() < 2 + bytes.length) {
+            tail = ByteBuffer.allocateDirect(ARENA_CHUNK_BYTES);
+            ByteBuffer[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = tail;
+            arena = grown;
+            current = grown;
+        }
+        long ref = ((long) (current.length - 1) << 32) | tail.position();
+        tail.putShort((short) bytes.length);
+        tail.put(bytes);
+        return ref;
+    }
+
+    private String string(ByteBuffer column, int row) {
+        return string(ref(column, row));
+    }
+
+    private static long ref(ByteBuffer column, int row) {
+        return column.getLong((row & CHUNK_MASK) * Long.BYTES);
+    }
+
+    private String string(long ref) {
+        if (ref == NULL_REF) {
+            return null;
+        }
+        ByteBuffer chunk = arena[(int) (ref >>> 32)];
+        int offset = (int) ref;
+        int length = Short.toUnsignedInt(chunk.getShort(offset));
+        byte[] bytes = new byte[length];
+        chunk.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A decoded arena string together with the reference it was decoded from.
+     */
+    private static final class Decoded {
+        final long ref;
+        final String value;
+
+        Decoded(long ref, String value) {
+            this.ref = ref;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Flyweight Book over one row. Copy counts are always read from the columns. Each
+     * string is decoded once and kept together with its arena reference; replacing the
+     * title writes new references into the row, so the next read decodes again.
+     */
+    private final class Row extends Book {
+        private final int row;
+        private Decoded isbn;
+        private Decoded title;
+        private Decoded author;
+
+        Row(int row) {
+            super(null, null, null, null, 0);
+            this.row = row;
+        }
+
+        @Override
+        public String getIsbn() {
+            long ref = ref(chunk(row).isbns, row);
+            Decoded cached = isbn;
+            if (cached == null || cached.ref != ref) {
+                cached = new Decoded(ref, string(ref));
+                isbn = cached;
+            }
+            return cached.value;
+        }
+
+        @Override
+        public String getTitle() {
+            long ref = ref(chunk(row).titles, row);
+            Decoded cached = title;
+            if (cached == null || cached.ref != ref) {
+                cached = new Decoded(ref, string(ref));
+                title = cached;
+            }
+            return cached.value;
+        }
+
+        @Override
+        public String getAuthor() {
+            long ref = ref(chunk(row).authors, row);
+            Decoded cached = author;
+            if (cached == null || cached.ref != ref) {
+                cached = new Decoded(ref, string(ref));
+                author = cached;
+            }
+            return cached.value;
+        }
+
+        @Override
+        public BookType getType() {
+            return type(row);
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return availableCopies(row) > 0;
+        }
+
+        @Override
+        public boolean isReferenceOnly() {
+            return referenceOnly(row);
+        }
+
+        @Override
+        public int getTotalCopies() {
+            return totalCopies(row);
+        }
+
+        @Override
+        public int getAvailableCopies() {
+            return availableCopies(row);
+        }
+
+        @Override
+        public void setAvailableCopies(int copies) {
+            setAvailable(row, copies);
+        }
+
+        @Override
+        public void checkout() {
+            OffHeapInventory.this.tryCheckout(row);
+        }
+
+        @Override
+        public boolean tryCheckout() {
+            return OffHeapInventory.this.tryCheckout(row);
+        }
+
+        @Override
+        public void returnBook() {
+            returnCopy(row);
+        }
+
+        @Override
+        public void resetAvailability() {
+            setAvailable(row, totalCopies(row));
+        }
+
+        @Override
+        public boolean checkAvailability() {
+            return availableCopies(row) > 0;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Row)) return false;
+            Row other = (Row) obj;
+            return owner() == other.owner() && row == other.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * row;
+        }
+
+        @Override
+        public String toString() {
+            return "Book[isbn=" + getIsbn() + ",title=" + getTitle() + ",author=" + getAuthor() + ",type=" + getType()
+                    + ",availableCopies=" + getAvailableCopies() + "/" + getTotalCopies() + "]";
+        }
+
+        private OffHeapInventory owner() {
+            return OffHeapInventory.this;
+        }
+    }
+}
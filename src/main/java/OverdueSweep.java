@@ -0,0 +1,154 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * Recomputes every patron's overdue count and accrued fines from their open loans.
+ *
+ * The sweep runs over the patron map with a parallel stream, so patrons are spread
+ * across the common fork/join pool. Each patron is updated while holding its monitor,
+ * which keeps the sweep consistent with concurrent checkouts and returns for that
+ * patron without blocking anyone else.
+ *
+ * Overdue loans are marked on the checkout's loans exactly as Checkout.advanceOverdueClock()
+ * marks them, and the overdue count is set to the number of marked loans, so the sweep
+ * and the clock can be used together: a loan is counted once whichever marks it first,
+ * and returning or renewing it uncounts it. Loans put on a patron directly rather than
+ * checked out through the checkout are not counted (their fines still accrue), and
+ * overdue counts set by hand with Patron.setOverdueCount() are replaced.
+ *
+ * A ShardedCheckout is swept as a whole, never one shard at a time: its shards share
+ * the patrons, so a single shard's sweep would overwrite each patron's totals with
+ * the loans on that shard alone.
+ */
+public final class OverdueSweep {
+
+    /**
+     * Totals from one sweep.
+     */
+    public static final class Result {
+        private final long patrons;
+        private final long openLoans;
+        private final long overdueLoans;
+        private final long accruedFineCents;
+        private final long elapsedNanos;
+
+        Result(long patrons, long openLoans, long overdueLoans, long accruedFineCents, long elapsedNanos) {
+            this.patrons = patrons;
+            this.openLoans = openLoans;
+            this.overdueLoans = overdueLoans;
+            this.accruedFineCents = accruedFineCents;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getPatrons() {
+            return patrons;
+        }
+
+        public long getOpenLoans() {
+            return openLoans;
+        }
+
+        public long getOverdueLoans() {
+            return overdueLoans;
+        }
+
+        public double getAccruedFines() {
+            return accruedFineCents / 100.0;
+        }
+
+        public long getAccruedFineCents() {
+            return accruedFineCents;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "OverdueSweep[patrons=" + patrons + ",openLoans=" + openLoans + ",overdue=" + overdueLoans
+                    + ",accrued=$" + String.format("%.2f", getAccruedFines()) + ",ms=" + elapsedNanos / 1_000_000 + "]";
+        }
+    }
+
+    private OverdueSweep() {
+    }
+
+    /**
+     * Sweeps all patrons of a checkout as of the given day.
+     *
+     * @param checkout The checkout whose patrons to update
+     * @param today The day to measure overdue loans against
+     * @return Totals for the sweep
+     */
+    public static Result run(Checkout checkout, LocalDate today) {
+        return sweep(checkout.getPatrons(), new Checkout[] {checkout}, isbn -> 0, today);
+    }
+
+    /**
+     * Sweeps all patrons of a sharded checkout as of the given day. Each loan is
+     * looked up on the shard that owns its ISBN, so a patron's totals cover the loans
+     * held on every shard.
+     *
+     * @param checkout The sharded checkout whose patrons to update
+     * @param today The day to measure overdue loans against
+     * @return Totals for the sweep
+     */
+    public static Result run(ShardedCheckout checkout, LocalDate today) {
+        Checkout[] shards = new Checkout[checkout.getShardCount()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = checkout.getShard(i);
+        }
+        return sweep(checkout.getPatrons(), shards, checkout::shardOf, today);
+    }
+
+    private static Result sweep(Map<String, Patron> patronMap, Checkout[] shards, ToIntFunction<String> shardOf,
+            LocalDate today) {
+        long start = System.nanoTime();
+        List<Map<String, Book>> inventories = new ArrayList<>(shards.length);
+        for (Checkout shard : shards) {
+            inventories.add(shard.getInventory());
+        }
+        long todayEpochDay = today.toEpochDay();
+        LongAdder patrons = new LongAdder();
+        LongAdder loans = new LongAdder();
+        LongAdder overdueLoans = new LongAdder();
+        LongAdder accruedCents = new LongAdder();
+
+        patronMap.values().parallelStream().forEach(patron -> {
+            int overdue = 0;
+            long fineCents = 0;
+            int open;
+            synchronized (patron) {
+                open = patron.loanCount();
+                for (int i = 0; i < open; i++) {
+                    String isbn = patron.loanIsbn(i);
+                    int shard = shardOf.applyAsInt(isbn);
+                    if (shards[shard].markOverdueLoan(patron, isbn, todayEpochDay)) {
+                        overdue++;
+                    }
+                    long daysOverdue = todayEpochDay - patron.loanDueDay(i);
+                    if (daysOverdue > 0) {
+                        Book book = inventories.get(shard).get(isbn);
+                        if (book != null) {
+                            fineCents += shards[shard].calculateFineCents((int) daysOverdue, book.getType());
+                        }
+                    }
+                }
+                patron.setOverdueCount(overdue);
+                patron.setAccruedFineCents(fineCents);
+            }
+            patrons.increment();
+            loans.add(open);
+            overdueLoans.add(overdue);
+            accruedCents.add(fineCents);
+        });
+
+        return new Result(patrons.sum(), loans.sum(), overdueLoans.sum(), accruedCents.sum(),
+                System.nanoTime() - start);
+    }
+}
@@ -1,20 +1,48 @@
 import java.time.LocalDate;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Represents a library patron (user).
  * Tracks checked out books, fines, and account status.
+ *
+ * Open loans are stored as two parallel arrays, ISBN and due date as an epoch day,
+ * allocated on the first checkout and sized for the patron's checkout limit. An open
+ * loan costs one reference and one int instead of a hash map node and a LocalDate;
+ * the ISBN string is normally the Book's own instance. getCheckedOutBooks() returns a
+ * write-through Map view over the arrays.
+ *
+ * Fines are kept in integer cents, so repeated charges and payments never drift.
+ * Balance changes are made under the patron's monitor, recorded in a per-patron list
+ * of ledger entries and reported to the FineLedger of the Checkout the patron is
+ * registered with.
  */
 public class Patron {
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
     private String patronId;
     private String name;
     private String email;
     private PatronType type;
-    private boolean suspended;
-    private double fines;
-    private Map<String, LocalDate> bookMap;
-    private int overdue;
+    private volatile boolean suspended;
+    private volatile long fineCents;
+    private List<FineLedger.Entry> fineHistory; // guarded by this
+    private FineLedger ledger; // guarded by this; set while registered with a Checkout
+    private volatile CirculationPolicy.Setting policy; // of the Checkout registered with, if any
+    private String[] loanIsbns;
+    private int[] loanDueDays;
+    private int loanCount;
+    private volatile int overdue;
+    private volatile long accruedFineCents;
+    private Object snapshotMark; // guarded by this; the snapshot that last copied this patron
     private LocalDate memberDate;
 
     public enum PatronType {
@@ -39,8 +67,7 @@ public class Patron {
         this.email = email;
         this.type = type;
         this.suspended = false;
-        this.fines = 0.0;
-        this.bookMap = new HashMap<>();
+        this.fineCents = 0;
         this.overdue = 0;
         this.memberDate = LocalDate.now();
     }
@@ -67,64 +94,95 @@ public class Patron {
     }
 
     public double getFineBalance() {
-        return fines;
+        return fineCents / 100.0;
+    }
+
+    /**
+     * Returns the unpaid fine balance in cents.
+     *
+     * @return Balance in cents
+     */
+    public long getFineBalanceCents() {
+        return fineCents;
+    }
+
+    /**
+     * Returns this patron's charges, payments and waivers, oldest first.
+     *
+     * @return A copy of the ledger entries
+     */
+    public synchronized List<FineLedger.Entry> getFineHistory() {
+        return fineHistory == null ? List.of() : List.copyOf(fineHistory);
     }
 
     public Map<String, LocalDate> getCheckedOutBooks() {
-        return bookMap;
+        return new LoanView();
     }
 
     public int getCheckoutCount() {
-        return bookMap.size();
+        return loanCount;
     }
 
     public int getOverdueCount() {
         return overdue;
     }
 
+    /**
+     * Returns fines accrued so far on loans that are still overdue. These are not yet
+     * part of the fine balance; they are charged when the books are returned.
+     * Refreshed by the overdue sweep.
+     *
+     * @return Accrued fines in dollars as of the last sweep
+     */
+    public double getAccruedFines() {
+        return accruedFineCents / 100.0;
+    }
+
+    /**
+     * Returns the accrued fines in cents.
+     *
+     * @return Accrued fines in cents as of the last sweep
+     * @see #getAccruedFines()
+     */
+    public long getAccruedFineCents() {
+        return accruedFineCents;
+    }
+
     public LocalDate getMemberSince() {
         return memberDate;
     }
 
     /**
      * Returns the maximum number of books this patron can check out
-     * based on their patron type.
+     * based on their patron type, as set by the CirculationPolicy of the Checkout
+     * the patron is registered with (the global default if none).
      *
      * @return Maximum checkout limit
      */
     public int getMaxCheckoutLimit() {
-        switch (type) {
-            case FACULTY:
-                return 20;
-            case STAFF:
-                return 15;
-            case STUDENT:
-                return 10;
-            case PUBLIC:
-                return 5;
-            case CHILD:
-                return 3;
-            default:
-                return 5;
-        }
+        return policy().getMaxCheckouts(type);
     }
 
     /**
-     * Returns the standard loan period in days for this patron type.
+     * Returns the standard loan period in days for this patron type, as set by the
+     * CirculationPolicy of the Checkout the patron is registered with (the global
+     * default if none).
      *
      * @return Loan period in days
      */
     public int getLoanPeriodDays() {
-        if(type==PatronType.FACULTY)return 60;
-        else if(type==PatronType.STAFF)return 45;
-        else if(type==PatronType.STUDENT)return 30;
-        else if(type==PatronType.PUBLIC)return 21;
-        else if(type==PatronType.CHILD)return 14;
-        else return 21;
+        return policy().getLoanDays(type);
     }
 
-    public void resetFines() {
-        this.fines = 0.0;
+    private CirculationPolicy policy() {
+        CirculationPolicy.Setting setting = policy;
+        return setting == null ? CirculationPolicy.current() : setting.get();
+    }
+
+    public synchronized void resetFines() {
+        if (fineCents != 0) {
+            record(FineLedger.Kind.WAIVER, fineCents, 0);
+        }
     }
 
     public boolean chkSuspended() {
@@ -132,6 +190,11 @@ public class Patron {
     }
 
     // Setters
+
+    /**
+     * Sets the suspension flag directly. On a journaled Checkout use
+     * Checkout.setAccountSuspended() so the change survives a restart.
+     */
     public void setAccountSuspended(boolean suspended) {
         this.suspended = suspended;
     }
@@ -140,14 +203,104 @@ public class Patron {
         this.overdue = count;
     }
 
+    /**
+     * Adjusts the overdue count by a delta, never going below zero.
+     * Caller must hold the patron's monitor.
+     */
+    void adjustOverdueCount(int delta) {
+        this.overdue = Math.max(0, overdue + delta);
+    }
+
+    void setAccruedFineCents(long cents) {
+        this.accruedFineCents = cents;
+    }
+
+    /**
+     * Records that a snapshot has copied this patron. Caller holds the monitor.
+     */
+    void markSnapshotted(Object snapshot) {
+        this.snapshotMark = snapshot;
+    }
+
+    /**
+     * Returns true if the given snapshot has copied this patron. Caller holds the monitor.
+     */
+    boolean isSnapshotted(Object snapshot) {
+        return snapshotMark == snapshot;
+    }
+
+    void setMemberSince(LocalDate memberSince) {
+        this.memberDate = memberSince;
+    }
+
+    /**
+     * Sets the balance without a ledger entry, when restoring a snapshot.
+     */
+    synchronized void restoreFineBalance(long cents) {
+        if (ledger != null) {
+            ledger.adjust(cents - fineCents);
+        }
+        this.fineCents = cents;
+    }
+
+    /**
+     * Starts reporting balance changes to a ledger and adds the current balance to it,
+     * moving it out of any ledger it was attached to before.
+     */
+    synchronized void attachLedger(FineLedger fineLedger) {
+        detachLedger();
+        this.ledger = fineLedger;
+        fineLedger.adjust(fineCents);
+    }
+
+    /**
+     * Takes the checkout limit and loan period from a checkout's policy setting.
+     */
+    void attachPolicy(CirculationPolicy.Setting setting) {
+        this.policy = setting;
+    }
+
+    /**
+     * Removes this patron's balance from the ledger it was attached to, if any.
+     */
+    synchronized void detachLedger() {
+        if (ledger != null) {
+            ledger.adjust(-fineCents);
+            ledger = null;
+        }
+    }
+
+    /**
+     * Applies a balance change and appends it to the history. Caller holds the monitor.
+     */
+    private void record(FineLedger.Kind kind, long cents, long newBalance) {
+        if (ledger != null) {
+            ledger.adjust(newBalance - fineCents);
+        }
+        this.fineCents = newBalance;
+        if (fineHistory == null) {
+            fineHistory = new ArrayList<>(4);
+        }
+        fineHistory.add(new FineLedger.Entry(kind, cents, newBalance, LocalDate.now()));
+    }
+
     /**
      * Adds a fine to the patron's balance.
      *
      * @param amount Amount to add
      */
     public void addFine(double amount) {
-        if (amount > 0) {
-            this.fines += amount;
+        addFineCents(FineLedger.toCents(amount));
+    }
+
+    /**
+     * Adds a fine to the patron's balance.
+     *
+     * @param cents Amount to add in cents; zero or negative amounts are ignored
+     */
+    public synchronized void addFineCents(long cents) {
+        if (cents > 0) {
+            record(FineLedger.Kind.CHARGE, cents, fineCents + cents);
         } else {
         }
     }
@@ -159,8 +312,34 @@ public class Patron {
      * @return Remaining balance
      */
     public double payFine(double amount) {
-        this.fines = Math.max(0, this.fines - amount);
-        return this.fines;
+        return payFineCents(FineLedger.toCents(amount)) / 100.0;
+    }
+
+    /**
+     * Pays off a portion of the fine balance. The balance never goes below zero, and a
+     * payment that takes nothing off (nothing owed, or 0 paid) is not recorded.
+     *
+     * @param cents Amount to pay in cents
+     * @return Remaining balance in cents
+     */
+    public synchronized long payFineCents(long cents) {
+        long remaining = Math.max(0, fineCents - cents);
+        if (remaining != fineCents) {
+            record(FineLedger.Kind.PAYMENT, fineCents - remaining, remaining);
+        }
+        return remaining;
+    }
+
+    /**
+     * Re-applies a journaled payment of the amount that was actually applied. Unlike
+     * payFineCents() this does not stop at zero, so a payment replayed before the fines
+     * it paid off (which a sharded deployment journals on other shards) still leaves
+     * the right balance once every journal has been replayed.
+     *
+     * @param cents Amount applied in cents
+     */
+    synchronized void replayPaymentCents(long cents) {
+        record(FineLedger.Kind.PAYMENT, cents, fineCents - cents);
     }
 
     /**
@@ -170,7 +349,7 @@ public class Patron {
      * @param dueDate Due date for the book
      */
     public void addCheckedOutBook(String isbn, LocalDate dueDate) {
-        bookMap.put(isbn, dueDate);
+        putLoan(isbn, dueDate);
     }
 
     /**
@@ -179,7 +358,10 @@ public class Patron {
      * @param isbn Book ISBN to remove
      */
     public void removeCheckedOutBook(String isbn) {
-        bookMap.remove(isbn);
+        int i = indexOfLoan(isbn);
+        if (i >= 0) {
+            removeLoanAt(i);
+        }
     }
 
     /**
@@ -189,13 +371,179 @@ public class Patron {
      * @return true if book is checked out by this patron
      */
     public boolean hasBookCheckedOut(String isbn) {
-        if (bookMap.containsKey(isbn) == true) {
+        if (indexOfLoan(isbn) >= 0) {
             return true;
         } else {
             return false;
         }
     }
 
+    /**
+     * Returns the number of open loans; with loanIsbn and loanDueDay this walks the
+     * loans without allocating. Caller must hold the patron's monitor.
+     */
+    int loanCount() {
+        return loanCount;
+    }
+
+    /**
+     * Returns the position of a loan for loanDueDay, or -1 if the book is not checked out.
+     */
+    int loanIndex(String isbn) {
+        return indexOfLoan(isbn);
+    }
+
+    String loanIsbn(int i) {
+        return loanIsbns[i];
+    }
+
+    /**
+     * Returns the due date of loan i as an epoch day.
+     */
+    long loanDueDay(int i) {
+        return loanDueDays[i];
+    }
+
+    private int indexOfLoan(Object isbn) {
+        String[] isbns = loanIsbns;
+        for (int i = 0; i < loanCount; i++) {
+            // ISBN strings are usually the Book's own instance, so == hits first
+            if (isbns[i] == isbn || Objects.equals(isbns[i], isbn)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private LocalDate dueDateAt(int i) {
+        return loanDueDays[i] == NO_DATE ? null : LocalDate.ofEpochDay(loanDueDays[i]);
+    }
+
+    private LocalDate putLoan(String isbn, LocalDate dueDate) {
+        int day = dueDate == null ? NO_DATE : Math.toIntExact(dueDate.toEpochDay());
+        int i = indexOfLoan(isbn);
+        if (i >= 0) {
+            LocalDate previous = dueDateAt(i);
+            loanDueDays[i] = day;
+            return previous;
+        }
+        if (loanIsbns == null) {
+            loanIsbns = new String[getMaxCheckoutLimit()];
+            loanDueDays = new int[loanIsbns.length];
+        } else if (loanCount == loanIsbns.length) {
+            // Replay and restore may exceed the limit; grow rather than refuse
+            loanIsbns = Arrays.copyOf(loanIsbns, loanCount * 2);
+            loanDueDays = Arrays.copyOf(loanDueDays, loanCount * 2);
+        }
+        loanIsbns[loanCount] = isbn;
+        loanDueDays[loanCount] = day;
+        loanCount++;
+        return null;
+    }
+
+    private LocalDate removeLoanAt(int i) {
+        LocalDate removed = dueDateAt(i);
+        int last = --loanCount;
+        loanIsbns[i] = loanIsbns[last];
+        loanDueDays[i] = loanDueDays[last];
+        loanIsbns[last] = null;
+        return removed;
+    }
+
+    /**
+     * Map view of the loan arrays returned by getCheckedOutBooks(). Reads and writes go
+     * straight to the arrays; like the HashMap it replaces it is not thread-safe on its
+     * own and is used under the patron's monitor.
+     */
+    private final class LoanView extends AbstractMap<String, LocalDate> {
+        @Override
+        public LocalDate get(Object key) {
+            int i = indexOfLoan(key);
+            return i < 0 ? null : dueDateAt(i);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOfLoan(key) >= 0;
+        }
+
+        @Override
+        public LocalDate put(String key, LocalDate value) {
+            return putLoan(key, value);
+        }
+
+        @Override
+        public LocalDate remove(Object key) {
+            int i = indexOfLoan(key);
+            return i < 0 ? null : removeLoanAt(i);
+        }
+
+        @Override
+        public int size() {
+            return loanCount;
+        }
+
+        @Override
+        public void clear() {
+            if (loanIsbns != null) {
+                Arrays.fill(loanIsbns, 0, loanCount, null);
+            }
+            loanCount = 0;
+        }
+
+        @Override
+        public Set<Entry<String, LocalDate>> entrySet() {
+            return new AbstractSet<Entry<String, LocalDate>>() {
+                @Override
+                public Iterator<Entry<String, LocalDate>> iterator() {
+                    return new LoanIterator();
+                }
+
+                @Override
+                public int size() {
+                    return loanCount;
+                }
+            };
+        }
+    }
+
+    private final class LoanIterator implements Iterator<Map.Entry<String, LocalDate>> {
+        private int next;
+        private int current = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < loanCount;
+        }
+
+        @Override
+        public Map.Entry<String, LocalDate> next() {
+            if (next >= loanCount) {
+                throw new NoSuchElementException();
+            }
+            current = next++;
+            String isbn = loanIsbns[current];
+            return new AbstractMap.SimpleEntry<String, LocalDate>(isbn, dueDateAt(current)) {
+                @Override
+                public LocalDate setValue(LocalDate value) {
+                    super.setValue(value);
+                    return putLoan(isbn, value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (current < 0) {
+                throw new IllegalStateException();
+            }
+            // The last loan moves into the removed slot; visit it next
+            removeLoanAt(current);
+            next = current;
+            current = -1;
+        }
+    }
+
     /**
      * Compares patrons based on patronId.
      */
@@ -216,6 +564,6 @@ public class Patron {
 
     @Override
     public String toString() {
-        return patronId+"-"+name+"("+type+")"+"[Books:"+bookMap.size()+"/"+getMaxCheckoutLimit()+",Fines:$"+ fines +"]";
+        return patronId+"-"+name+"("+type+")"+"[Books:"+loanCount+"/"+getMaxCheckoutLimit()+",Fines:$"+ getFineBalance() +"]";
     }
 }
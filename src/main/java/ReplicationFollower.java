@@ -0,0 +1,237 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a replica of a leader's Checkout by applying the journal stream sent by a
+ * ReplicationLeader.
+ *
+ * The follower keeps its own copy of the leader's journal, byte for byte: each frame
+ * of whole records is appended to the local file and forced, then applied to the
+ * checkout in order (the same code path as TransactionJournal.replay) and
+ * acknowledged. A record cut across frames waits for the rest. On restart the local
+ * journal is replayed first and the follower asks the leader only for what follows it.
+ *
+ * The replica's checkout can serve reads while following but must not be written to.
+ * If the leader stops sending (connection closed, or no frame, not even a heartbeat,
+ * for LEADER_TIMEOUT_MILLIS) the follower stops and awaitLeaderLost() returns; calling
+ * promote() then turns the replica into a writable checkout journaling to the local
+ * file, which a new ReplicationLeader can in turn ship to other followers.
+ */
+public final class ReplicationFollower implements AutoCloseable {
+    static final int LEADER_TIMEOUT_MILLIS = 5 * ReplicationLeader.HEARTBEAT_MILLIS;
+
+    private final Checkout checkout;
+    private final Path file;
+    private final InetSocketAddress leader;
+    private final FileChannel channel;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Object progress = new Object();
+    private long appliedOffset; // guarded by progress
+    private Socket socket;
+    private Thread receiver;
+    private volatile boolean connected;
+    private volatile boolean closed;
+
+    /**
+     * Creates a follower, replaying the local journal (if any) into the checkout.
+     *
+     * @param checkout An empty checkout without a journal; becomes the replica
+     * @param journalFile The follower's own copy of the journal
+     * @param leader Address of the ReplicationLeader
+     * @throws IOException If the local journal cannot be read or opened
+     */
+    public ReplicationFollower(Checkout checkout, Path journalFile, InetSocketAddress leader) throws IOException {
+        this.checkout = checkout;
+        this.file = journalFile;
+        this.leader = leader;
+        this.appliedOffset = TransactionJournal.replay(journalFile, checkout);
+        this.channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(appliedOffset);
+        channel.position(appliedOffset);
+    }
+
+    /**
+     * Connects to the leader and starts applying its stream.
+     *
+     * @throws IOException If the leader cannot be reached
+     */
+    public void start() throws IOException {
+        socket = new Socket();
+        socket.connect(leader, LEADER_TIMEOUT_MILLIS);
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(LEADER_TIMEOUT_MILLIS);
+        connected = true;
+        receiver = new Thread(this::receive, "replication-follower");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Returns the offset in the leader's journal up to which this replica is applied.
+     */
+    public long getAppliedOffset() {
+        synchronized (progress) {
+            return appliedOffset;
+        }
+    }
+
+    /**
+     * Waits until the replica has applied the leader's journal up to an offset.
+     *
+     * @param offset A leader journal offset (TransactionJournal.getWrittenOffset())
+     * @param timeout Maximum wait
+     * @param unit Unit of timeout
+     * @return True once applied, false on timeout
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean awaitApplied(long offset, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (progress) {
+            while (appliedOffset < offset) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(progress, remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Waits until the follower stops receiving, normally because the leader died.
+     *
+     * @param timeout Maximum wait
+     * @param unit Unit of timeout
+     * @return True if the follower has stopped
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean awaitLeaderLost(long timeout, TimeUnit unit) throws InterruptedException {
+        return stopped.await(timeout, unit);
+    }
+
+    /**
+     * Stops following and makes the replica the primary: opens the local journal for
+     * appending and attaches it to the checkout, which can then take writes.
+     *
+     * @param syncCommit Commit mode of the new journal (see TransactionJournal.open)
+     * @return The journal now attached to the checkout
+     * @throws IOException If the journal cannot be opened
+     */
+    public TransactionJournal promote(boolean syncCommit) throws IOException {
+        close();
+        TransactionJournal journal = TransactionJournal.open(file, syncCommit);
+        checkout.setJournal(journal);
+        return journal;
+    }
+
+    /**
+     * Disconnects from the leader and closes the local journal copy.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (socket != null) {
+            socket.close();
+        }
+        if (receiver != null) {
+            try {
+                receiver.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        channel.close();
+    }
+
+    private void receive() {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeLong(getAppliedOffset());
+            out.flush();
+            byte[] buffer = new byte[64 * 1024];
+            int filled = 0;
+            while (!closed) {
+                int length = in.readInt();
+                if (length == 0) {
+                    continue; // heartbeat
+                }
+                if (length < 0 || length > ReplicationLeader.MAX_FRAME_BYTES) {
+                    throw new IOException("Bad frame length " + length);
+                }
+                if (filled + length > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, filled + length));
+                }
+                in.readFully(buffer, filled, length);
+                filled += length;
+
+                int complete = TransactionJournal.scan(ByteBuffer.wrap(buffer, 0, filled), null, 0);
+                checkNotCorrupt(buffer, complete, filled);
+                if (complete == 0) {
+                    continue;
+                }
+                // Durable locally before it is applied or acknowledged
+                ByteBuffer records = ByteBuffer.wrap(buffer, 0, complete);
+                while (records.hasRemaining()) {
+                    channel.write(records);
+                }
+                channel.force(false);
+                long offset;
+                synchronized (progress) {
+                    offset = appliedOffset;
+                }
+                TransactionJournal.scan(ByteBuffer.wrap(buffer, 0, complete), checkout, offset);
+                synchronized (progress) {
+                    appliedOffset += complete;
+                    offset = appliedOffset;
+                    progress.notifyAll();
+                }
+                out.writeLong(offset);
+                out.flush();
+                System.arraycopy(buffer, complete, buffer, 0, filled - complete);
+                filled -= complete;
+            }
+        } catch (IOException e) {
+            // Leader closed the connection, went silent, or we were closed
+        } finally {
+            connected = false;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Fails if the bytes after the last complete record hold a whole record that did
+     * not validate, rather than the start of one still in transit.
+     */
+    private static void checkNotCorrupt(byte[] buffer, int complete, int filled) throws IOException {
+        int header = TransactionJournal.HEADER_BYTES;
+        if (filled - complete >= header) {
+            int length = ByteBuffer.wrap(buffer, complete, 4).getInt();
+            if (length <= 0 || length <= filled - complete - header) {
+                throw new IOException("Corrupt replication stream at offset " + complete);
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams a leader's TransactionJournal to ReplicationFollowers over TCP.
+ *
+ * Replication is log shipping: a follower connects and sends the journal offset it
+ * already has, and a sender thread per follower then tails the journal file from that
+ * offset. Whenever the journal's flusher forces a group commit to disk the sender
+ * reads everything new in one go and writes it as one frame, so a busy leader ships
+ * large batches and an idle one ships each commit as it lands. Sending never waits
+ * for the follower: acknowledgements (the offset the follower has applied) come back
+ * on the same socket and are read by a separate thread, so batches are pipelined.
+ *
+ * Checkouts are not slowed down at all: they only append to the journal as before.
+ * Only records already durable on the leader are shipped, so a follower never holds
+ * a change the leader could lose in a crash. Callers that want a change on a replica
+ * before answering can wait with awaitReplicated(journal.getWrittenOffset(), ...).
+ *
+ * Wire format, leader to follower: frames of [int length][journal bytes], where a
+ * length of 0 is a heartbeat sent when the journal has been idle for HEARTBEAT_MILLIS.
+ * Follower to leader: the starting offset, then one long per applied frame.
+ */
+public final class ReplicationLeader implements AutoCloseable {
+    static final int HEARTBEAT_MILLIS = 200;
+    static final int MAX_FRAME_BYTES = 1 << 20;
+
+    private final TransactionJournal journal;
+    private final ServerSocket server;
+    private final Thread acceptor;
+    private final Set<Follower> followers = ConcurrentHashMap.newKeySet();
+    private final Object acks = new Object();
+    private long replicatedOffset; // guarded by acks
+    private volatile boolean closed;
+
+    /**
+     * One connected follower: a sender thread tailing the journal and an ack reader.
+     */
+    private final class Follower {
+        final Socket socket;
+        final Thread sender;
+        final Thread ackReader;
+        private DataInputStream in; // read by the sender first, then only by the ack reader
+
+        Follower(Socket socket) {
+            this.socket = socket;
+            String name = socket.getRemoteSocketAddress().toString();
+            this.sender = new Thread(this::send, "replication-sender " + name);
+            this.ackReader = new Thread(this::readAcks, "replication-acks " + name);
+            sender.setDaemon(true);
+            ackReader.setDaemon(true);
+        }
+
+        private void send() {
+            try {
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(),
+                        64 * 1024));
+                long sent = in.readLong();
+                if (sent < 0 || sent > journal.getWrittenOffset()) {
+                    // The follower has records this leader never wrote; it must not apply more
+                    return;
+                }
+                ackReader.start();
+                ByteBuffer buffer = ByteBuffer.allocate(MAX_FRAME_BYTES);
+                long heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS);
+                while (!closed) {
+                    long written = journal.awaitWritten(sent, heartbeatNanos);
+                    if (written < 0) {
+                        break;
+                    }
+                    if (written == sent) {
+                        out.writeInt(0);
+                        out.flush();
+                        continue;
+                    }
+                    buffer.clear();
+                    buffer.limit((int) Math.min(written - sent, MAX_FRAME_BYTES));
+                    while (buffer.hasRemaining()) {
+                        if (journal.read(buffer, sent + buffer.position()) < 0) {
+                            throw new IOException("Journal ended before offset " + written);
+                        }
+                    }
+                    out.writeInt(buffer.limit());
+                    out.write(buffer.array(), 0, buffer.limit());
+                    out.flush();
+                    sent += buffer.limit();
+                }
+            } catch (IOException e) {
+                // Follower went away or the journal was closed
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                disconnect();
+            }
+        }
+
+        private void readAcks() {
+            try {
+                while (true) {
+                    long offset = in.readLong();
+                    synchronized (acks) {
+                        if (offset > replicatedOffset) {
+                            replicatedOffset = offset;
+                            acks.notifyAll();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                disconnect();
+            }
+        }
+
+        void disconnect() {
+            followers.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * Creates a leader for a journal; call start() to accept followers.
+     *
+     * @param journal The journal attached to the leader's Checkout
+     * @param address Address to listen on (port 0 picks a free port)
+     * @throws IOException If the address cannot be bound
+     */
+    public ReplicationLeader(TransactionJournal journal, InetSocketAddress address) throws IOException {
+        this.journal = journal;
+        this.server = new ServerSocket();
+        server.bind(address);
+        this.acceptor = new Thread(this::accept, "replication-acceptor");
+        acceptor.setDaemon(true);
+    }
+
+    /**
+     * Starts accepting followers.
+     */
+    public void start() {
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    /**
+     * Returns the highest journal offset any follower has applied.
+     */
+    public long getReplicatedOffset() {
+        synchronized (acks) {
+            return replicatedOffset;
+        }
+    }
+
+    /**
+     * Waits until some follower has applied the journal up to an offset.
+     *
+     * @param offset A journal offset, e.g. journal.getWrittenOffset() after a commit
+     * @param timeout Maximum wait
+     * @param unit Unit of timeout
+     * @return True if replicated, false on timeout
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean awaitReplicated(long offset, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (acks) {
+            while (replicatedOffset < offset) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(acks, remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Stops accepting followers and disconnects the connected ones. The journal stays
+     * open.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            // Nothing to release
+        }
+        for (Follower follower : followers) {
+            follower.disconnect();
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Follower follower = new Follower(socket);
+                followers.add(follower);
+                if (closed) {
+                    follower.disconnect();
+                } else {
+                    follower.sender.start();
+                }
+            } catch (IOException e) {
+                // Server socket closed
+            }
+        }
+    }
+}
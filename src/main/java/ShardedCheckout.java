@@ -0,0 +1,382 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A checkout whose catalog is split by ISBN hash across independent shards, each a
+ * Checkout with its own inventory, open loans, due-date wheel, holds and catalog
+ * index, owned by a single thread. The router sends every book operation to the
+ * owning shard's thread, so a shard's state is only ever written by that thread and
+ * shards share no book-side data at all.
+ *
+ * Patron-side state cannot be split by ISBN: a patron's loans span shards. All shards
+ * therefore share one patron registry and fine ledger, and a patron's checkout count,
+ * overdue count and fines live in the Patron object itself. Each shard updates them
+ * while holding the patron's monitor, exactly as a single Checkout does, so the
+ * max-checkout limit holds across shards: two shards checking out to the same patron
+ * at once are serialized on that patron, and the second sees the first's loan. Only
+ * operations for the same patron ever wait for each other.
+ *
+ * The circulation policy is shared as well: setPolicy() changes it for every shard.
+ *
+ * Patron registration and fines outside of returns go through shard 0. To make the
+ * deployment durable give each shard its own TransactionJournal (getShard(i)), and on
+ * restart replay shard 0's journal before the others so every patron exists when its
+ * loans are replayed. A payment journaled on shard 0 may pay off return fines that
+ * are journaled on other shards and so replay after it; payments are journaled as the
+ * amount actually applied and replayed without clamping at zero, so the balance
+ * comes out right once every shard has been replayed.
+ */
+public final class ShardedCheckout implements AutoCloseable {
+    private final Checkout[] shards;
+    private final ExecutorService[] owners;
+    private final Thread[] ownerThreads;
+    private final Map<String, Patron> patrons = new ConcurrentHashMap<>();
+    private final FineLedger fineLedger = new FineLedger();
+    private final CirculationPolicy.Setting policy = new CirculationPolicy.Setting();
+
+    /**
+     * Creates a sharded checkout with heap inventories.
+     *
+     * @param shardCount Number of shards (and owner threads), at least 1
+     */
+    public ShardedCheckout(int shardCount) {
+        this(shardCount, 16);
+    }
+
+    /**
+     * Creates a sharded checkout whose inventories are pre-sized for a known catalog.
+     *
+     * @param shardCount Number of shards (and owner threads), at least 1
+     * @param expectedBooks Expected total number of titles
+     */
+    public ShardedCheckout(int shardCount, int expectedBooks) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be at least 1");
+        }
+        shards = new Checkout[shardCount];
+        owners = new ExecutorService[shardCount];
+        ownerThreads = new Thread[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Checkout(new BookMap(expectedBooks / shardCount + 1), patrons, fineLedger, policy);
+            int shard = i;
+            owners[i] = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "checkout-shard-" + shard);
+                thread.setDaemon(true);
+                ownerThreads[shard] = thread;
+                return thread;
+            });
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns a shard, e.g. to attach a journal or hold listener to it. Its book
+     * operations should go through this router so they run on the owner thread.
+     *
+     * @param index Shard index, 0 to getShardCount() - 1
+     * @return The shard
+     */
+    public Checkout getShard(int index) {
+        return shards[index];
+    }
+
+    /**
+     * Returns the index of the shard that owns an ISBN. Every hyphenation of an ISBN
+     * (and its ISBN-10 form) maps to the same shard.
+     *
+     * @param isbn The ISBN
+     * @return The shard index
+     */
+    public int shardOf(String isbn) {
+        long key = IsbnKeys.toKey(isbn);
+        if (key == IsbnKeys.NO_KEY) {
+            return Math.floorMod(isbn == null ? 0 : isbn.hashCode(), shards.length);
+        }
+        // Fibonacci hashing spreads sequential ISBNs evenly over the shards
+        return (int) (((key * 0x9E3779B97F4A7C15L) >>> 32) * shards.length >>> 32);
+    }
+
+    /**
+     * Adds a book to the shard that owns its ISBN.
+     *
+     * @param book The book
+     */
+    public void addBook(Book book) {
+        int shard = shardOf(book.getIsbn());
+        join(run(shard, () -> {
+            shards[shard].addBook(book);
+            return null;
+        }));
+    }
+
+    /**
+     * Registers a patron. The registry is shared by all shards.
+     *
+     * @param patron The patron
+     */
+    public void registerPatron(Patron patron) {
+        shards[0].registerPatron(patron);
+    }
+
+    /**
+     * Checks out a book on its owner thread. Same return codes as
+     * Checkout.checkoutBook(); an ISBN no shard knows gives 2.1 (after the patron checks).
+     *
+     * @param isbn The ISBN of the book (any hyphenation)
+     * @param patron The patron (can be null)
+     * @return A future completed with the status code
+     */
+    public CompletableFuture<Double> checkoutBookAsync(String isbn, Patron patron) {
+        int shard = shardOf(isbn);
+        return run(shard, () -> {
+            Checkout owner = shards[shard];
+            return owner.checkoutBook(owner.getInventory().get(isbn), patron);
+        });
+    }
+
+    /**
+     * Checks out a book and waits for the result.
+     *
+     * @see #checkoutBookAsync(String, Patron)
+     */
+    public double checkoutBook(String isbn, Patron patron) {
+        return join(checkoutBookAsync(isbn, patron));
+    }
+
+    /**
+     * Returns a book on its owner thread. Same results as Checkout.returnBook().
+     *
+     * @param isbn The ISBN of the book (any hyphenation)
+     * @param patron The patron returning it
+     * @return A future completed with the fine charged, or -1.0
+     */
+    public CompletableFuture<Double> returnBookAsync(String isbn, Patron patron) {
+        int shard = shardOf(isbn);
+        return run(shard, () -> shards[shard].returnBook(isbn, patron));
+    }
+
+    /**
+     * Returns a book and waits for the result.
+     *
+     * @see #returnBookAsync(String, Patron)
+     */
+    public double returnBook(String isbn, Patron patron) {
+        return join(returnBookAsync(isbn, patron));
+    }
+
+    /**
+     * Places a hold with the shard that owns the title.
+     *
+     * @see Checkout#placeHold(String, Patron)
+     */
+    public int placeHold(String isbn, Patron patron) {
+        int shard = shardOf(isbn);
+        return join(run(shard, () -> shards[shard].placeHold(isbn, patron)));
+    }
+
+    /**
+     * Cancels a hold with the shard that owns the title.
+     *
+     * @see Checkout#cancelHold(String, Patron)
+     */
+    public boolean cancelHold(String isbn, Patron patron) {
+        int shard = shardOf(isbn);
+        return join(run(shard, () -> shards[shard].cancelHold(isbn, patron)));
+    }
+
+    /**
+     * Returns the number of patrons waiting for a title on the shard that owns it.
+     *
+     * @see Checkout#getHoldCount(String)
+     */
+    public int getHoldCount(String isbn) {
+        int shard = shardOf(isbn);
+        return join(run(shard, () -> shards[shard].getHoldCount(isbn)));
+    }
+
+    /**
+     * Sets a title's available copies on the shard that owns it.
+     *
+     * @see Checkout#setAvailableCopies(String, int)
+     */
+    public boolean setAvailableCopies(String isbn, int copies) {
+        int shard = shardOf(isbn);
+        return join(run(shard, () -> shards[shard].setAvailableCopies(isbn, copies)));
+    }
+
+    /**
+     * Suspends or reinstates a patron's account.
+     *
+     * @see Checkout#setAccountSuspended(Patron, boolean)
+     */
+    public void setAccountSuspended(Patron patron, boolean suspended) {
+        shards[0].setAccountSuspended(patron, suspended);
+    }
+
+    /**
+     * Charges a fine outside of a return.
+     *
+     * @see Checkout#chargeFine(Patron, double)
+     */
+    public void chargeFine(Patron patron, double amount) {
+        shards[0].chargeFine(patron, amount);
+    }
+
+    /**
+     * Records a fine payment.
+     *
+     * @see Checkout#payFine(Patron, double)
+     */
+    public double payFine(Patron patron, double amount) {
+        return shards[0].payFine(patron, amount);
+    }
+
+    /**
+     * Advances every shard's overdue clock, in parallel on the owner threads.
+     *
+     * @param today The current date
+     * @return Number of loans that became overdue
+     */
+    public int advanceOverdueClock(LocalDate today) {
+        List<CompletableFuture<Integer>> results = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            int shard = i;
+            results.add(run(shard, () -> shards[shard].advanceOverdueClock(today)));
+        }
+        int total = 0;
+        for (CompletableFuture<Integer> result : results) {
+            total += join(result);
+        }
+        return total;
+    }
+
+    /**
+     * Recomputes every patron's overdue count and accrued fines from their loans on
+     * all shards.
+     *
+     * @see OverdueSweep#run(ShardedCheckout, LocalDate)
+     */
+    public OverdueSweep.Result sweepOverdue(LocalDate today) {
+        return OverdueSweep.run(this, today);
+    }
+
+    /**
+     * Sets the circulation policy of all shards.
+     *
+     * @see Checkout#setPolicy(CirculationPolicy)
+     */
+    public CirculationPolicy setPolicy(CirculationPolicy policy) {
+        return this.policy.set(policy);
+    }
+
+    /**
+     * Returns the circulation policy in force for all shards.
+     *
+     * @see Checkout#getPolicy()
+     */
+    public CirculationPolicy getPolicy() {
+        return policy.get();
+    }
+
+    /**
+     * Counts books across all shards.
+     *
+     * @see Checkout#countBooksByType(Book.BookType, boolean)
+     */
+    public int countBooksByType(Book.BookType type, boolean onlyAvailable) {
+        int total = 0;
+        for (Checkout shard : shards) {
+            total += shard.countBooksByType(type, onlyAvailable);
+        }
+        return total;
+    }
+
+    /**
+     * Attaches metrics to every shard.
+     *
+     * @see Checkout#setMetrics(CheckoutMetrics)
+     */
+    public void setMetrics(CheckoutMetrics metrics) {
+        for (Checkout shard : shards) {
+            shard.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Attaches an event publisher to every shard. Events from different shards are
+     * interleaved; events for one ISBN keep their order.
+     *
+     * @see Checkout#setEventPublisher(CirculationEventPublisher)
+     */
+    public void setEventPublisher(CirculationEventPublisher publisher) {
+        for (Checkout shard : shards) {
+            shard.setEventPublisher(publisher);
+        }
+    }
+
+    public Map<String, Patron> getPatrons() {
+        return patrons;
+    }
+
+    /**
+     * Returns the ledger of outstanding fines, shared by all shards.
+     */
+    public FineLedger getFineLedger() {
+        return fineLedger;
+    }
+
+    /**
+     * Stops the owner threads after the operations already submitted have run.
+     */
+    @Override
+    public void close() {
+        for (ExecutorService owner : owners) {
+            owner.shutdown();
+        }
+        boolean interrupted = false;
+        for (ExecutorService owner : owners) {
+            try {
+                owner.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> run(int shard, Supplier<T> operation) {
+        // Already on the owner thread (e.g. a hold listener calling back): run inline
+        if (Thread.currentThread() == ownerThreads[shard]) {
+            return CompletableFuture.completedFuture(operation.get());
+        }
+        return CompletableFuture.supplyAsync(operation, owners[shard]);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,598 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * On-disk archive of returned loans. Attach it with Checkout.setArchive(); the checkout
+ * then keeps only open loans in memory and hands each loan to the archive as it is
+ * returned.
+ *
+ * Loans collect in an in-memory segment of up to segmentRecords loans, stored column
+ * by column (see ArchiveSegment). A full segment is sealed and a background writer
+ * compresses it and writes it to its own file, segment-NNNNNNNN.tca, via a temporary
+ * file and an atomic rename, so segment files are complete and never change (a file
+ * system without atomic renames fails the write). Returns
+ * never wait for compression or I/O unless the writer falls MAX_PENDING_SEGMENTS
+ * behind. Heap use is one open segment, a few sealed ones in flight, and a Bloom filter
+ * per segment file over its patron IDs and ISBNs (about 10 bits per distinct key).
+ *
+ * Lookups by patron or ISBN read only the segment files whose filter admits the key.
+ *
+ * The open segment is written by flush() and close(). If the process dies before that,
+ * its loans are missing from the segment files, but the TransactionJournal still has
+ * them. Each file records the journal offset just past the RETURN record of its last
+ * loan, and Checkout journals and archives returns in the same order, so that offset
+ * splits the journal exactly: attach the archive before replaying the journal, and
+ * returns at or below the highest offset in the files are skipped as archived while
+ * later ones are archived again. With a journal attached, a segment is written only
+ * once the journal is on disk past its offset, so no file holds a loan that the journal
+ * could still lose.
+ *
+ * File layout: [int magic][byte version][int loans][long journal offset]
+ * [int patron filter longs][longs][int ISBN filter longs][longs][int data length]
+ * [int CRC32C of data][data], where data is ArchiveSegment.compress() output.
+ */
+public final class TransactionArchive implements AutoCloseable {
+    public static final int DEFAULT_SEGMENT_RECORDS = 65_536;
+    static final int MAX_PENDING_SEGMENTS = 4;
+    private static final int MAGIC = 0x54434131; // "TCA1"
+    private static final byte VERSION = 3;
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".tca";
+
+    /**
+     * One archived loan.
+     */
+    public static final class Loan {
+        private final String patronId;
+        private final Patron.PatronType patronType;
+        private final String isbn;
+        private final Book.BookType bookType;
+        private final LocalDate checkoutDate;
+        private final LocalDate dueDate;
+        private final LocalDate returnDate;
+        private final long fineCents;
+
+        private Loan(ArchiveSegment segment, int i) {
+            this.patronId = segment.patronIds[segment.patronCodes[i]];
+            this.patronType = Patron.PatronType.values()[segment.patronTypes[i]];
+            this.isbn = segment.isbns[segment.isbnCodes[i]];
+            this.bookType = segment.bookTypes[i] == 0 ? null : Book.BookType.values()[segment.bookTypes[i] - 1];
+            this.checkoutDate = LocalDate.ofEpochDay(segment.checkoutDays[i]);
+            this.dueDate = LocalDate.ofEpochDay(segment.dueDays[i]);
+            this.returnDate = LocalDate.ofEpochDay(segment.returnDays[i]);
+            this.fineCents = segment.fineCents[i];
+        }
+
+        public String getPatronId() {
+            return patronId;
+        }
+
+        /** The patron's type when the book was returned. */
+        public Patron.PatronType getPatronType() {
+            return patronType;
+        }
+
+        public String getIsbn() {
+            return isbn;
+        }
+
+        /** The book's type, or null if it has none. */
+        public Book.BookType getBookType() {
+            return bookType;
+        }
+
+        public LocalDate getCheckoutDate() {
+            return checkoutDate;
+        }
+
+        /** The due date in force at return, after any renewals. */
+        public LocalDate getDueDate() {
+            return dueDate;
+        }
+
+        public LocalDate getReturnDate() {
+            return returnDate;
+        }
+
+        public long getFineCents() {
+            return fineCents;
+        }
+
+        @Override
+        public String toString() {
+            return patronId + " " + isbn + " " + checkoutDate + ".." + returnDate + " due " + dueDate
+                    + (fineCents > 0 ? " fine " + fineCents + "c" : "");
+        }
+    }
+
+    /**
+     * A segment file and its in-memory filters.
+     */
+    private static final class Segment {
+        final Path file;
+        final int loans;
+        final long journalOffset;
+        final long[] patronFilter;
+        final long[] isbnFilter;
+
+        Segment(Path file, int loans, long journalOffset, long[] patronFilter, long[] isbnFilter) {
+            this.file = file;
+            this.loans = loans;
+            this.journalOffset = journalOffset;
+            this.patronFilter = patronFilter;
+            this.isbnFilter = isbnFilter;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Object lock = new Object();
+    private final ArrayDeque<ArchiveSegment> sealed = new ArrayDeque<>(); // oldest first, guarded by lock
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile TransactionJournal journal; // segments wait for it to reach their offset
+    private ArchiveSegment.Builder open; // guarded by lock
+    private long filedJournalOffset = ArchiveSegment.NO_JOURNAL_OFFSET; // highest in the files at open
+    private int nextSegment; // guarded by lock
+    private boolean closed; // guarded by lock
+    private IOException failure; // first write failure, guarded by lock
+
+    private TransactionArchive(Path directory, int segmentRecords) {
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.open = new ArchiveSegment.Builder(segmentRecords);
+        this.writer = new Thread(this::writeLoop, "archive-writer");
+        writer.setDaemon(true);
+    }
+
+    /**
+     * Opens (or creates) an archive directory with the default segment size.
+     *
+     * @param directory The directory holding the segment files
+     * @return The archive
+     * @throws IOException If the directory or a segment file cannot be read
+     */
+    public static TransactionArchive open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    /**
+     * Opens (or creates) an archive directory, loading the filters of every segment file
+     * and removing temporary files left by a crash.
+     *
+     * @param directory The directory holding the segment files
+     * @param segmentRecords Loans per segment file
+     * @return The archive
+     * @throws IOException If the directory or a segment file cannot be read
+     */
+    public static TransactionArchive open(Path directory, int segmentRecords) throws IOException {
+        if (segmentRecords < 1) {
+            throw new IllegalArgumentException("segmentRecords must be positive");
+        }
+        Files.createDirectories(directory);
+        TransactionArchive archive = new TransactionArchive(directory, segmentRecords);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path file : listing) {
+                if (file.getFileName().toString().endsWith(SUFFIX)) {
+                    files.add(file);
+                } else {
+                    Files.delete(file); // unfinished write
+                }
+            }
+        }
+        files.sort(null); // zero-padded numbers sort in write order
+        for (Path file : files) {
+            Segment segment = readHeader(file);
+            archive.segments.add(segment);
+            archive.filedJournalOffset = Math.max(archive.filedJournalOffset, segment.journalOffset);
+            String name = file.getFileName().toString();
+            int number = Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+            archive.nextSegment = Math.max(archive.nextSegment, number + 1);
+        }
+        archive.writer.start();
+        return archive;
+    }
+
+    /**
+     * Makes segment writes wait until the journal is on disk past their loans' returns.
+     * Called by Checkout when either the journal or the archive is attached.
+     *
+     * @param journal The checkout's journal, or null
+     */
+    void setJournal(TransactionJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Archives a returned loan. Called by Checkout with the patron's monitor held, in
+     * the order the returns were journaled. A loan whose RETURN record ends at or below
+     * the journal offset of a segment file found at open is a replayed return that is
+     * already archived, and is skipped.
+     *
+     * @param journalOffset Journal offset just past the loan's RETURN record, or
+     *        ArchiveSegment.NO_JOURNAL_OFFSET if it was not journaled
+     */
+    void append(String patronId, Patron.PatronType patronType, String isbn, Book.BookType bookType,
+            LocalDate checkoutDate, LocalDate dueDate, LocalDate returnDate, long fineCents, long journalOffset) {
+        synchronized (lock) {
+            if (closed) {
+                dropped.increment();
+                return;
+            }
+            if (journalOffset != ArchiveSegment.NO_JOURNAL_OFFSET && journalOffset <= filedJournalOffset) {
+                return;
+            }
+            open.add(patronId, patronType, isbn, bookType, (int) checkoutDate.toEpochDay(),
+                    (int) dueDate.toEpochDay(), (int) returnDate.toEpochDay(), fineCents);
+            if (journalOffset != ArchiveSegment.NO_JOURNAL_OFFSET) {
+                open.setJournalOffset(journalOffset);
+            }
+            if (open.isFull()) {
+                seal();
+                // Bound the heap: wait for the writer if it is far behind
+                while (sealed.size() > MAX_PENDING_SEGMENTS && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Caller holds lock. */
+    private void seal() {
+        if (open.size() > 0) {
+            sealed.addLast(open.build());
+            open = new ArchiveSegment.Builder(segmentRecords);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Writes the open segment (even if not full) and waits until every sealed segment is
+     * on disk.
+     *
+     * @throws IOException If a segment could not be written
+     */
+    public void flush() throws IOException {
+        synchronized (lock) {
+            seal();
+            while (!sealed.isEmpty() && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for the archive writer", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of loans archived, on disk or still in memory.
+     */
+    public long getLoanCount() {
+        long count = 0;
+        for (Segment segment : segments) {
+            count += segment.loans;
+        }
+        synchronized (lock) {
+            for (ArchiveSegment segment : sealed) {
+                count += segment.size;
+            }
+            return count + open.size();
+        }
+    }
+
+    public int getSegmentFileCount() {
+        return segments.size();
+    }
+
+    /**
+     * Returns the number of loans lost because a segment could not be written or the
+     * archive was closed.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns every archived loan of a patron, oldest return first.
+     *
+     * @param patronId The patron ID
+     * @return The loans
+     * @throws IOException If a segment file cannot be read
+     */
+    public List<Loan> findByPatron(String patronId) throws IOException {
+        List<Loan> loans = new ArrayList<>();
+        if (patronId == null) {
+            return loans;
+        }
+        for (ArchiveSegment segment : segments(patronId, null)) {
+            int code = indexOf(segment.patronIds, patronId);
+            if (code >= 0) {
+                for (int i = 0; i < segment.size; i++) {
+                    if (segment.patronCodes[i] == code) {
+                        loans.add(new Loan(segment, i));
+                    }
+                }
+            }
+        }
+        return loans;
+    }
+
+    /**
+     * Returns every archived loan of a title, oldest return first.
+     *
+     * @param isbn The ISBN (any hyphenation)
+     * @return The loans
+     * @throws IOException If a segment file cannot be read
+     */
+    public List<Loan> findByIsbn(String isbn) throws IOException {
+        List<Loan> loans = new ArrayList<>();
+        if (isbn == null) {
+            return loans;
+        }
+        String key = isbnKey(isbn);
+        for (ArchiveSegment segment : segments(null, key)) {
+            int code = -1;
+            for (int c = 0; c < segment.isbns.length && code < 0; c++) {
+                if (isbnKey(segment.isbns[c]).equals(key)) {
+                    code = c;
+                }
+            }
+            if (code >= 0) {
+                for (int i = 0; i < segment.size; i++) {
+                    if (segment.isbnCodes[i] == code) {
+                        loans.add(new Loan(segment, i));
+                    }
+                }
+            }
+        }
+        return loans;
+    }
+
+    /**
+     * Loads one segment of a scan: reads a segment file, or returns loans still in memory.
+     */
+    interface SegmentLoader {
+        ArchiveSegment load() throws IOException;
+    }
+
+    /**
+     * Lists the segments of the archive in archive order: segment files whose filters
+     * admit the keys (null matches everything), then the segments still in memory.
+     * Nothing is read until a loader is called, so a scan holds one segment at a time.
+     */
+    List<SegmentLoader> scan(String patronId, String isbnKey) {
+        List<Segment> files;
+        List<ArchiveSegment> inMemory;
+        synchronized (lock) {
+            // Taken together so a segment moving from memory to disk is seen exactly once
+            files = new ArrayList<>(segments);
+            inMemory = new ArrayList<>(sealed);
+            inMemory.add(open.build());
+        }
+        List<SegmentLoader> loaders = new ArrayList<>();
+        for (Segment segment : files) {
+            if ((patronId == null || ArchiveSegment.mightContain(segment.patronFilter, patronId))
+                    && (isbnKey == null || ArchiveSegment.mightContain(segment.isbnFilter, isbnKey))) {
+                loaders.add(() -> readSegment(segment.file));
+            }
+        }
+        for (ArchiveSegment segment : inMemory) {
+            loaders.add(() -> segment);
+        }
+        return loaders;
+    }
+
+    private List<ArchiveSegment> segments(String patronId, String isbnKey) throws IOException {
+        List<ArchiveSegment> result = new ArrayList<>();
+        for (SegmentLoader loader : scan(patronId, isbnKey)) {
+            result.add(loader.load());
+        }
+        return result;
+    }
+
+    /**
+     * Writes the open segment, stops the writer and waits for it.
+     *
+     * @throws IOException If a segment could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            seal();
+            closed = true;
+            lock.notifyAll();
+        }
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            ArchiveSegment segment;
+            int number;
+            synchronized (lock) {
+                while (sealed.isEmpty() && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (sealed.isEmpty()) {
+                    return;
+                }
+                segment = sealed.peekFirst();
+                number = nextSegment++;
+            }
+            Segment written = null;
+            try {
+                TransactionJournal log = journal;
+                if (log != null && segment.journalOffset != ArchiveSegment.NO_JOURNAL_OFFSET) {
+                    log.awaitWrittenOffset(segment.journalOffset);
+                }
+                written = write(segment, directory.resolve(String.format("%s%08d%s", PREFIX, number, SUFFIX)));
+            } catch (IOException e) {
+                dropped.add(segment.size);
+                synchronized (lock) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            synchronized (lock) {
+                if (written != null) {
+                    segments.add(written);
+                }
+                sealed.pollFirst();
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static Segment write(ArchiveSegment segment, Path file) throws IOException {
+        long[] patronFilter = ArchiveSegment.filter(segment.patronIds);
+        String[] isbnKeys = new String[segment.isbns.length];
+        for (int i = 0; i < isbnKeys.length; i++) {
+            isbnKeys[i] = isbnKey(segment.isbns[i]);
+        }
+        long[] isbnFilter = ArchiveSegment.filter(isbnKeys);
+        byte[] data = segment.compress();
+        CRC32C crc = new CRC32C();
+        crc.update(data);
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE, StandardOpenOption.SYNC)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(segment.size);
+            out.writeLong(segment.journalOffset);
+            writeFilter(out, patronFilter);
+            writeFilter(out, isbnFilter);
+            out.writeInt(data.length);
+            out.writeInt((int) crc.getValue());
+            out.write(data);
+            out.flush();
+        }
+        // A plain move could leave a partial file under the final name after a crash
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        return new Segment(file, segment.size, segment.journalOffset, patronFilter, isbnFilter);
+    }
+
+    private static void writeFilter(DataOutputStream out, long[] filter) throws IOException {
+        out.writeInt(filter.length);
+        for (long word : filter) {
+            out.writeLong(word);
+        }
+    }
+
+    private static long[] readFilter(DataInputStream in) throws IOException {
+        long[] filter = new long[in.readInt()];
+        for (int i = 0; i < filter.length; i++) {
+            filter[i] = in.readLong();
+        }
+        return filter;
+    }
+
+    private static DataInputStream openSegment(Path file, InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+        if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+            throw new IOException("Not an archive segment: " + file);
+        }
+        return in;
+    }
+
+    /** Reads a segment file's header and filters, skipping the data. */
+    private static Segment readHeader(Path file) throws IOException {
+        try (InputStream stream = Files.newInputStream(file)) {
+            DataInputStream in = openSegment(file, stream);
+            int loans = in.readInt();
+            long journalOffset = in.readLong();
+            long[] patronFilter = readFilter(in);
+            long[] isbnFilter = readFilter(in);
+            return new Segment(file, loans, journalOffset, patronFilter, isbnFilter);
+        }
+    }
+
+    /** Reads and decompresses a segment file's loans. */
+    static ArchiveSegment readSegment(Path file) throws IOException {
+        try (InputStream stream = Files.newInputStream(file)) {
+            DataInputStream in = openSegment(file, stream);
+            in.readInt();
+            long journalOffset = in.readLong();
+            in.skipNBytes(in.readInt() * 8L);
+            in.skipNBytes(in.readInt() * 8L);
+            byte[] data = new byte[in.readInt()];
+            int expected = in.readInt();
+            in.readFully(data);
+            CRC32C crc = new CRC32C();
+            crc.update(data);
+            if ((int) crc.getValue() != expected) {
+                throw new IOException("Archive segment is corrupt: " + file);
+            }
+            return ArchiveSegment.decompress(data, journalOffset);
+        }
+    }
+
+    /** ISBNs compare by their normalized ISBN-13 form where they have one. */
+    private static String isbnKey(String isbn) {
+        long key = IsbnKeys.toKey(isbn);
+        return key == IsbnKeys.NO_KEY ? isbn : IsbnKeys.toIsbn13(key);
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
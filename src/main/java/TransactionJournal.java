@@ -0,0 +1,706 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead journal of Checkout state changes.
+ *
+ * Every record is framed as [int payload length][int CRC32C][payload] where the payload
+ * starts with a one-byte record type. Dates are stored as epoch days and money as
+ * whole cents, so a typical checkout record is well under 64 bytes.
+ *
+ * Appends only copy the record into an in-memory buffer. A single flusher thread
+ * writes whatever has accumulated through a FileChannel and forces it to disk, so
+ * all operations that arrive while one fsync is in flight share the next one
+ * (group commit). In sync-commit mode callers wait for that shared fsync before
+ * returning; otherwise they return as soon as the record is buffered. Once a write
+ * has failed every append throws UncheckedIOException, so callers that append before
+ * changing state leave that state untouched.
+ *
+ * Recovery: create an empty Checkout, call {@link #replay(Path, Checkout)}, then attach
+ * a journal opened with {@link #open(Path, boolean)} via Checkout.setJournal(). Replay
+ * maps the file a window at a time, so journals of any size replay in bounded address
+ * space.
+ *
+ * The file is also the replication log: a ReplicationLeader ships every range that has
+ * been forced to disk to its followers, which apply it with the same code as replay.
+ */
+public final class TransactionJournal implements Closeable {
+    static final byte BOOK_ADDED = 1;
+    static final byte PATRON_REGISTERED = 2;
+    static final byte CHECKOUT = 3;
+    static final byte RENEWAL = 4;
+    static final byte RETURN = 5;
+    static final byte FINE_CHARGED = 6;
+    static final byte FINE_PAID = 7;
+    static final byte AVAILABLE_COPIES = 8;
+    static final byte SUSPENSION = 9;
+
+    static final int HEADER_BYTES = 8;
+    static final int SCAN_WINDOW_BYTES = 64 * 1024 * 1024; // far above the largest record
+    private static final byte NO_BOOK_TYPE = -1;
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+    private static final int NULL_STRING = 0xFFFF;
+
+    private final FileChannel channel;
+    private final boolean syncCommit;
+    private final Object lock = new Object();
+    private final Thread flusher;
+    private final CRC32C crc = new CRC32C();
+
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private ByteBuffer writing = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private long appendedSequence;
+    private long durableSequence;
+    private long appendedOffset; // file size once every appended record is written
+    private long writtenOffset; // file size up to the last forced write
+    private boolean closed;
+    private IOException failure;
+
+    private TransactionJournal(FileChannel channel, long writtenOffset, boolean syncCommit) {
+        this.channel = channel;
+        this.writtenOffset = writtenOffset;
+        this.appendedOffset = writtenOffset;
+        this.syncCommit = syncCommit;
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Opens a journal for appending, creating the file if needed. A torn record left
+     * at the end of the file by a crash is truncated so new records follow the last
+     * complete one.
+     *
+     * @param file The journal file
+     * @param syncCommit If true, commit() blocks until the record is on disk
+     * @return The open journal
+     * @throws IOException If the file cannot be opened
+     */
+    public static TransactionJournal open(Path file, boolean syncCommit) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long validEnd = scan(channel, null, SCAN_WINDOW_BYTES);
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+        return new TransactionJournal(channel, validEnd, syncCommit);
+    }
+
+    /**
+     * Rebuilds Checkout state by replaying every complete record in the journal.
+     * The checkout must not have a journal attached while replaying.
+     *
+     * @param file The journal file (a missing file replays nothing)
+     * @param checkout The checkout to rebuild
+     * @return Number of bytes of valid journal that were applied
+     * @throws IOException If the file cannot be read
+     */
+    public static long replay(Path file, Checkout checkout) throws IOException {
+        return replay(file, checkout, SCAN_WINDOW_BYTES);
+    }
+
+    /**
+     * Replays a journal mapping at most windowBytes of it at a time.
+     */
+    static long replay(Path file, Checkout checkout, int windowBytes) throws IOException {
+        if (!file.toFile().exists()) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return scan(channel, checkout, windowBytes);
+        }
+    }
+
+    /**
+     * Walks the framed records of a journal, optionally applying them, and returns
+     * the offset just past the last record whose length and checksum are intact. The
+     * file is mapped one window at a time; each window starts at the first record the
+     * previous one did not hold whole, so windowBytes must exceed the largest record.
+     */
+    private static long scan(FileChannel channel, Checkout target, int windowBytes) throws IOException {
+        long size = channel.size();
+        long offset = 0;
+        while (offset < size) {
+            long window = Math.min(size - offset, windowBytes);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, offset, window);
+            int complete = scan(map, target, offset);
+            boolean last = offset + window == size;
+            offset += complete;
+            if (last || complete == 0) {
+                break; // end of file, or a torn or corrupt record
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Walks framed records from the buffer's position, optionally applying them, and
+     * returns the number of bytes of complete, intact records. The buffer is left
+     * positioned after them, so a record cut short (or corrupt) is what remains.
+     *
+     * @param records Journal bytes starting at a record boundary
+     * @param target The checkout to apply records to, or null to only validate
+     * @param fileOffset Offset in the journal file of the buffer's position
+     * @return Bytes of complete records
+     */
+    static int scan(ByteBuffer records, Checkout target, long fileOffset) {
+        CRC32C check = new CRC32C();
+        int start = records.position();
+        int offset = start;
+        while (records.remaining() >= HEADER_BYTES) {
+            int length = records.getInt();
+            int expected = records.getInt();
+            if (length <= 0 || length > records.remaining()) {
+                break;
+            }
+            ByteBuffer payload = records.slice(records.position(), length);
+            check.reset();
+            check.update(payload.duplicate());
+            if ((int) check.getValue() != expected) {
+                break;
+            }
+            records.position(records.position() + length);
+            if (target != null) {
+                apply(payload, target, fileOffset + records.position() - start);
+            }
+            offset = records.position();
+        }
+        records.position(offset);
+        return offset - start;
+    }
+
+    /**
+     * Applies one record payload to a checkout.
+     *
+     * @param payload The record payload, positioned at its type byte
+     * @param checkout The checkout to update
+     * @param end Journal file offset just past the record
+     */
+    static void apply(ByteBuffer payload, Checkout checkout, long end) {
+        byte type = payload.get();
+        switch (type) {
+            case BOOK_ADDED: {
+                String isbn = getString(payload);
+                String title = getString(payload);
+                String author = getString(payload);
+                byte typeOrdinal = payload.get();
+                Book.BookType bookType = typeOrdinal == NO_BOOK_TYPE ? null : Book.BookType.values()[typeOrdinal];
+                checkout.addBook(new Book(isbn, title, author, bookType, payload.getInt()));
+                break;
+            }
+            case PATRON_REGISTERED: {
+                String patronId = getString(payload);
+                String name = getString(payload);
+                String email = getString(payload);
+                Patron patron = new Patron(patronId, name, email, Patron.PatronType.values()[payload.get()]);
+                if (payload.hasRemaining()) { // absent from records written before it was journaled
+                    patron.setAccountSuspended(payload.get() != 0);
+                    patron.setOverdueCount(payload.getInt());
+                    long fineCents = payload.getLong();
+                    if (fineCents != 0) {
+                        patron.addFineCents(fineCents);
+                    }
+                }
+                checkout.registerPatron(patron);
+                break;
+            }
+            case CHECKOUT: {
+                String patronId = getString(payload);
+                String isbn = getString(payload);
+                LocalDate checkoutDate = LocalDate.ofEpochDay(payload.getInt());
+                checkout.replayCheckout(patronId, isbn, checkoutDate, LocalDate.ofEpochDay(payload.getInt()));
+                break;
+            }
+            case RENEWAL: {
+                String patronId = getString(payload);
+                String isbn = getString(payload);
+                checkout.replayRenewal(patronId, isbn, LocalDate.ofEpochDay(payload.getInt()));
+                break;
+            }
+            case RETURN: {
+                String patronId = getString(payload);
+                String isbn = getString(payload);
+                LocalDate returnDate = LocalDate.ofEpochDay(payload.getInt());
+                checkout.replayReturn(patronId, isbn, returnDate, payload.getLong(), end);
+                break;
+            }
+            case FINE_CHARGED: {
+                Patron patron = checkout.getPatrons().get(getString(payload));
+                long cents = payload.getLong();
+                if (patron != null) {
+                    patron.addFineCents(cents);
+                }
+                break;
+            }
+            case FINE_PAID: {
+                Patron patron = checkout.getPatrons().get(getString(payload));
+                long cents = payload.getLong();
+                if (patron != null) {
+                    patron.replayPaymentCents(cents);
+                }
+                break;
+            }
+            case AVAILABLE_COPIES: {
+                String isbn = getString(payload);
+                checkout.setAvailableCopies(isbn, payload.getInt());
+                break;
+            }
+            case SUSPENSION: {
+                Patron patron = checkout.getPatrons().get(getString(payload));
+                boolean suspended = payload.get() != 0;
+                if (patron != null) {
+                    checkout.setAccountSuspended(patron, suspended);
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    /**
+     * Journals a book being added to the inventory.
+     *
+     * @param book The book added
+     * @return Sequence number to pass to commit()
+     */
+    public long appendBookAdded(Book book) {
+        synchronized (lock) {
+            int start = beginRecord(BOOK_ADDED);
+            putString(book.getIsbn());
+            putString(book.getTitle());
+            putString(book.getAuthor());
+            pending.put(book.getType() == null ? NO_BOOK_TYPE : (byte) book.getType().ordinal());
+            pending.putInt(book.getTotalCopies());
+            return endRecord(start);
+        }
+    }
+
+    /**
+     * Journals a patron registration, with the suspension, overdue count and fine
+     * balance the patron arrives with.
+     *
+     * @param patron The patron registered
+     * @return Sequence number to pass to commit()
+     */
+    public long appendPatronRegistered(Patron patron) {
+        synchronized (lock) {
+            int start = beginRecord(PATRON_REGISTERED);
+            putString(patron.getPatronId());
+            putString(patron.getName());
+            putString(patron.getEmail());
+            pending.put((byte) patron.getType().ordinal());
+            pending.put((byte) (patron.isAccountSuspended() ? 1 : 0));
+            pending.putInt(patron.getOverdueCount());
+            pending.putLong(patron.getFineBalanceCents());
+            return endRecord(start);
+        }
+    }
+
+    /**
+     * Journals a title's available copies being set outright.
+     *
+     * @param isbn The ISBN
+     * @param copies The new available copies
+     * @return Sequence number to pass to commit()
+     */
+    public long appendAvailableCopies(String isbn, int copies) {
+        synchronized (lock) {
+            int start = beginRecord(AVAILABLE_COPIES);
+            putString(isbn);
+            pending.putInt(copies);
+            return endRecord(start);
+        }
+    }
+
+    /**
+     * Journals a patron's account being suspended or reinstated.
+     *
+     * @param patronId The patron
+     * @param suspended True if suspended
+     * @return Sequence number to pass to commit()
+     */
+    public long appendSuspension(String patronId, boolean suspended) {
+        synchronized (lock) {
+            int start = beginRecord(SUSPENSION);
+            putString(patronId);
+            pending.put((byte) (suspended ? 1 : 0));
+            return endRecord(start);
+        }
+    }
+
+    /**
+     * Journals a new loan.
+     *
+     * @param patronId The borrowing patron
+     * @param isbn The ISBN checked out
+     * @param checkoutDate Date of checkout
+     * @param dueDate Due date of the loan
+     * @return Sequence number to pass to commit()
+     */
+    public long appendCheckout(String patronId, String isbn, LocalDate checkoutDate, LocalDate dueDate) {
+        synchronized (lock) {
+            int start = beginRecord(CHECKOUT);
+            putString(patronId);
+            putString(isbn);
+            pending.putInt((int) checkoutDate.toEpochDay());
+            pending.putInt((int) dueDate.toEpochDay());
+            return endRecord(start);
+        }
+    }
+
+    /**
+     * Journals a renewal of an open loan.
+     *
+     * @param patronId The renewing patron
+     * @param isbn The ISBN renewed
+     * @param dueDate The new due date
+     * @return Sequence number to pass to commit()
+     */
+    public long appendRenewal(String patronId, String isbn, LocalDate dueDate) {
+        synchronized (lock) {
+            int start = beginRecord(RENEWAL);
+            putString(patronId);
+            putString(isbn);
+            pending.putInt((int) dueDate.toEpochDay());
+            return endRecord(start);
+        }
+    }
+
+    /**
+     * Journals a return together with the fine it charged.
+     *
+     * @param patronId The returning patron
+     * @param isbn The ISBN returned
+     * @param returnDate Date of return
+     * @param fineCents Fine charged in cents
+     * @return Sequence number to pass to commit()
+     */
+    public long appendReturn(String patronId, String isbn, LocalDate returnDate, long fineCents) {
+        synchronized (lock) {
+            int start = beginRecord(RETURN);
+            putString(patronId);
+            putString(isbn);
+            pending.putInt((int) returnDate.toEpochDay());
+            pending.putLong(fineCents);
+            return endRecord(start);
+        }
+    }
+
+    /**
+     * Journals a fine charged outside of a return.
+     *
+     * @param patronId The patron charged
+     * @param cents Amount in cents
+     * @return Sequence number to pass to commit()
+     */
+    public long appendFineCharged(String patronId, long cents) {
+        return appendFine(FINE_CHARGED, patronId, cents);
+    }
+
+    /**
+     * Journals a fine payment. Record the amount taken off the balance rather than the
+     * amount offered: replay applies it without clamping at zero, so fines and payments
+     * journaled on different shards give the same balance in any replay order.
+     *
+     * @param patronId The paying patron
+     * @param cents Amount applied in cents
+     * @return Sequence number to pass to commit()
+     */
+    public long appendFinePaid(String patronId, long cents) {
+        return appendFine(FINE_PAID, patronId, cents);
+    }
+
+    private long appendFine(byte type, String patronId, long cents) {
+        synchronized (lock) {
+            int start = beginRecord(type);
+            putString(patronId);
+            pending.putLong(cents);
+            return endRecord(start);
+        }
+    }
+
+    /**
+     * Makes a record durable according to the journal's commit mode. In sync-commit
+     * mode this blocks until the group commit containing the record has been forced
+     * to disk; otherwise it returns immediately.
+     *
+     * @param sequence Sequence number returned by an append method
+     */
+    public void commit(long sequence) {
+        if (syncCommit) {
+            awaitDurable(sequence);
+        }
+    }
+
+    /**
+     * Like commit(), but for every record appended so far. Lets a caller that appended
+     * several records (or did not keep the sequence numbers) wait once for all of them.
+     */
+    public void commitPending() {
+        if (syncCommit) {
+            long last;
+            synchronized (lock) {
+                last = appendedSequence;
+            }
+            awaitDurable(last);
+        }
+    }
+
+    /**
+     * Blocks until every record up to the given sequence number is on disk.
+     *
+     * @param sequence Sequence number returned by an append method
+     */
+    public void awaitDurable(long sequence) {
+        synchronized (lock) {
+            while (durableSequence < sequence && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for journal commit", e);
+                }
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Journal write failed", failure);
+            }
+        }
+    }
+
+    /**
+     * Returns the offset just past the last record appended, whether or not it has been
+     * written yet. Records appended later all end beyond it.
+     */
+    long getAppendedOffset() {
+        synchronized (lock) {
+            return appendedOffset;
+        }
+    }
+
+    /**
+     * Blocks until the journal is on disk up to an offset, or up to its last appended
+     * record if the offset lies beyond it.
+     *
+     * @param offset An offset returned by getAppendedOffset() or passed to replay
+     * @throws IOException If the journal fails before getting there
+     */
+    void awaitWrittenOffset(long offset) throws IOException {
+        synchronized (lock) {
+            // Everything appended is written eventually, even after close()
+            long target = Math.min(offset, appendedOffset);
+            while (writtenOffset < target && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for journal write", e);
+                }
+            }
+            if (writtenOffset < target) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the journal on disk: the offset just past the last record that
+     * has been written and forced. Only whole records are ever below this offset.
+     */
+    public long getWrittenOffset() {
+        synchronized (lock) {
+            return writtenOffset;
+        }
+    }
+
+    /**
+     * Waits until the journal grows past an offset, the timeout passes or the journal
+     * is closed or fails.
+     *
+     * @param offset The offset already seen
+     * @param timeoutNanos Maximum wait
+     * @return The written offset at return (equal to offset on timeout), or -1 if the
+     *         journal is closed or failed and has nothing past offset
+     * @throws InterruptedException If interrupted while waiting
+     */
+    long awaitWritten(long offset, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        synchronized (lock) {
+            long remaining = timeoutNanos;
+            while (writtenOffset <= offset && !closed && failure == null && remaining > 0) {
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+            if (writtenOffset <= offset && (closed || failure != null)) {
+                return -1;
+            }
+            return writtenOffset;
+        }
+    }
+
+    /**
+     * Reads journal bytes below getWrittenOffset(); safe alongside appends.
+     *
+     * @param target Buffer to fill
+     * @param position File offset to read from
+     * @return Bytes read
+     * @throws IOException If the read fails or the journal is closed
+     */
+    int read(ByteBuffer target, long position) throws IOException {
+        return channel.read(target, position);
+    }
+
+    /**
+     * Flushes all buffered records, stops the flusher and closes the file.
+     *
+     * @throws IOException If the final flush fails
+     */
+    @Override
+    public void close() throws IOException {
+        long last;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            last = appendedSequence;
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        synchronized (lock) {
+            if (failure != null && durableSequence < last) {
+                throw failure;
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            synchronized (lock) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+                ByteBuffer full = pending;
+                pending = writing;
+                writing = full;
+                target = appendedSequence;
+            }
+            int bytes;
+            try {
+                writing.flip();
+                bytes = writing.limit();
+                while (writing.hasRemaining()) {
+                    channel.write(writing);
+                }
+                writing.clear();
+                channel.force(false);
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+            synchronized (lock) {
+                durableSequence = target;
+                writtenOffset += bytes;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private int beginRecord(byte type) {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        // After a failed write nothing more can become durable, so refuse the change
+        // before the caller applies it
+        if (failure != null) {
+            throw new UncheckedIOException("Journal write failed", failure);
+        }
+        ensureCapacity(HEADER_BYTES + 1);
+        int start = pending.position();
+        pending.position(start + HEADER_BYTES);
+        pending.put(type);
+        return start;
+    }
+
+    private long endRecord(int start) {
+        int end = pending.position();
+        int length = end - start - HEADER_BYTES;
+        crc.reset();
+        crc.update(pending.array(), pending.arrayOffset() + start + HEADER_BYTES, length);
+        pending.putInt(start, length);
+        pending.putInt(start + 4, (int) crc.getValue());
+        appendedOffset += HEADER_BYTES + length;
+        appendedSequence++;
+        lock.notifyAll();
+        return appendedSequence;
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            ensureCapacity(2);
+            pending.putShort((short) NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_STRING) {
+            throw new IllegalArgumentException("String too long for journal: " + bytes.length + " bytes");
+        }
+        ensureCapacity(2 + bytes.length + Long.BYTES);
+        pending.putShort((short) bytes.length);
+        pending.put(bytes);
+    }
+
+    private static String getString(ByteBuffer payload) {
+        int length = Short.toUnsignedInt(payload.getShort());
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Grows the pending buffer so that the given number of bytes (plus slack for the
+     * fixed-width fields that follow) fits. Records are small, so doubling is rare.
+     */
+    private void ensureCapacity(int bytes) {
+        int needed = bytes + 2 * Long.BYTES;
+        if (pending.remaining() >= needed) {
+            return;
+        }
+        int capacity = pending.capacity();
+        while (capacity - pending.position() < needed) {
+            capacity *= 2;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        pending.flip();
+        grown.put(pending);
+        pending = grown;
+    }
+}
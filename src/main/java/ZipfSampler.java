@@ -0,0 +1,80 @@
+import java.util.SplittableRandom;
+
+/**
+ * Samples ranks 1..n with probability proportional to 1 / rank^exponent.
+ *
+ * Uses rejection-inversion (Hörmann and Derflinger, 1996), which needs no table and
+ * runs in constant expected time, so a ten-million-title catalog costs nothing to set
+ * up. Instances are immutable; each caller supplies its own random source.
+ */
+final class ZipfSampler {
+    private final int n;
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double s;
+
+    /**
+     * @param n Number of ranks (at least 1)
+     * @param exponent Skew; 0 is uniform, around 1 is typical for library circulation
+     */
+    ZipfSampler(int n, double exponent) {
+        if (n < 1 || exponent < 0) {
+            throw new IllegalArgumentException("n must be >= 1 and exponent >= 0");
+        }
+        this.n = n;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1.0;
+        this.hIntegralN = hIntegral(n + 0.5);
+        this.s = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2.0));
+    }
+
+    /**
+     * Draws one rank.
+     *
+     * @param random Random source of the calling thread
+     * @return A rank between 1 and n
+     */
+    int sample(SplittableRandom random) {
+        while (true) {
+            double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1) {
+                k = 1;
+            } else if (k > n) {
+                k = n;
+            }
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                return k;
+            }
+        }
+    }
+
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return helper2((1.0 - exponent) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = x * (1.0 - exponent);
+        if (t < -1.0) {
+            t = -1.0; // guards against rounding past the domain
+        }
+        return Math.exp(helper1(t) * x);
+    }
+
+    /** log1p(x) / x, accurate near 0. */
+    private static double helper1(double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+    }
+
+    /** expm1(x) / x, accurate near 0. */
+    private static double helper2(double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1.0 + x * 0.5 * (1.0 + x * (1.0 / 3.0) * (1.0 + 0.25 * x));
+    }
+}
@@ -0,0 +1,91 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests normalized ISBN keys and the open-addressing inventory map.
+ */
+public class BookMapTest {
+
+    private BookMap map;
+
+    @BeforeEach
+    public void setUp() {
+        map = new BookMap(0);
+    }
+
+    @Test
+    @DisplayName("ISBN-10, ISBN-13 and hyphenated forms normalize to one key")
+    public void testKeyNormalization() {
+        assertEquals(9780306406157L, IsbnKeys.toKey("978-0-306-40615-7"));
+        assertEquals(9780306406157L, IsbnKeys.toKey("0-306-40615-2"));
+        assertEquals(9780804429573L, IsbnKeys.toKey("080442957X"));
+        assertEquals("0000000000001", IsbnKeys.toIsbn13(1L));
+        assertEquals(IsbnKeys.NO_KEY, IsbnKeys.toKey("P-10001"));
+        assertEquals(IsbnKeys.NO_KEY, IsbnKeys.toKey("97803064061570"));
+        assertEquals(IsbnKeys.NO_KEY, IsbnKeys.toKey(null));
+        // The ISBN-10 check digit is dropped from the key, so a wrong one is rejected
+        assertEquals(IsbnKeys.NO_KEY, IsbnKeys.toKey("0-306-40615-3"));
+        assertEquals(IsbnKeys.NO_KEY, IsbnKeys.toKey("030640615X"));
+    }
+
+    @Test
+    @DisplayName("Lookups find a book under any hyphenation and survive resizing")
+    public void testPutGetAcrossResize() {
+        for (int i = 0; i < 10_000; i++) {
+            map.put(new Book(String.format("978%010d", i), "Title " + i, "Author", Book.BookType.FICTION, 1));
+        }
+        assertEquals(10_000, map.size());
+        assertEquals("Title 1234", map.get("9780000001234").getTitle());
+        assertEquals("Title 1234", map.get("978-0-0000-0123-4").getTitle());
+        assertNull(map.get("9789999999999"));
+
+        Set<String> seen = new HashSet<>();
+        map.asMap().values().forEach(b -> seen.add(b.getIsbn()));
+        assertEquals(10_000, seen.size());
+    }
+
+    @Test
+    @DisplayName("Re-adding an ISBN replaces the book; non-ISBN keys still work")
+    public void testReplaceAndUnkeyed() {
+        Book first = new Book("0-306-40615-2", "First", "Author", Book.BookType.FICTION, 1);
+        Book second = new Book("9780306406157", "Second", "Author", Book.BookType.FICTION, 1);
+        assertNull(map.put(first));
+        assertSame(first, map.put(second));
+        assertEquals(1, map.size());
+
+        Book legacy = new Book("LEGACY-1", "Legacy", "Author", Book.BookType.FICTION, 1);
+        map.put(legacy);
+        assertSame(legacy, map.asMap().get("LEGACY-1"));
+        assertEquals(2, map.asMap().size());
+
+        // An ISBN-10 with a wrong check digit is a different book, not a replacement
+        Book typo = new Book("0-306-40615-3", "Typo", "Author", Book.BookType.FICTION, 1);
+        assertNull(map.put(typo));
+        assertSame(second, map.get("0-306-40615-2"));
+        assertSame(typo, map.get("0-306-40615-3"));
+
+        assertThrows(UnsupportedOperationException.class, () -> map.asMap().put("LEGACY-1", first));
+        assertThrows(UnsupportedOperationException.class, () -> map.asMap().remove("LEGACY-1"));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    @DisplayName("returnBook accepts a different hyphenation than the checkout used")
+    public void testReturnWithOtherHyphenation() {
+        Checkout checkout = new Checkout();
+        Book book = new Book("978-0-306-40615-7", "Book", "Author", Book.BookType.FICTION, 1);
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+        checkout.addBook(book);
+        checkout.checkoutBook(book, patron);
+
+        assertEquals(0.0, checkout.returnBook("9780306406157", patron), 0.001);
+        assertEquals(1, book.getAvailableCopies());
+        assertFalse(patron.hasBookCheckedOut(book.getIsbn()));
+    }
+}
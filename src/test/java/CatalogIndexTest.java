@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests catalog search through Checkout.searchBooks().
+ */
+public class CatalogIndexTest {
+
+    private Checkout checkout;
+
+    @BeforeEach
+    public void setUp() {
+        checkout = new Checkout();
+        checkout.addBook(new Book("9780000000001", "Introduction to Algorithms", "Thomas Cormen",
+                Book.BookType.TEXTBOOK, 2));
+        checkout.addBook(new Book("9780000000002", "The Art of Computer Programming", "Donald Knuth",
+                Book.BookType.REFERENCE, 1));
+        checkout.addBook(new Book("9780000000003", "Programming Pearls", "Jon Bentley",
+                Book.BookType.NONFICTION, 1));
+        checkout.addBook(new Book("9780000000004", "Algorithms, 4th Edition", "Robert Sedgewick",
+                Book.BookType.TEXTBOOK, 1));
+    }
+
+    private List<String> titles(String query, Book.BookType type, boolean onlyAvailable) {
+        return checkout.searchBooks(query, type, onlyAvailable, 10).stream()
+                .map(Book::getTitle).collect(Collectors.toList());
+    }
+
+    @Test
+    @DisplayName("Multi-term and prefix queries match whole words in titles and authors")
+    public void testQueries() {
+        assertEquals(List.of("Introduction to Algorithms", "Algorithms, 4th Edition"),
+                titles("ALGORITHMS", null, false));
+        assertEquals(List.of("Algorithms, 4th Edition"), titles("algorithms sedgewick", null, false));
+        assertEquals(List.of("The Art of Computer Programming", "Programming Pearls"),
+                titles("program*", null, false));
+        assertEquals(List.of("The Art of Computer Programming"), titles("knuth prog* comp*", null, false));
+        assertEquals(List.of(), titles("algorithm", null, false));
+        assertEquals(List.of(), titles("algorithms knuth", null, false));
+        assertEquals(1, checkout.searchBooks("algorithms", null, false, 1).size());
+        assertTrue(checkout.searchBooks("   ", null, false, 10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Type and availability filters, and re-added books are re-indexed")
+    public void testFiltersAndReplace() {
+        assertEquals(List.of("Programming Pearls"), titles("programming", Book.BookType.NONFICTION, false));
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+        assertEquals(0.0, checkout.checkoutBook(checkout.getInventory().get("9780000000003"), patron), 0.001);
+        assertEquals(List.of(), titles("pearls", null, true));
+        assertEquals(List.of("Programming Pearls"), titles("pearls", null, false));
+
+        checkout.addBook(new Book("978-0-00-000000-4", "Algorithms in C", "Robert Sedgewick",
+                Book.BookType.TEXTBOOK, 1));
+        assertEquals(List.of("Introduction to Algorithms", "Algorithms in C"), titles("algorithms", null, false));
+        assertEquals(List.of(), titles("edition", null, false));
+
+        // Books without a type are indexed and only match queries without a type filter
+        checkout.addBook(new Book("9780000000005", "Untyped Algorithms", "Anon", null, 1));
+        assertEquals(List.of("Untyped Algorithms"), titles("untyped", null, false));
+        assertEquals(List.of(), titles("untyped", Book.BookType.FICTION, false));
+    }
+
+    @Test
+    @DisplayName("Re-adding a book under another form of its ISBN leaves one search hit, on either backend")
+    public void testReaddWithOtherHyphenation() {
+        for (Checkout target : List.of(new Checkout(), new Checkout(new OffHeapInventory(0)))) {
+            checkout = target;
+            checkout.addBook(new Book("0-306-40615-2", "Signal Processing", "Oppenheim", Book.BookType.TEXTBOOK, 1));
+            checkout.addBook(new Book("978-0-306-40615-7", "Signal Processing", "Oppenheim",
+                    Book.BookType.TEXTBOOK, 2));
+            checkout.addBook(new Book("9780306406157", "Signal Processing", "Oppenheim", Book.BookType.TEXTBOOK, 3));
+            List<Book> found = checkout.searchBooks("signal", null, false, 10);
+            assertEquals(1, found.size());
+            assertEquals(3, found.get(0).getTotalCopies());
+
+            // ISBNs with no normalized key are still found and replaced by their string
+            checkout.addBook(new Book("LOCAL-1", "Signal Flow", "Mason", Book.BookType.NONFICTION, 1));
+            checkout.addBook(new Book("LOCAL-1", "Signal Flow", "Mason", Book.BookType.NONFICTION, 2));
+            assertEquals(List.of("Signal Processing", "Signal Flow"), titles("signal", null, false));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the batch checkout and return APIs produce the same per-item codes
+ * as the equivalent sequence of single calls.
+ */
+public class CheckoutBatchTest {
+
+    /**
+     * Builds a library whose books cover every per-item outcome: available,
+     * unavailable, reference-only, null and a duplicate (renewal).
+     */
+    private static List<Book> stock(Checkout checkout) {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Book book = new Book("978000000000" + i, "Book " + i, "Author", Book.BookType.FICTION, 1);
+            checkout.addBook(book);
+            books.add(book);
+        }
+        books.get(2).setAvailableCopies(0);
+        Book reference = new Book("9780000000099", "Atlas", "Author", Book.BookType.REFERENCE, 1);
+        checkout.addBook(reference);
+        books.add(3, reference);
+        books.add(4, null);
+        books.add(books.get(0));
+        return books;
+    }
+
+    @Test
+    @DisplayName("Batch checkout codes match sequential checkoutBook calls")
+    public void testBatchMatchesSequential() {
+        Checkout sequential = new Checkout();
+        Patron first = new Patron("P-1", "Kid", "kid@example.com", Patron.PatronType.CHILD);
+        first.setOverdueCount(1);
+        sequential.registerPatron(first);
+        List<Book> sequentialBooks = stock(sequential);
+        double[] expected = new double[sequentialBooks.size()];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = sequential.checkoutBook(sequentialBooks.get(i), first);
+        }
+
+        Checkout batched = new Checkout();
+        Patron second = new Patron("P-1", "Kid", "kid@example.com", Patron.PatronType.CHILD);
+        second.setOverdueCount(1);
+        batched.registerPatron(second);
+        List<Book> batchBooks = stock(batched);
+        double[] actual = batched.checkoutBooks(second, batchBooks.toArray(new Book[0]));
+
+        assertArrayEquals(expected, actual, 0.001);
+        assertTrue(actual[actual.length - 2] == 3.2, "Limit must apply across the batch");
+        assertEquals(0.1, actual[actual.length - 1], 0.001, "Repeated ISBN is a renewal");
+        assertEquals(first.getCheckoutCount(), second.getCheckoutCount());
+    }
+
+    @Test
+    @DisplayName("Ineligible patron gets the eligibility code for every item")
+    public void testIneligiblePatron() {
+        Checkout checkout = new Checkout();
+        Patron patron = new Patron("P-1", "Suspended", "s@example.com", Patron.PatronType.STUDENT);
+        patron.setAccountSuspended(true);
+        List<Book> books = stock(checkout);
+
+        assertArrayEquals(new double[] {3.0, 3.0}, checkout.checkoutBooks(patron, books.get(0), null), 0.001);
+        assertArrayEquals(new double[] {3.1}, checkout.checkoutBooks(null, books.get(0)), 0.001);
+        assertEquals(1, books.get(0).getAvailableCopies());
+    }
+
+    @Test
+    @DisplayName("Batch return closes each loan once")
+    public void testBatchReturn() {
+        Checkout checkout = new Checkout();
+        Patron patron = new Patron("P-1", "Reader", "r@example.com", Patron.PatronType.FACULTY);
+        List<Book> books = stock(checkout);
+        checkout.checkoutBooks(patron, books.get(0), books.get(1));
+
+        double[] fines = checkout.returnBooks(patron, books.get(0).getIsbn(), books.get(1).getIsbn(),
+                books.get(0).getIsbn(), "9789999999999");
+
+        assertArrayEquals(new double[] {0.0, 0.0, -1.0, -1.0}, fines, 0.001);
+        assertEquals(0, patron.getCheckoutCount());
+        assertEquals(1, books.get(0).getAvailableCopies());
+    }
+}
@@ -0,0 +1,187 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that Checkout keeps its return-code contract when checkoutBook and
+ * returnBook are called from many threads at once.
+ */
+public class CheckoutConcurrencyTest {
+
+    private static final int THREADS = 8;
+
+    private Checkout checkout;
+
+    @BeforeEach
+    public void setUp() {
+        checkout = new Checkout();
+    }
+
+    @Test
+    @DisplayName("Racing patrons never check out more copies than exist")
+    public void testNoOversellOfLastCopies() throws Exception {
+        Book book = new Book("9780123456789", "Popular Book", "Author", Book.BookType.FICTION, 3);
+        checkout.addBook(book);
+
+        List<Patron> patrons = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            Patron patron = new Patron("P-" + i, "Patron " + i, "p" + i + "@example.com",
+                    Patron.PatronType.FACULTY);
+            checkout.registerPatron(patron);
+            patrons.add(patron);
+        }
+
+        List<Double> results = runConcurrently(patrons.size(), i -> checkout.checkoutBook(book, patrons.get(i)));
+
+        long successes = results.stream().filter(r -> r == 0.0).count();
+        long unavailable = results.stream().filter(r -> r == 2.0).count();
+        assertEquals(3, successes, "Exactly the available copies should be handed out");
+        assertEquals(patrons.size() - 3, unavailable, "Everyone else should see 2.0");
+        assertEquals(0, book.getAvailableCopies());
+        assertEquals(3, patrons.stream().filter(p -> p.hasBookCheckedOut(book.getIsbn())).count());
+    }
+
+    @Test
+    @DisplayName("Concurrent checkouts by one patron respect the max checkout limit")
+    public void testLimitHoldsForSamePatron() throws Exception {
+        Patron child = new Patron("P-1", "Child", "c@example.com", Patron.PatronType.CHILD);
+        checkout.registerPatron(child);
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Book book = new Book(String.format("97800000000%02d", i), "Book " + i, "Author",
+                    Book.BookType.CHILDREN, 1);
+            checkout.addBook(book);
+            books.add(book);
+        }
+
+        List<Double> results = runConcurrently(books.size(), i -> checkout.checkoutBook(books.get(i), child));
+
+        assertEquals(child.getMaxCheckoutLimit(), child.getCheckoutCount());
+        assertEquals(books.size() - child.getMaxCheckoutLimit(), results.stream().filter(r -> r == 3.2).count());
+        int copiesOut = books.stream().mapToInt(b -> 1 - b.getAvailableCopies()).sum();
+        assertEquals(child.getCheckoutCount(), copiesOut, "Rejected checkouts must not consume copies");
+    }
+
+    @Test
+    @DisplayName("Concurrent checkout and return cycles leave copy counts intact")
+    public void testCheckoutReturnCycles() throws Exception {
+        Book book = new Book("9780123456789", "Shared Book", "Author", Book.BookType.NONFICTION, 2);
+        checkout.addBook(book);
+        List<Patron> patrons = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Patron patron = new Patron("P-" + i, "Patron " + i, "p@example.com", Patron.PatronType.STAFF);
+            checkout.registerPatron(patron);
+            patrons.add(patron);
+        }
+
+        runConcurrently(THREADS, i -> {
+            Patron patron = patrons.get(i);
+            for (int round = 0; round < 500; round++) {
+                double code = checkout.checkoutBook(book, patron);
+                if (code == 0.0) {
+                    assertEquals(0.0, checkout.returnBook(book.getIsbn(), patron), 0.001);
+                } else {
+                    assertEquals(2.0, code, 0.001);
+                }
+            }
+            return 0.0;
+        });
+
+        assertEquals(2, book.getAvailableCopies());
+        patrons.forEach(p -> assertEquals(0, p.getCheckoutCount()));
+    }
+
+    @Test
+    @DisplayName("A returned copy goes to the first eligible hold instead of the shelf")
+    public void testHoldHandoff() {
+        Book book = new Book("9780123456789", "Hot Title", "Author", Book.BookType.FICTION, 1);
+        checkout.addBook(book);
+        Patron owner = new Patron("P-1", "Owner", "o@example.com", Patron.PatronType.STUDENT);
+        Patron first = new Patron("P-2", "First", "f@example.com", Patron.PatronType.STUDENT);
+        Patron second = new Patron("P-3", "Second", "s@example.com", Patron.PatronType.STUDENT);
+        List<String> filled = new ArrayList<>();
+        checkout.setHoldListener((patron, held, dueDate) -> filled.add(patron.getPatronId()));
+
+        assertEquals(0.0, checkout.checkoutBook(book, owner), 0.001);
+        assertEquals(2.0, checkout.checkoutBook(book, first), 0.001);
+        assertEquals(1, checkout.placeHold("978-0-12-345678-9", first));
+        assertEquals(2, checkout.placeHold(book.getIsbn(), second));
+        assertEquals(-1, checkout.placeHold(book.getIsbn(), second));
+        assertEquals(-1, checkout.placeHold(book.getIsbn(), owner));
+
+        assertEquals(0.0, checkout.returnBook(book.getIsbn(), owner), 0.001);
+        assertTrue(first.hasBookCheckedOut(book.getIsbn()));
+        assertEquals(0, book.getAvailableCopies());
+        assertEquals(List.of("P-2"), filled);
+        assertEquals(1, checkout.getHoldCount(book.getIsbn()));
+
+        assertTrue(checkout.cancelHold(book.getIsbn(), second));
+        assertEquals(0.0, checkout.returnBook(book.getIsbn(), first), 0.001);
+        assertEquals(1, book.getAvailableCopies());
+        assertEquals(List.of("P-2"), filled);
+    }
+
+    @Test
+    @DisplayName("Holds racing with checkouts and returns never lose or duplicate a copy")
+    public void testConcurrentHolds() throws Exception {
+        Book book = new Book("9780123456789", "Hot Title", "Author", Book.BookType.FICTION, 2);
+        checkout.addBook(book);
+        List<Patron> patrons = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            patrons.add(new Patron("P-" + i, "Patron " + i, "p@example.com", Patron.PatronType.FACULTY));
+        }
+
+        runConcurrently(THREADS, i -> {
+            Patron patron = patrons.get(i);
+            for (int round = 0; round < 500; round++) {
+                if (patron.hasBookCheckedOut(book.getIsbn())) {
+                    assertEquals(0.0, checkout.returnBook(book.getIsbn(), patron), 0.001);
+                } else if (checkout.checkoutBook(book, patron) == 2.0) {
+                    checkout.placeHold(book.getIsbn(), patron);
+                }
+            }
+            return 0.0;
+        });
+
+        long onLoan = patrons.stream().filter(p -> p.hasBookCheckedOut(book.getIsbn())).count();
+        assertEquals(2, onLoan + book.getAvailableCopies());
+    }
+
+    private interface Task {
+        double run(int index) throws Exception;
+    }
+
+    private static List<Double> runConcurrently(int tasks, Task task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Double>> futures = new ArrayList<>();
+            for (int i = 0; i < tasks; i++) {
+                final int index = i;
+                Callable<Double> call = () -> {
+                    start.await();
+                    return task.run(index);
+                };
+                futures.add(pool.submit(call));
+            }
+            start.countDown();
+            List<Double> results = new ArrayList<>();
+            for (Future<Double> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests result-code counters, latency histograms and the JMX/periodic views.
+ */
+public class CheckoutMetricsTest {
+
+    private Checkout checkout;
+    private CheckoutMetrics metrics;
+    private Book book;
+    private Patron patron;
+
+    @BeforeEach
+    public void setUp() {
+        checkout = new Checkout();
+        metrics = new CheckoutMetrics();
+        checkout.setMetrics(metrics);
+        book = new Book("9780306406157", "Book", "Author", Book.BookType.FICTION, 1);
+        checkout.addBook(book);
+        patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+        checkout.registerPatron(patron);
+    }
+
+    @Test
+    @DisplayName("Every checkout and return outcome is counted and timed")
+    public void testCountsAndLatency() {
+        Patron other = new Patron("P-2", "Bob", "bob@example.com", Patron.PatronType.STUDENT);
+        checkout.checkoutBook(book, patron);                 // 0.0
+        checkout.checkoutBook(book, patron);                 // 0.1 renewal
+        checkout.checkoutBook(book, other);                  // 2.0
+        checkout.checkoutBook(null, patron);                 // 2.1
+        checkout.checkoutBook(book, null);                   // 3.1
+        checkout.checkoutBooks(other, book, null);           // 2.0, 2.1
+        checkout.returnBook("9780306406157", patron);
+        checkout.returnBooks(patron, "9780306406157");
+
+        CheckoutMetrics.Snapshot snapshot = metrics.snapshot();
+        Map<String, Long> codes = snapshot.getCheckoutResults();
+        assertEquals(1, codes.get("0.0").longValue());
+        assertEquals(1, codes.get("0.1").longValue());
+        assertEquals(2, codes.get("2.0").longValue());
+        assertEquals(2, codes.get("2.1").longValue());
+        assertEquals(1, codes.get("3.1").longValue());
+        assertEquals(0, codes.get("other").longValue());
+        assertEquals(1, snapshot.getReturnResults().get("returned").longValue());
+        assertEquals(1, snapshot.getReturnResults().get("notFound").longValue());
+
+        assertEquals(5, snapshot.getCheckoutLatency().getCount(), "Batch calls are counted but not timed");
+        assertEquals(1, snapshot.getReturnLatency().getCount());
+        assertTrue(snapshot.getCheckoutLatency().getValueAtPercentile(99) > 0);
+    }
+
+    @Test
+    @DisplayName("Histogram percentiles stay within the bucket precision")
+    public void testHistogramPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100_000; i++) {
+            histogram.record(i * 10L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100_000, snapshot.getCount());
+        assertEquals(1_000_000, snapshot.getMax());
+        assertEquals(500_000, snapshot.getValueAtPercentile(50), 500_000 * 0.04);
+        assertEquals(990_000, snapshot.getValueAtPercentile(99), 990_000 * 0.04);
+        assertEquals(1_000_000, snapshot.getValueAtPercentile(100));
+        assertEquals(0, new LatencyHistogram().snapshot().getValueAtPercentile(99));
+
+        for (long v : new long[] {0, 1, 31, 32, 33, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(v);
+            assertTrue(LatencyHistogram.highestValueIn(bucket) >= v, "bucket upper bound for " + v);
+            assertTrue(bucket == 0 || LatencyHistogram.highestValueIn(bucket - 1) < v, "bucket lower bound for " + v);
+        }
+    }
+
+    @Test
+    @DisplayName("Metrics are visible over JMX and delivered periodically")
+    public void testJmxAndPeriodicSnapshots() throws Exception {
+        checkout.checkoutBook(book, patron);
+        ObjectName name = metrics.registerMBean("test-" + System.nanoTime());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertTrue(server.isRegistered(name));
+            assertTrue((Long) server.getAttribute(name, "CheckoutLatencyP99") > 0);
+        } finally {
+            server.unregisterMBean(name);
+        }
+
+        BlockingQueue<CheckoutMetrics.Snapshot> received = new ArrayBlockingQueue<>(16);
+        ScheduledFuture<?> publication = metrics.publishEvery(Duration.ofMillis(10), received::offer);
+        CheckoutMetrics.Snapshot first = received.poll(5, TimeUnit.SECONDS);
+        publication.cancel(false);
+        assertNotNull(first);
+        assertEquals(1, first.getCheckoutResults().get("0.0").longValue());
+    }
+}
@@ -0,0 +1,86 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the HTTP endpoints of CheckoutServer against a real socket.
+ */
+public class CheckoutServerTest {
+
+    private Checkout checkout;
+    private CheckoutServer server;
+    private HttpClient client;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        checkout = new Checkout();
+        checkout.addBook(new Book("978-0-306-40615-7", "Book", "Author", Book.BookType.FICTION, 1));
+        checkout.registerPatron(new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT));
+        server = new CheckoutServer(checkout, new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    private HttpResponse<String> send(String method, String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path))
+                .method(method, HttpRequest.BodyPublishers.noBody()).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    @DisplayName("Checkout, renew, count and return round-trip over HTTP")
+    public void testCirculation() throws Exception {
+        HttpResponse<String> response = send("POST", "/checkout?patron=P-1&isbn=9780306406157");
+        assertEquals(200, response.statusCode());
+        assertEquals("{\"code\":0.0}", response.body());
+        assertEquals("{\"code\":0.1}", send("POST", "/renew?patron=P-1&isbn=978-0-306-40615-7").body());
+        assertEquals("{\"count\":0}", send("GET", "/inventory/count?type=FICTION&available=true").body());
+        assertEquals("{\"count\":1}", send("GET", "/inventory/count?type=FICTION").body());
+        assertEquals("{\"fine\":0.00}", send("POST", "/return?patron=P-1&isbn=9780306406157").body());
+        assertEquals(404, send("POST", "/renew?patron=P-1&isbn=9780306406157").statusCode());
+        assertEquals(404, send("POST", "/return?patron=P-1&isbn=9780306406157").statusCode());
+    }
+
+    @Test
+    @DisplayName("Fine lookup and request errors")
+    public void testFinesAndErrors() throws Exception {
+        checkout.chargeFine(checkout.getPatrons().get("P-1"), 2.5);
+        assertEquals("{\"patron\":\"P-1\",\"balanceCents\":250}", send("GET", "/fines?patron=P-1").body());
+        assertEquals(404, send("GET", "/fines?patron=P-9").statusCode());
+        assertEquals(400, send("GET", "/fines").statusCode());
+        assertEquals(400, send("GET", "/inventory/count?type=POETRY").statusCode());
+        assertEquals(405, send("GET", "/checkout?patron=P-1&isbn=9780306406157").statusCode());
+        assertTrue(send("POST", "/checkout?patron=P-1&isbn=123").body().startsWith("{\"error\":"));
+    }
+
+    @Test
+    @DisplayName("A failure inside the checkout is answered with a 500 error body")
+    public void testInternalError() throws Exception {
+        TransactionJournal journal = TransactionJournal.open(dir.resolve("closed.journal"), true);
+        checkout.setJournal(journal);
+        journal.close();
+        HttpResponse<String> response = send("POST", "/checkout?patron=P-1&isbn=9780306406157");
+        assertEquals(500, response.statusCode());
+        assertEquals("{\"error\":\"Journal is closed\"}", response.body());
+        assertEquals("{\"count\":1}", send("GET", "/inventory/count?type=FICTION&available=true").body());
+    }
+}
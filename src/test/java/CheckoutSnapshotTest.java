@@ -0,0 +1,135 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests binary snapshot and restore of the full Checkout state.
+ */
+public class CheckoutSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("Snapshot round trip keeps inventory, patron state and open loans")
+    public void testRoundTrip() throws Exception {
+        Checkout checkout = new Checkout();
+        Book novel = new Book("9780123456789", "Novel", "Author", Book.BookType.FICTION, 3);
+        Book atlas = new Book("0123456789", "Atlas", null, Book.BookType.REFERENCE, 1);
+        checkout.addBook(novel);
+        checkout.addBook(atlas);
+        checkout.addBook(new Book("LOCAL-7", "Pamphlet", "Author", null, 1));
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.FACULTY);
+        patron.setOverdueCount(2);
+        patron.addFine(3.75);
+        checkout.registerPatron(patron);
+        checkout.registerPatron(new Patron("P-2", "Bob", "bob@example.com", Patron.PatronType.CHILD));
+        assertEquals(1.0, checkout.checkoutBook(novel, patron), 0.001);
+
+        Path file = dir.resolve("checkout.snapshot");
+        CheckoutSnapshot.write(checkout, file);
+        Checkout restored = CheckoutSnapshot.read(file);
+
+        assertEquals(3, restored.getInventory().size());
+        assertNull(restored.getInventory().get("LOCAL-7").getType());
+        assertEquals(2, restored.getInventory().get("9780123456789").getAvailableCopies());
+        assertNull(restored.getInventory().get("0123456789").getAuthor());
+        assertTrue(restored.getInventory().get("0123456789").isReferenceOnly());
+
+        Patron copy = restored.getPatrons().get("P-1");
+        assertEquals(Patron.PatronType.FACULTY, copy.getType());
+        assertEquals(2, copy.getOverdueCount());
+        assertEquals(3.75, copy.getFineBalance(), 0.001);
+        assertEquals(LocalDate.now().plusDays(60), copy.getCheckedOutBooks().get("9780123456789"));
+        assertEquals(2, restored.getPatrons().size());
+
+        // The restored open loan can be returned like any other
+        assertEquals(0.0, restored.returnBook("9780123456789", copy), 0.001);
+        assertEquals(3, restored.getInventory().get("9780123456789").getAvailableCopies());
+        assertEquals(0, copy.getCheckoutCount());
+    }
+
+    @Test
+    @DisplayName("A snapshot taken during concurrent checkouts restores consistent copies and loans")
+    public void testSnapshotDuringCheckouts() throws Exception {
+        Checkout checkout = new Checkout();
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Book book = new Book(IsbnKeys.toIsbn13(9_780_000_000_000L + i), "Title " + i, "Author",
+                    Book.BookType.FICTION, 2);
+            books.add(book);
+            checkout.addBook(book);
+        }
+        List<Patron> patrons = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Patron patron = new Patron("P-" + i, "Patron " + i, "p" + i + "@example.com",
+                    Patron.PatronType.FACULTY);
+            patrons.add(patron);
+            checkout.registerPatron(patron);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> workers = new ArrayList<>();
+        for (Patron patron : patrons) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    Book book = books.get(random.nextInt(books.size()));
+                    if (patron.hasBookCheckedOut(book.getIsbn())) {
+                        checkout.returnBook(book.getIsbn(), patron);
+                    } else {
+                        checkout.checkoutBook(book, patron);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        try {
+            for (int round = 0; round < 5; round++) {
+                Path file = dir.resolve("checkout-" + round + ".snapshot");
+                CheckoutSnapshot.write(checkout, file);
+                Checkout restored = CheckoutSnapshot.read(file);
+
+                Map<String, Integer> loans = new HashMap<>();
+                for (Patron patron : restored.getPatrons().values()) {
+                    assertEquals(patron.getCheckedOutBooks().size(), patron.getCheckoutCount());
+                    for (String isbn : patron.getCheckedOutBooks().keySet()) {
+                        loans.merge(isbn, 1, Integer::sum);
+                    }
+                }
+                for (Book book : restored.getInventory().values()) {
+                    assertEquals(book.getTotalCopies() - loans.getOrDefault(book.getIsbn(), 0),
+                            book.getAvailableCopies(), book.getIsbn());
+                    assertTrue(book.getAvailableCopies() >= 0, book.getIsbn());
+                }
+                // Every restored loan is an open transaction that can be returned
+                for (Patron patron : restored.getPatrons().values()) {
+                    for (String isbn : new ArrayList<>(patron.getCheckedOutBooks().keySet())) {
+                        assertEquals(0.0, restored.returnBook(isbn, patron), 0.001);
+                    }
+                    assertEquals(0, patron.getCheckoutCount());
+                }
+                for (Book book : restored.getInventory().values()) {
+                    assertEquals(book.getTotalCopies(), book.getAvailableCopies());
+                }
+            }
+        } finally {
+            running.set(false);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+    }
+}
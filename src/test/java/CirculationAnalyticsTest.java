@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests circulation reports over archived and open loans.
+ */
+public class CirculationAnalyticsTest {
+    private static final String FICTION = "9780306406157";
+    private static final String TEXTBOOK = "9780000000002";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("Report counts archived and open loans by ISBN and type")
+    public void testReport() throws Exception {
+        Checkout checkout = new Checkout();
+        checkout.addBook(new Book(FICTION, "Novel", "Author", Book.BookType.FICTION, 2));
+        checkout.addBook(new Book(TEXTBOOK, "Text", "Author", Book.BookType.TEXTBOOK, 1));
+        checkout.registerPatron(new Patron("S", "Student", "s@example.com", Patron.PatronType.STUDENT));
+        checkout.registerPatron(new Patron("F", "Faculty", "f@example.com", Patron.PatronType.FACULTY));
+        LocalDate day0 = LocalDate.now().minusDays(100);
+
+        try (TransactionArchive archive = TransactionArchive.open(dir, 2);
+                CirculationAnalytics analytics = new CirculationAnalytics(checkout, archive, 2)) {
+            checkout.setArchive(archive);
+            // Student: 10-day loan on time, 30-day loan 10 days late
+            checkout.replayCheckout("S", FICTION, day0, day0.plusDays(20));
+            checkout.replayReturn("S", FICTION, day0.plusDays(10), 0);
+            checkout.replayCheckout("S", FICTION, day0.plusDays(20), day0.plusDays(40));
+            checkout.replayReturn("S", FICTION, day0.plusDays(50), 250);
+            // Faculty: 20-day loan on time, then one still open and long past due
+            checkout.replayCheckout("F", "0-306-40615-2", day0, day0.plusDays(60));
+            checkout.replayReturn("F", FICTION, day0.plusDays(20), 0);
+            checkout.replayCheckout("F", TEXTBOOK, day0.plusDays(30), day0.plusDays(40));
+            // Outside the range below
+            checkout.replayCheckout("S", TEXTBOOK, day0.minusDays(50), day0.minusDays(40));
+            checkout.replayReturn("S", TEXTBOOK, day0.minusDays(45), 0);
+
+            CirculationAnalytics.Report report = analytics.report(day0, day0.plusDays(99), 1);
+            assertEquals(4, report.getLoanCount());
+            assertEquals(Map.of(FICTION, 3L), report.getMostBorrowed());
+            assertEquals(20.0, report.getAverageLoanDays(Patron.PatronType.STUDENT), 0.001);
+            assertEquals(20.0, report.getAverageLoanDays(Patron.PatronType.FACULTY), 0.001);
+            assertTrue(Double.isNaN(report.getAverageLoanDays(Patron.PatronType.CHILD)));
+            assertEquals(0.5, report.getOverdueRate(Patron.PatronType.STUDENT), 0.001);
+            assertEquals(0.5, report.getOverdueRate(Patron.PatronType.FACULTY), 0.001);
+            assertEquals(0.5, report.getOverdueRate(), 0.001);
+            // Fiction: 10 + 30 + 20 loan days over 2 copies x 100 days; textbook open 70 days of 100
+            assertEquals(60 / 200.0, report.getUtilization(Book.BookType.FICTION), 0.001);
+            assertEquals(70 / 100.0, report.getUtilization(Book.BookType.TEXTBOOK), 0.001);
+            assertEquals(0.0, report.getUtilization(Book.BookType.CHILDREN), 0.001);
+            assertTrue(report.toString().contains(FICTION));
+
+            Map<String, Long> both = analytics.report(day0.minusDays(60), day0.plusDays(99), 5).getMostBorrowed();
+            assertEquals(List.of(FICTION, TEXTBOOK), List.copyOf(both.keySet()));
+            assertEquals(Long.valueOf(2), both.get(TEXTBOOK));
+        }
+    }
+
+    @Test
+    @DisplayName("Loans of a book without a type count as loans but toward no type's utilization")
+    public void testUntypedBook() throws Exception {
+        Checkout checkout = new Checkout();
+        checkout.addBook(new Book(FICTION, "Novel", "Author", Book.BookType.FICTION, 1));
+        checkout.addBook(new Book(TEXTBOOK, "Pamphlet", "Author", null, 1));
+        checkout.registerPatron(new Patron("S", "Student", "s@example.com", Patron.PatronType.STUDENT));
+        LocalDate day0 = LocalDate.now().minusDays(10);
+
+        try (TransactionArchive archive = TransactionArchive.open(dir, 2);
+                CirculationAnalytics analytics = new CirculationAnalytics(checkout, archive, 2)) {
+            checkout.setArchive(archive);
+            checkout.replayCheckout("S", TEXTBOOK, day0, day0.plusDays(14));
+            checkout.replayReturn("S", TEXTBOOK, day0.plusDays(5), 0);
+            checkout.replayCheckout("S", TEXTBOOK, day0.plusDays(6), day0.plusDays(20));
+
+            CirculationAnalytics.Report report = analytics.report(day0, day0.plusDays(9), 1);
+            assertEquals(2, report.getLoanCount());
+            assertEquals(Map.of(TEXTBOOK, 2L), report.getMostBorrowed());
+            assertEquals(0.0, report.getUtilization(Book.BookType.FICTION), 0.001);
+            assertEquals(0.0, report.getUtilization(Book.BookType.TEXTBOOK), 0.001);
+        }
+    }
+
+    @Test
+    @DisplayName("Open loans are overdue in a report exactly when the checkout's overdue clock says so")
+    public void testOverdueClock() throws Exception {
+        Checkout checkout = new Checkout();
+        checkout.addBook(new Book(FICTION, "Novel", "Author", Book.BookType.FICTION, 1));
+        Patron patron = new Patron("S", "Student", "s@example.com", Patron.PatronType.STUDENT);
+        checkout.registerPatron(patron);
+        LocalDate today = LocalDate.now();
+        checkout.replayCheckout("S", FICTION, today.minusDays(10), today.plusDays(5));
+
+        try (CirculationAnalytics analytics = new CirculationAnalytics(checkout, null, 2)) {
+            LocalDate from = today.minusDays(20);
+            assertEquals(0.0, analytics.report(from, today, 1).getOverdueRate(), 0.001);
+            assertEquals(0, patron.getOverdueCount());
+
+            checkout.advanceOverdueClock(today.plusDays(10));
+            assertEquals(1, patron.getOverdueCount());
+            assertEquals(1.0, analytics.report(from, today, 1).getOverdueRate(), 0.001);
+            assertEquals(0.0, analytics.report(from, today, today, 1).getOverdueRate(), 0.001);
+        }
+    }
+}
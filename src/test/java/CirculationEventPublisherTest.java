@@ -0,0 +1,166 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests circulation events published by Checkout.
+ */
+public class CirculationEventPublisherTest {
+
+    /**
+     * Collects every event, requesting one batch at a time, and can be held back.
+     */
+    private static final class Collector implements Flow.Subscriber<List<CirculationEvent>> {
+        final List<CirculationEvent> events = new ArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        final CountDownLatch release;
+        private Flow.Subscription subscription;
+
+        Collector(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+            s.request(1);
+        }
+
+        @Override
+        public void onNext(List<CirculationEvent> batch) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (events) {
+                events.addAll(batch);
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+
+    @Test
+    @DisplayName("Checkout, return, fine and availability changes arrive in order")
+    public void testEventStream() throws Exception {
+        Checkout checkout = new Checkout();
+        CirculationEventPublisher publisher = new CirculationEventPublisher();
+        Collector collector = new Collector(new CountDownLatch(0));
+        publisher.subscribe(collector);
+        checkout.setEventPublisher(publisher);
+
+        Book book = new Book("9780306406157", "Book", "Author", Book.BookType.FICTION, 1);
+        checkout.addBook(book);
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+        checkout.checkoutBook(book, patron);
+        checkout.checkoutBook(book, patron);
+        checkout.returnBook(book.getIsbn(), patron);
+        checkout.chargeFine(patron, 3.0);
+        checkout.payFine(patron, 5.0);
+        publisher.close();
+        assertTrue(collector.completed.await(5, TimeUnit.SECONDS));
+
+        List<String> seen = new ArrayList<>();
+        long sequence = 0;
+        for (CirculationEvent event : collector.events) {
+            assertEquals(++sequence, event.getSequence());
+            seen.add(event.getType() + (event.getType() == CirculationEvent.Type.AVAILABILITY_CHANGED
+                    ? ":" + event.isAvailable() : ""));
+        }
+        assertEquals(List.of("AVAILABILITY_CHANGED:false", "CHECKOUT", "RENEWAL", "RETURN",
+                "AVAILABILITY_CHANGED:true", "FINE_CHARGED", "FINE_PAID"), seen);
+        assertEquals(300, collector.events.get(6).getCents());
+        assertEquals("P-1", collector.events.get(1).getPatronId());
+        assertEquals(0, publisher.getDroppedCount());
+    }
+
+    @Test
+    @DisplayName("A stalled subscriber never blocks checkouts; overflow is dropped and shows as a gap")
+    public void testSlowSubscriber() throws Exception {
+        Checkout checkout = new Checkout();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CirculationEventPublisher publisher = new CirculationEventPublisher(100, 10, executor, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        Collector collector = new Collector(release);
+        publisher.subscribe(collector);
+        checkout.setEventPublisher(publisher);
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5_000; i++) {
+            checkout.chargeFine(patron, 0.01);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(publisher.getDroppedCount() > 0);
+
+        release.countDown();
+        publisher.close();
+        assertTrue(collector.completed.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(5_000, collector.events.size() + publisher.getDroppedCount());
+        CirculationEvent last = collector.events.get(collector.events.size() - 1);
+        assertTrue(last.getSequence() > collector.events.size());
+    }
+
+    @Test
+    @DisplayName("Closing does not hang on a subscriber that never requests; its undelivered batches are dropped")
+    public void testCloseWithSilentSubscriber() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CirculationEventPublisher publisher = new CirculationEventPublisher(1_000, 10, executor, 1);
+        CountDownLatch subscribed = new CountDownLatch(1);
+        publisher.subscribe(new Flow.Subscriber<List<CirculationEvent>>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscribed.countDown(); // and never requests anything
+            }
+
+            @Override
+            public void onNext(List<CirculationEvent> batch) {
+                fail("Nothing was requested");
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+        Checkout checkout = new Checkout();
+        checkout.setEventPublisher(publisher);
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+        for (int i = 0; i < 100; i++) {
+            checkout.chargeFine(patron, 0.01);
+        }
+
+        Thread closer = new Thread(() -> publisher.close(100, TimeUnit.MILLISECONDS));
+        closer.start();
+        closer.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(closer.isAlive(), "close() returned");
+        executor.shutdown();
+        // One batch (of up to 10 events) fits the subscriber's buffer; the rest were dropped for it
+        long dropped = publisher.getDroppedCount();
+        assertTrue(dropped >= 90 && dropped < 100, "dropped " + dropped);
+    }
+}
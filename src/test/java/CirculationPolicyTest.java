@@ -0,0 +1,98 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests loading, validating and swapping the circulation policy.
+ */
+public class CirculationPolicyTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("The default policy caps fines at Checkout.MAX_FINE_AMOUNT and charges untyped books the base rate")
+    public void testDefaultPolicy() {
+        CirculationPolicy policy = CirculationPolicy.DEFAULT;
+        assertEquals(FineLedger.toCents(Checkout.MAX_FINE_AMOUNT), policy.getMaxFineCents());
+        assertEquals(policy.getMaxFineCents(), policy.fineCents(365, Book.BookType.TEXTBOOK));
+        assertEquals(125, policy.fineCents(5, null));
+        assertEquals(0, policy.fineCents(0, Book.BookType.FICTION));
+        assertEquals(10, policy.getMaxCheckouts(Patron.PatronType.STUDENT));
+        assertEquals(60, policy.getLoanDays(Patron.PatronType.FACULTY));
+    }
+
+    @Test
+    @DisplayName("A policy set on one checkout changes its limits, loan periods and fines until cleared")
+    public void testPolicySwap() throws Exception {
+        Checkout checkout = new Checkout();
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+        checkout.registerPatron(patron);
+        Checkout other = new Checkout();
+        Patron otherPatron = new Patron("P-2", "Bob", "bob@example.com", Patron.PatronType.STUDENT);
+        other.registerPatron(otherPatron);
+        Path file = dir.resolve("policy.properties");
+        Files.writeString(file, "limit.STUDENT=2\nloanDays.student=7\nfine.tiers=1:0.10,4:1.00\n"
+                + "fine.multiplier.TEXTBOOK=1.5\nfine.max=5.00\n");
+        assertNull(checkout.setPolicy(CirculationPolicy.load(file)));
+        assertEquals(2, patron.getMaxCheckoutLimit());
+        assertEquals(7, patron.getLoanPeriodDays());
+        // 3 days at $0.10, then 2 at $1.00
+        assertEquals(230, checkout.calculateFineCents(5, Book.BookType.FICTION));
+        assertEquals(345, checkout.calculateFineCents(5, Book.BookType.TEXTBOOK));
+        assertEquals(500, checkout.calculateFineCents(30, Book.BookType.FICTION));
+
+        // Other checkouts, their patrons and the global default are untouched
+        assertEquals(10, otherPatron.getMaxCheckoutLimit());
+        assertEquals(125, other.calculateFineCents(5, Book.BookType.FICTION));
+        assertSame(CirculationPolicy.DEFAULT, CirculationPolicy.current());
+
+        assertNotNull(checkout.setPolicy(null));
+        assertEquals(10, patron.getMaxCheckoutLimit());
+        assertEquals(125, checkout.calculateFineCents(5, Book.BookType.FICTION));
+
+        Files.writeString(file, "fine.tiers=2:0.10\n");
+        assertThrows(IllegalArgumentException.class, () -> CirculationPolicy.load(file));
+    }
+
+    @Test
+    @DisplayName("Checkouts without a policy of their own follow the global default")
+    public void testGlobalDefault() {
+        Checkout checkout = new Checkout();
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+        checkout.registerPatron(patron);
+        Properties properties = new Properties();
+        properties.setProperty("limit.STUDENT", "4");
+        CirculationPolicy previous = CirculationPolicy.install(CirculationPolicy.fromProperties(properties));
+        try {
+            assertEquals(4, patron.getMaxCheckoutLimit());
+            assertEquals(4, new Patron("P-2", "Bob", "bob@example.com", Patron.PatronType.STUDENT)
+                    .getMaxCheckoutLimit());
+            checkout.setPolicy(CirculationPolicy.DEFAULT);
+            assertEquals(10, patron.getMaxCheckoutLimit());
+        } finally {
+            CirculationPolicy.install(previous);
+        }
+    }
+
+    @Test
+    @DisplayName("Unknown keys and out-of-range values are rejected")
+    public void testInvalidProperties() {
+        for (String[] entry : new String[][] {{"limit.WIZARD", "3"}, {"limit.STUDENT", "0"}, {"loanDays.CHILD", "x"},
+                {"fine.max", "-1"}, {"fine.multiplier.FICTION", "-0.5"}, {"fine.tiers", "1:0.25,1:0.50"},
+                {"fine.tiers", "1"}, {"colour", "blue"}}) {
+            Properties properties = new Properties();
+            properties.setProperty(entry[0], entry[1]);
+            assertThrows(IllegalArgumentException.class, () -> CirculationPolicy.fromProperties(properties),
+                    entry[0] + "=" + entry[1]);
+        }
+        Properties empty = new Properties();
+        assertEquals(CirculationPolicy.DEFAULT.toString(), CirculationPolicy.fromProperties(empty).toString());
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests fines in integer cents, per-patron ledgers and the outstanding total.
+ */
+public class FineLedgerTest {
+
+    private Checkout checkout;
+    private Patron patron;
+
+    @BeforeEach
+    public void setUp() {
+        checkout = new Checkout();
+        patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+        checkout.registerPatron(patron);
+    }
+
+    @Test
+    @DisplayName("Repeated small charges and payments do not drift")
+    public void testNoRoundingDrift() {
+        for (int i = 0; i < 10; i++) {
+            checkout.chargeFine(patron, 0.10);
+        }
+        assertEquals(100, patron.getFineBalanceCents());
+        assertEquals(1.0, patron.getFineBalance());
+        assertEquals(0.3, checkout.payFine(patron, 0.70));
+        assertEquals(30, checkout.getFineLedger().getOutstandingCents());
+    }
+
+    @Test
+    @DisplayName("calculateFineCents follows the fine tiers, type multiplier and cap")
+    public void testFineInCents() {
+        assertEquals(125, checkout.calculateFineCents(5, Book.BookType.FICTION));
+        assertEquals(325, checkout.calculateFineCents(10, Book.BookType.NONFICTION));
+        assertEquals(2250, checkout.calculateFineCents(20, Book.BookType.TEXTBOOK));
+        assertEquals(2500, checkout.calculateFineCents(50, Book.BookType.FICTION));
+        assertEquals(0, checkout.calculateFineCents(0, Book.BookType.FICTION));
+        assertEquals(22.5, checkout.calculateFine(20, Book.BookType.TEXTBOOK));
+    }
+
+    @Test
+    @DisplayName("The patron ledger records charges, capped payments and waivers, but no empty payments")
+    public void testPatronHistory() {
+        patron.payFine(1.00);
+        patron.addFine(4.00);
+        patron.payFine(5.00);
+        patron.payFine(0.00);
+        checkout.payFine(patron, 2.00);
+        patron.addFine(1.25);
+        patron.resetFines();
+
+        List<FineLedger.Entry> history = patron.getFineHistory();
+        assertEquals(4, history.size());
+        assertEquals(FineLedger.Kind.CHARGE, history.get(0).getKind());
+        assertEquals(FineLedger.Kind.PAYMENT, history.get(1).getKind());
+        assertEquals(400, history.get(1).getCents(), "Only the balance can be paid off");
+        assertEquals(0, history.get(1).getBalanceCents());
+        assertEquals(FineLedger.Kind.WAIVER, history.get(3).getKind());
+        assertEquals(125, history.get(3).getCents());
+        assertEquals(0, checkout.getFineLedger().getOutstandingCents());
+    }
+
+    @Test
+    @DisplayName("The outstanding total follows registration and concurrent updates")
+    public void testOutstandingTotal() {
+        Patron other = new Patron("P-2", "Bob", "bob@example.com", Patron.PatronType.FACULTY);
+        other.addFine(2.00);
+        checkout.registerPatron(other);
+        checkout.registerPatron(other);
+        assertEquals(200, checkout.getFineLedger().getOutstandingCents());
+
+        IntStream.range(0, 10_000).parallel().forEach(i -> {
+            Patron p = i % 2 == 0 ? patron : other;
+            checkout.chargeFine(p, 0.05);
+            if (i % 4 == 0) {
+                checkout.payFine(p, 0.05);
+            }
+        });
+        assertEquals(patron.getFineBalanceCents() + other.getFineBalanceCents(),
+                checkout.getFineLedger().getOutstandingCents());
+        assertEquals(200 + 7_500 * 5, checkout.getFineLedger().getOutstandingCents());
+
+        // Replacing a patron under the same ID removes the old balance
+        checkout.registerPatron(new Patron("P-2", "Bob", "bob@example.com", Patron.PatronType.FACULTY));
+        assertEquals(patron.getFineBalanceCents(), checkout.getFineLedger().getOutstandingCents());
+    }
+}
@@ -0,0 +1,64 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the per-type title counters behind Checkout.countBooksByType.
+ */
+public class InventoryCountersTest {
+
+    private Checkout checkout;
+
+    @BeforeEach
+    public void setUp() {
+        checkout = new Checkout();
+    }
+
+    @Test
+    @DisplayName("Counters follow checkouts, returns and replacements")
+    public void testCountsTrackAvailability() {
+        Book book = new Book("9780000000001", "Novel", "Author", Book.BookType.FICTION, 1);
+        Book other = new Book("9780000000002", "Other", "Author", Book.BookType.FICTION, 2);
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+        checkout.addBook(book);
+        checkout.addBook(other);
+        assertEquals(2, checkout.countBooksByType(Book.BookType.FICTION, true));
+
+        // Last copy out -> title no longer available
+        checkout.checkoutBook(book, patron);
+        assertEquals(1, checkout.countBooksByType(Book.BookType.FICTION, true));
+        assertEquals(2, checkout.countBooksByType(Book.BookType.FICTION, false));
+
+        checkout.returnBook(book.getIsbn(), patron);
+        assertEquals(2, checkout.countBooksByType(Book.BookType.FICTION, true));
+
+        other.setAvailableCopies(0);
+        assertEquals(1, checkout.countBooksByType(Book.BookType.FICTION, true));
+
+        // Re-adding an ISBN replaces the title instead of counting it twice
+        checkout.addBook(new Book("9780000000002", "Other", "Author", Book.BookType.NONFICTION, 1));
+        assertEquals(1, checkout.countBooksByType(Book.BookType.FICTION, false));
+        assertEquals(1, checkout.countBooksByType(Book.BookType.NONFICTION, true));
+        assertEquals(0, checkout.countBooksByType(Book.BookType.REFERENCE, false));
+    }
+
+    @Test
+    @DisplayName("A book is counted by one inventory only, and re-adding it counts it once")
+    public void testBookInTwoInventories() {
+        Book book = new Book("9780000000001", "Novel", "Author", Book.BookType.FICTION, 1);
+        checkout.addBook(book);
+        checkout.addBook(book);
+        assertEquals(1, checkout.countBooksByType(Book.BookType.FICTION, true));
+
+        Checkout second = new Checkout();
+        assertThrows(IllegalStateException.class, () -> second.addBook(book));
+        assertNull(second.getInventory().get("9780000000001"));
+        assertEquals(0, second.countBooksByType(Book.BookType.FICTION, false));
+
+        book.setAvailableCopies(0);
+        assertEquals(0, checkout.countBooksByType(Book.BookType.FICTION, true));
+        assertEquals(1, checkout.countBooksByType(Book.BookType.FICTION, false));
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the single-pass ISBN validator in format-only and check-digit modes.
+ */
+public class IsbnValidatorTest {
+
+    /**
+     * The original regex-based rules of Checkout.isValidISBN, kept as the oracle for
+     * format-only mode.
+     */
+    private static boolean referenceFormat(String isbn) {
+        if (isbn == null || isbn.isEmpty()) {
+            return false;
+        }
+        String numbers = isbn.replace("-", "");
+        if (!numbers.matches("\\d+")) {
+            return false;
+        }
+        return numbers.length() == 10 || numbers.length() == 13;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0123456789", "9780123456789", "978-0-1234-5678-9", "123456789X", "978-INVALID",
+        "", "-", "----------", "12345", "01234567890", "97801234567890", "0-1-2-3-4-5-6-7-8-9", "012345678 9",
+        "٠١٢٣٤٥٦٧٨٩", "-0123456789-", "978--0123456789"})
+    @DisplayName("Format-only mode matches the documented isValidISBN rules")
+    public void testFormatMatchesReference(String isbn) {
+        assertEquals(referenceFormat(isbn), IsbnValidator.isValidFormat(isbn), isbn);
+        assertEquals(referenceFormat(isbn), new Checkout().isValidISBN(isbn), isbn);
+    }
+
+    @Test
+    @DisplayName("Check-digit mode verifies ISBN-10 and ISBN-13 checksums")
+    public void testCheckDigits() {
+        assertTrue(IsbnValidator.isValid("978-0-306-40615-7"));
+        assertFalse(IsbnValidator.isValid("978-0-306-40615-8"));
+        assertTrue(IsbnValidator.isValid("0-306-40615-2"));
+        assertFalse(IsbnValidator.isValid("0-306-40615-3"));
+        assertTrue(IsbnValidator.isValid("080442957X"));
+        assertFalse(IsbnValidator.isValid("08044295X7"), "X is only allowed as the ISBN-10 check digit");
+        assertFalse(IsbnValidator.isValidFormat("080442957X"), "Format mode keeps rejecting letters");
+        assertFalse(IsbnValidator.isValid(null));
+    }
+
+    @Test
+    @DisplayName("Batch mode validates one ISBN per line of an import buffer")
+    public void testValidateLines() {
+        String lines = "9780306406157\r\nbad\n0306406152\n\n9780306406158\n080442957X";
+        ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.US_ASCII));
+
+        BitSet strict = IsbnValidator.validateLines(buffer, true);
+        BitSet format = IsbnValidator.validateLines(buffer, false);
+
+        BitSet expectedStrict = new BitSet();
+        expectedStrict.set(0);
+        expectedStrict.set(2);
+        expectedStrict.set(5);
+        assertEquals(expectedStrict, strict);
+        BitSet expectedFormat = new BitSet();
+        expectedFormat.set(0);
+        expectedFormat.set(2);
+        expectedFormat.set(4);
+        assertEquals(expectedFormat, format);
+
+        byte[] raw = "xx978-0-306-40615-7yy".getBytes(StandardCharsets.US_ASCII);
+        assertTrue(IsbnValidator.isValid(raw, 2, 17, true));
+    }
+}
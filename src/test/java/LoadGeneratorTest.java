@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the synthetic load generator and its Zipf popularity sampler.
+ */
+public class LoadGeneratorTest {
+
+    @Test
+    @DisplayName("Zipf sampler stays in range and favours low ranks")
+    public void testZipfSkew() {
+        ZipfSampler zipf = new ZipfSampler(1000, 1.0);
+        SplittableRandom random = new SplittableRandom(7);
+        int[] hits = new int[1001];
+        for (int i = 0; i < 100_000; i++) {
+            int rank = zipf.sample(random);
+            assertTrue(rank >= 1 && rank <= 1000);
+            hits[rank]++;
+        }
+        // With s = 1, rank 1 gets about 1 / H(1000) = 13% of draws and rank 2 half as many
+        assertTrue(hits[1] > 11_000 && hits[1] < 15_500, "rank 1 hits: " + hits[1]);
+        assertTrue(hits[1] > 1.7 * hits[2] && hits[1] < 2.3 * hits[2]);
+        assertTrue(hits[1] > 50 * hits[1000]);
+    }
+
+    @Test
+    @DisplayName("A short run exercises every operation and reports result codes")
+    public void testShortRun() {
+        LoadGenerator.Settings settings = new LoadGenerator.Settings()
+                .books(2_000).patrons(300).users(50).duration(Duration.ofMillis(300));
+        LoadGenerator generator = new LoadGenerator(settings);
+        LoadGenerator.Report report = generator.run();
+
+        assertTrue(report.getTotalOperations() > 0);
+        assertTrue(report.getThroughput() > 0);
+        for (LoadGenerator.Operation op : LoadGenerator.Operation.values()) {
+            assertTrue(report.getOperations().get(op) > 0, op + " never ran");
+            assertEquals(report.getOperations().get(op).longValue(), report.getLatencies().get(op).getCount());
+        }
+        assertTrue(report.getResultCodes().getCheckoutResults().get("0.0") > 0);
+        assertNull(generator.getCheckout().getMetrics());
+    }
+}
@@ -0,0 +1,147 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the off-heap columnar inventory and Checkout running on top of it.
+ */
+public class OffHeapInventoryTest {
+
+    private OffHeapInventory inventory;
+    private Checkout checkout;
+
+    @BeforeEach
+    public void setUp() {
+        inventory = new OffHeapInventory(0);
+        checkout = new Checkout(inventory);
+    }
+
+    @Test
+    @DisplayName("Rows keep their fields across chunk boundaries and index resizes")
+    public void testManyTitles() {
+        for (int i = 0; i < 40_000; i++) {
+            checkout.addBook(new Book(String.format("978%010d", i), "Title " + i, "Author " + i,
+                    i % 2 == 0 ? Book.BookType.FICTION : Book.BookType.REFERENCE, 3));
+        }
+        assertEquals(40_000, inventory.size());
+        Book book = checkout.getInventory().get("978-0-0000-3999-9");
+        assertEquals("Title 39999", book.getTitle());
+        assertEquals("Author 39999", book.getAuthor());
+        assertEquals(Book.BookType.REFERENCE, book.getType());
+        assertTrue(book.isReferenceOnly());
+        assertEquals(0, book.getAvailableCopies());
+        assertEquals(20_000, checkout.countBooksByType(Book.BookType.FICTION, true));
+        assertEquals(0, checkout.countBooksByType(Book.BookType.REFERENCE, true));
+        assertEquals(20_000, checkout.countBooksByType(Book.BookType.REFERENCE, false));
+    }
+
+    @Test
+    @DisplayName("Checkout and return through a flyweight update the shared row")
+    public void testCheckoutAndReturn() {
+        checkout.addBook(new Book("978-0-306-40615-7", "Book", "Author", Book.BookType.FICTION, 1));
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+        Book book = checkout.getInventory().get("9780306406157");
+
+        assertEquals(0.0, checkout.checkoutBook(book, patron), 0.001);
+        assertEquals(0, inventory.get("0-306-40615-2").getAvailableCopies());
+        assertEquals(0, checkout.countBooksByType(Book.BookType.FICTION, true));
+        assertEquals(2.0, checkout.checkoutBook(inventory.get("9780306406157"),
+                new Patron("P-2", "Bob", "bob@example.com", Patron.PatronType.STUDENT)), 0.001);
+
+        assertEquals(0.0, checkout.returnBook("9780306406157", patron), 0.001);
+        assertEquals(1, book.getAvailableCopies());
+        assertEquals(1, checkout.countBooksByType(Book.BookType.FICTION, true));
+        assertEquals(book, inventory.get("978-0-306-40615-7"));
+    }
+
+    @Test
+    @DisplayName("Re-adding an ISBN overwrites the row and returns the old values")
+    public void testReplace() {
+        inventory.put(new Book("9780306406157", "First", "Author", Book.BookType.FICTION, 2));
+        Book old = inventory.put(new Book("0-306-40615-2", "Second", null, Book.BookType.TEXTBOOK, 1));
+        assertEquals("First", old.getTitle());
+        assertEquals(2, old.getTotalCopies());
+        assertEquals(1, inventory.size());
+        assertEquals("Second", inventory.get("9780306406157").getTitle());
+        assertNull(inventory.get("9780306406157").getAuthor());
+        assertEquals(0, inventory.countByType(Book.BookType.FICTION, false));
+        assertEquals(1, inventory.countByType(Book.BookType.TEXTBOOK, true));
+
+        inventory.put(new Book("LEGACY-1", "Legacy", "Author", Book.BookType.FICTION, 1));
+        assertEquals("Legacy", checkout.getInventory().get("LEGACY-1").getTitle());
+    }
+
+    @Test
+    @DisplayName("A Book that is not a flyweight is resolved by ISBN, or rejected if the title is missing")
+    public void testForeignBook() {
+        Book original = new Book("978-0-306-40615-7", "Book", "Author", Book.BookType.FICTION, 1);
+        checkout.addBook(original);
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+
+        assertEquals(0.0, checkout.checkoutBook(original, patron), 0.001);
+        assertEquals(0, inventory.get("9780306406157").getAvailableCopies());
+        assertEquals(1, original.getAvailableCopies(), "The caller's object is not the stored row");
+        assertEquals(2.0, checkout.checkoutBook(new Book("0-306-40615-2", "Book", "Author",
+                Book.BookType.FICTION, 1), new Patron("P-2", "Bob", "bob@example.com", Patron.PatronType.STUDENT)),
+                0.001);
+
+        Book missing = new Book("978-0-00-000000-2", "Other", "Author", Book.BookType.FICTION, 1);
+        assertThrows(IllegalArgumentException.class, () -> checkout.checkoutBook(missing, patron));
+        assertEquals(1, patron.getCheckoutCount());
+    }
+
+    @Test
+    @DisplayName("A flyweight decodes its strings once and decodes again after the title is replaced")
+    public void testFlyweightStrings() {
+        inventory.put(new Book("9780306406157", "Title", "Author", Book.BookType.FICTION, 1));
+        Book book = inventory.get("9780306406157");
+        assertSame(book.getIsbn(), book.getIsbn());
+        assertSame(book.getTitle(), book.getTitle());
+        assertSame(book.getAuthor(), book.getAuthor());
+        assertEquals("9780306406157", book.getIsbn());
+        assertEquals("Title", book.getTitle());
+
+        inventory.put(new Book("978-0-306-40615-7", "New title", null, Book.BookType.FICTION, 1));
+        assertEquals("978-0-306-40615-7", book.getIsbn());
+        assertEquals("New title", book.getTitle());
+        assertNull(book.getAuthor());
+    }
+
+    @Test
+    @DisplayName("Concurrent checkouts never take more copies than a row holds")
+    public void testConcurrentCheckouts() throws Exception {
+        checkout.addBook(new Book("9780306406157", "Book", "Author", Book.BookType.FICTION, 5));
+        int threads = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Double>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Patron patron = new Patron("P-" + i, "Patron", "p@example.com", Patron.PatronType.FACULTY);
+            results.add(pool.submit(() -> {
+                start.await();
+                return checkout.checkoutBook(inventory.get("9780306406157"), patron);
+            }));
+        }
+        start.countDown();
+        int successes = 0;
+        for (Future<Double> result : results) {
+            if (result.get() < 2.0) {
+                successes++;
+            }
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(5, successes);
+        assertEquals(0, inventory.get("9780306406157").getAvailableCopies());
+    }
+}
@@ -0,0 +1,56 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the parallel overdue sweep over a whole patron population.
+ */
+public class OverdueSweepTest {
+
+    @Test
+    @DisplayName("Sweep totals every patron's overdue loans and accrued fines in exact cents, and can be re-run")
+    public void testSweepManyPatrons() {
+        Checkout checkout = new Checkout();
+        String fiction = IsbnKeys.toIsbn13(9_780_000_000_000L);
+        String textbook = IsbnKeys.toIsbn13(9_780_000_000_001L);
+        checkout.addBook(new Book(fiction, "Novel", "Author", Book.BookType.FICTION, 1_000));
+        checkout.addBook(new Book(textbook, "Text", "Author", Book.BookType.TEXTBOOK, 1_000));
+        LocalDate today = LocalDate.now();
+
+        long expectedCents = 0;
+        int expectedOverdue = 0;
+        for (int i = 0; i < 500; i++) {
+            String patronId = "P-" + i;
+            checkout.registerPatron(new Patron(patronId, "Patron " + i, i + "@example.com",
+                    Patron.PatronType.FACULTY));
+            // Patron i has a novel i % 7 days overdue (0 = due today) and a textbook due next week
+            int daysOverdue = i % 7;
+            checkout.replayCheckout(patronId, fiction, today.minusDays(30), today.minusDays(daysOverdue));
+            checkout.replayCheckout(patronId, textbook, today.minusDays(7), today.plusDays(7));
+            if (daysOverdue > 0) {
+                expectedCents += checkout.calculateFineCents(daysOverdue, Book.BookType.FICTION);
+                expectedOverdue++;
+            }
+        }
+
+        for (int run = 0; run < 2; run++) {
+            OverdueSweep.Result result = OverdueSweep.run(checkout, today);
+            assertEquals(500, result.getPatrons());
+            assertEquals(1_000, result.getOpenLoans());
+            assertEquals(expectedOverdue, result.getOverdueLoans());
+            assertEquals(expectedCents, result.getAccruedFineCents());
+            assertEquals(expectedCents / 100.0, result.getAccruedFines(), 0.0);
+        }
+
+        Patron threeDays = checkout.getPatrons().get("P-3");
+        assertEquals(1, threeDays.getOverdueCount());
+        assertEquals(checkout.calculateFineCents(3, Book.BookType.FICTION), threeDays.getAccruedFineCents());
+        assertEquals(0, threeDays.getFineBalanceCents(), "The sweep never charges accrued fines");
+        Patron onTime = checkout.getPatrons().get("P-7");
+        assertEquals(0, onTime.getOverdueCount());
+        assertEquals(0, onTime.getAccruedFineCents());
+    }
+}
@@ -0,0 +1,93 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests overdue maintenance: the incremental due-date clock and the full sweep.
+ */
+public class OverdueTrackingTest {
+
+    private Checkout checkout;
+    private Patron patron;
+    private Book novel;
+    private Book textbook;
+
+    @BeforeEach
+    public void setUp() {
+        checkout = new Checkout();
+        patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.CHILD);
+        novel = new Book("9780000000001", "Novel", "Author", Book.BookType.FICTION, 2);
+        textbook = new Book("9780000000002", "Textbook", "Author", Book.BookType.TEXTBOOK, 2);
+        checkout.registerPatron(patron);
+        checkout.addBook(novel);
+        checkout.addBook(textbook);
+        checkout.checkoutBooks(patron, novel, textbook);
+    }
+
+    @Test
+    @DisplayName("Advancing the clock counts loans only once they pass their due date")
+    public void testClockCountsCrossedLoans() {
+        LocalDate due = LocalDate.now().plusDays(patron.getLoanPeriodDays());
+
+        assertEquals(0, checkout.advanceOverdueClock(due));
+        assertEquals(0, patron.getOverdueCount());
+
+        assertEquals(2, checkout.advanceOverdueClock(due.plusDays(1)));
+        assertEquals(2, patron.getOverdueCount());
+        assertEquals(0, checkout.advanceOverdueClock(due.plusDays(30)), "Loans are counted once");
+    }
+
+    @Test
+    @DisplayName("Returning an overdue loan uncounts it")
+    public void testReturnUncounts() {
+        LocalDate due = LocalDate.now().plusDays(patron.getLoanPeriodDays());
+        checkout.advanceOverdueClock(due.plusDays(3));
+        assertEquals(2, patron.getOverdueCount());
+
+        checkout.returnBook(novel.getIsbn(), patron);
+        assertEquals(1, patron.getOverdueCount());
+        checkout.returnBook(textbook.getIsbn(), patron);
+        assertEquals(0, patron.getOverdueCount());
+    }
+
+    @Test
+    @DisplayName("Sweep recomputes overdue counts and accrued fines from open loans")
+    public void testSweep() {
+        patron.setOverdueCount(5);
+        LocalDate today = LocalDate.now().plusDays(patron.getLoanPeriodDays() + 10);
+
+        OverdueSweep.Result result = OverdueSweep.run(checkout, today);
+
+        assertEquals(1, result.getPatrons());
+        assertEquals(2, result.getOpenLoans());
+        assertEquals(2, result.getOverdueLoans());
+        assertEquals(2, patron.getOverdueCount());
+        double expected = checkout.calculateFine(10, Book.BookType.FICTION)
+                + checkout.calculateFine(10, Book.BookType.TEXTBOOK);
+        assertEquals(expected, patron.getAccruedFines(), 0.001);
+        assertEquals(expected, result.getAccruedFines(), 0.001);
+        assertEquals(0.0, patron.getFineBalance(), 0.001, "Accrued fines are not charged by the sweep");
+    }
+
+    @Test
+    @DisplayName("Loans counted by the sweep are not recounted by the clock and are uncounted on return")
+    public void testSweepThenClockThenReturn() {
+        LocalDate due = LocalDate.now().plusDays(patron.getLoanPeriodDays());
+        OverdueSweep.run(checkout, due.plusDays(2));
+        assertEquals(2, patron.getOverdueCount());
+
+        assertEquals(0, checkout.advanceOverdueClock(due.plusDays(3)), "Already counted by the sweep");
+        assertEquals(2, patron.getOverdueCount());
+        OverdueSweep.run(checkout, due.plusDays(4));
+        assertEquals(2, patron.getOverdueCount());
+
+        checkout.returnBook(novel.getIsbn(), patron);
+        assertEquals(1, patron.getOverdueCount());
+        checkout.returnBook(textbook.getIsbn(), patron);
+        assertEquals(0, patron.getOverdueCount());
+    }
+}
@@ -0,0 +1,45 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the compact loan storage inside Patron.
+ */
+public class PatronLoansTest {
+
+    @Test
+    @DisplayName("Loan arrays grow past the limit, remove loans and write through the map view")
+    public void testCompactStorage() {
+        Patron patron = new Patron("P-1", "Kid", "kid@example.com", Patron.PatronType.CHILD);
+        LocalDate due = LocalDate.of(2026, 1, 10);
+        for (int i = 0; i < 5; i++) {
+            patron.addCheckedOutBook("ISBN-" + i, due.plusDays(i));
+        }
+        // Arrays sized for the limit (3) must grow
+        assertEquals(5, patron.getCheckoutCount());
+        assertEquals(due.plusDays(4), patron.getCheckedOutBooks().get("ISBN-4"));
+
+        // Re-adding an ISBN updates its due date instead of adding a loan
+        patron.addCheckedOutBook("ISBN-1", due);
+        assertEquals(5, patron.getCheckoutCount());
+
+        patron.removeCheckedOutBook("ISBN-0");
+        patron.removeCheckedOutBook("missing");
+        assertFalse(patron.hasBookCheckedOut("ISBN-0"));
+        assertTrue(patron.hasBookCheckedOut("ISBN-4"));
+
+        Map<String, LocalDate> view = patron.getCheckedOutBooks();
+        assertEquals(due, view.remove("ISBN-1"));
+        view.put("ISBN-9", null);
+        assertTrue(view.containsKey("ISBN-9"));
+        assertNull(view.get("ISBN-9"));
+        view.entrySet().removeIf(e -> e.getValue() == null);
+        assertEquals(3, patron.getCheckoutCount());
+        assertEquals(Set.of("ISBN-2", "ISBN-3", "ISBN-4"), view.keySet());
+    }
+}
@@ -0,0 +1,106 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests leader/follower replication of the transaction journal over localhost.
+ */
+public class ReplicationTest {
+
+    @TempDir
+    Path dir;
+
+    private static InetSocketAddress local(int port) {
+        return new InetSocketAddress("127.0.0.1", port);
+    }
+
+    @Test
+    @DisplayName("A follower applies the leader's changes in order and can be promoted")
+    public void testFollowAndPromote() throws Exception {
+        Checkout leader = new Checkout();
+        TransactionJournal journal = TransactionJournal.open(dir.resolve("leader.journal"), true);
+        leader.setJournal(journal);
+        leader.addBook(new Book("9780306406157", "Replicated", "Author", Book.BookType.FICTION, 2));
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+        leader.registerPatron(patron);
+
+        ReplicationLeader shipper = new ReplicationLeader(journal, local(0));
+        shipper.start();
+        Checkout replica = new Checkout();
+        ReplicationFollower follower = new ReplicationFollower(replica, dir.resolve("follower.journal"),
+                local(shipper.getPort()));
+        follower.start();
+
+        // Changes made before and after the follower connected both arrive
+        assertEquals(0.0, leader.checkoutBook(leader.getInventory().get("9780306406157"), patron), 0.001);
+        leader.chargeFine(patron, 4.0);
+        assertTrue(follower.awaitApplied(journal.getWrittenOffset(), 5, TimeUnit.SECONDS));
+        assertTrue(shipper.awaitReplicated(journal.getWrittenOffset(), 5, TimeUnit.SECONDS));
+        Patron copy = replica.getPatrons().get("P-1");
+        assertTrue(copy.hasBookCheckedOut("9780306406157"));
+        assertEquals(4.0, copy.getFineBalance(), 0.001);
+        assertEquals(1, replica.getInventory().get("9780306406157").getAvailableCopies());
+
+        // The leader dies; the replica takes over and journals its own writes
+        long leaderEnd = journal.getWrittenOffset();
+        shipper.close();
+        journal.close();
+        assertTrue(follower.awaitLeaderLost(5, TimeUnit.SECONDS));
+        assertFalse(follower.isConnected());
+        try (TransactionJournal promoted = follower.promote(true)) {
+            assertEquals(leaderEnd, promoted.getWrittenOffset());
+            assertEquals(0.0, replica.returnBook("978-0-306-40615-7", copy), 0.001);
+        }
+        Checkout restored = new Checkout();
+        TransactionJournal.replay(dir.resolve("follower.journal"), restored);
+        assertFalse(restored.getPatrons().get("P-1").hasBookCheckedOut("9780306406157"));
+        assertEquals(2, restored.getInventory().get("9780306406157").getAvailableCopies());
+    }
+
+    @Test
+    @DisplayName("A restarted follower resumes from its own journal, and batches span many records")
+    public void testResume() throws Exception {
+        Checkout leader = new Checkout();
+        TransactionJournal journal = TransactionJournal.open(dir.resolve("leader.journal"), false);
+        leader.setJournal(journal);
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.FACULTY);
+        leader.registerPatron(patron);
+        try (ReplicationLeader shipper = new ReplicationLeader(journal, local(0))) {
+            shipper.start();
+            Path followerFile = dir.resolve("follower.journal");
+            ReplicationFollower first = new ReplicationFollower(new Checkout(), followerFile,
+                    local(shipper.getPort()));
+            first.start();
+            for (int i = 0; i < 1_000; i++) {
+                leader.addBook(new Book(IsbnKeys.toIsbn13(9_780_000_000_000L + i), "Title " + i, "Author",
+                        Book.BookType.NONFICTION, 1));
+            }
+            assertTrue(first.awaitApplied(journal.getWrittenOffset(), 5, TimeUnit.SECONDS));
+            first.close();
+            long resumedAt = Files.size(followerFile);
+
+            for (int i = 0; i < 10; i++) {
+                leader.checkoutBook(leader.getInventory().get(IsbnKeys.toIsbn13(9_780_000_000_000L + i)), patron);
+            }
+            Checkout replica = new Checkout();
+            try (ReplicationFollower second = new ReplicationFollower(replica, followerFile,
+                    local(shipper.getPort()))) {
+                assertEquals(resumedAt, second.getAppliedOffset());
+                second.start();
+                assertTrue(second.awaitApplied(journal.getWrittenOffset(), 5, TimeUnit.SECONDS));
+                assertEquals(1_000, replica.countBooksByType(Book.BookType.NONFICTION, false));
+                assertEquals(990, replica.countBooksByType(Book.BookType.NONFICTION, true));
+                assertEquals(10, replica.getPatrons().get("P-1").getCheckoutCount());
+            }
+        } finally {
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests ShardedCheckout routing and cross-shard patron limits.
+ */
+public class ShardedCheckoutTest {
+    private static final long FIRST_KEY = 9_780_000_000_000L;
+
+    private ShardedCheckout checkout;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    public void setUp() {
+        checkout = new ShardedCheckout(4);
+        for (int i = 0; i < 40; i++) {
+            checkout.addBook(new Book(IsbnKeys.toIsbn13(FIRST_KEY + i), "Title " + i, "Author",
+                    Book.BookType.FICTION, 1));
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        checkout.close();
+    }
+
+    @Test
+    @DisplayName("Books spread over all shards and any hyphenation reaches the owning shard")
+    public void testRouting() {
+        for (int i = 0; i < checkout.getShardCount(); i++) {
+            assertTrue(checkout.getShard(i).getInventory().size() > 0);
+        }
+        assertEquals(40, checkout.countBooksByType(Book.BookType.FICTION, true));
+        assertEquals(checkout.shardOf("9780306406157"), checkout.shardOf("978-0-306-40615-7"));
+        assertEquals(checkout.shardOf("9780306406157"), checkout.shardOf("0-306-40615-2"));
+
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+        checkout.registerPatron(patron);
+        String isbn = IsbnKeys.toIsbn13(FIRST_KEY + 7);
+        assertEquals(0.0, checkout.checkoutBook(isbn, patron), 0.001);
+        assertEquals(2.0, checkout.checkoutBook(isbn, new Patron("P-2", "Bob", "bob@example.com",
+                Patron.PatronType.STUDENT)), 0.001);
+        assertEquals(2.1, checkout.checkoutBook("9780306406157", patron), 0.001);
+        assertEquals(39, checkout.countBooksByType(Book.BookType.FICTION, true));
+        assertEquals(0.0, checkout.returnBook(isbn, patron), 0.001);
+        assertEquals(-1.0, checkout.returnBook(isbn, patron), 0.001);
+        assertEquals(40, checkout.countBooksByType(Book.BookType.FICTION, true));
+
+        checkout.chargeFine(patron, 2.5);
+        assertEquals(250, checkout.getFineLedger().getOutstandingCents());
+    }
+
+    @Test
+    @DisplayName("The checkout limit holds across shards when a patron's checkouts race")
+    public void testLimitAcrossShards() {
+        Patron child = new Patron("P-1", "Cam", "cam@example.com", Patron.PatronType.CHILD);
+        checkout.registerPatron(child);
+        List<CompletableFuture<Double>> results = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            results.add(checkout.checkoutBookAsync(IsbnKeys.toIsbn13(FIRST_KEY + i), child));
+        }
+        int succeeded = 0;
+        int refused = 0;
+        for (CompletableFuture<Double> result : results) {
+            double code = result.join();
+            if (code < 2.0) {
+                succeeded++;
+            } else if (code == 3.2) {
+                refused++;
+            }
+        }
+        assertEquals(child.getMaxCheckoutLimit(), succeeded);
+        assertEquals(40 - succeeded, refused);
+        assertEquals(succeeded, child.getCheckoutCount());
+        assertEquals(40 - succeeded, checkout.countBooksByType(Book.BookType.FICTION, true));
+    }
+
+    @Test
+    @DisplayName("The overdue sweep totals a patron's loans on every shard, and holds route to the owning shard")
+    public void testSweepAndHoldsAcrossShards() {
+        Patron patron = new Patron("P-1", "Fay", "fay@example.com", Patron.PatronType.FACULTY);
+        checkout.registerPatron(patron);
+        boolean[] shardsUsed = new boolean[checkout.getShardCount()];
+        for (int i = 0; i < 8; i++) {
+            String isbn = IsbnKeys.toIsbn13(FIRST_KEY + i);
+            shardsUsed[checkout.shardOf(isbn)] = true;
+            assertTrue(checkout.checkoutBook(isbn, patron) < 2.0);
+        }
+        int used = 0;
+        for (boolean shardUsed : shardsUsed) {
+            used += shardUsed ? 1 : 0;
+        }
+        assertTrue(used > 1, "The loans should span shards");
+
+        LocalDate day = LocalDate.now().plusDays(patron.getLoanPeriodDays() + 10);
+        OverdueSweep.Result result = checkout.sweepOverdue(day);
+        long expectedCents = 8 * checkout.getShard(0).calculateFineCents(10, Book.BookType.FICTION);
+        assertEquals(8, result.getOpenLoans());
+        assertEquals(8, result.getOverdueLoans());
+        assertEquals(expectedCents, result.getAccruedFineCents());
+        assertEquals(8, patron.getOverdueCount());
+        assertEquals(expectedCents, patron.getAccruedFineCents());
+
+        String isbn = IsbnKeys.toIsbn13(FIRST_KEY + 3);
+        Patron waiting = new Patron("P-2", "Bob", "bob@example.com", Patron.PatronType.STUDENT);
+        checkout.registerPatron(waiting);
+        assertEquals(1, checkout.placeHold(isbn, waiting));
+        assertEquals(1, checkout.getHoldCount(isbn));
+        assertTrue(checkout.cancelHold(isbn, waiting));
+        assertFalse(checkout.cancelHold(isbn, waiting));
+        assertEquals(0, checkout.getHoldCount(isbn));
+    }
+
+    @Test
+    @DisplayName("Recovery keeps a payment made on shard 0 for a fine charged on another shard")
+    public void testRecoverCrossShardFinePayment() throws Exception {
+        String isbn = IsbnKeys.toIsbn13(FIRST_KEY);
+        int owner = checkout.shardOf(isbn);
+        for (int i = 1; owner == 0; i++) {
+            isbn = IsbnKeys.toIsbn13(FIRST_KEY + i);
+            owner = checkout.shardOf(isbn);
+        }
+        TransactionJournal[] journals = new TransactionJournal[4];
+        try (ShardedCheckout live = new ShardedCheckout(4)) {
+            for (int i = 0; i < journals.length; i++) {
+                journals[i] = TransactionJournal.open(dir.resolve("shard-" + i), true);
+                live.getShard(i).setJournal(journals[i]);
+            }
+            live.addBook(new Book(isbn, "Title", "Author", Book.BookType.FICTION, 1));
+            Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+            live.registerPatron(patron);
+            // A loan that fell due 10 days ago, journaled on the book's shard
+            LocalDate due = LocalDate.now().minusDays(10);
+            journals[owner].appendCheckout("P-1", isbn, due.minusDays(14), due);
+            live.getShard(owner).replayCheckout("P-1", isbn, due.minusDays(14), due);
+
+            double fine = live.returnBook(isbn, patron);
+            assertTrue(fine > 0.0);
+            assertEquals(0.0, live.payFine(patron, fine + 1.0), 0.001);
+            assertEquals(0, live.getFineLedger().getOutstandingCents());
+            for (TransactionJournal journal : journals) {
+                journal.close();
+            }
+        }
+
+        // Restart: shard 0 (holding the payment) is replayed before the fine's shard
+        try (ShardedCheckout recovered = new ShardedCheckout(4)) {
+            for (int i = 0; i < journals.length; i++) {
+                TransactionJournal.replay(dir.resolve("shard-" + i), recovered.getShard(i));
+            }
+            Patron patron = recovered.getPatrons().get("P-1");
+            assertEquals(0, patron.getFineBalanceCents());
+            assertEquals(0, recovered.getFineLedger().getOutstandingCents());
+            assertEquals(0, patron.getCheckoutCount());
+            assertEquals(1, recovered.countBooksByType(Book.BookType.FICTION, true));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests archiving of returned loans to compressed segment files.
+ */
+public class TransactionArchiveTest {
+    private static final long FIRST_KEY = 9_780_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("Returned loans are archived and found by patron and ISBN; open loans are not")
+    public void testArchiveAndFind() throws Exception {
+        Checkout checkout = new Checkout();
+        for (int i = 0; i < 10; i++) {
+            checkout.addBook(new Book(IsbnKeys.toIsbn13(FIRST_KEY + i), "Title " + i, "Author",
+                    i % 2 == 0 ? Book.BookType.FICTION : Book.BookType.TEXTBOOK, 3));
+        }
+        Patron alice = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+        Patron bob = new Patron("P-2", "Bob", "bob@example.com", Patron.PatronType.FACULTY);
+        checkout.registerPatron(alice);
+        checkout.registerPatron(bob);
+
+        try (TransactionArchive archive = TransactionArchive.open(dir, 4)) {
+            checkout.setArchive(archive);
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < 10; i++) {
+                    String isbn = IsbnKeys.toIsbn13(FIRST_KEY + i);
+                    Patron patron = i % 3 == 0 ? bob : alice;
+                    checkout.checkoutBook(checkout.getInventory().get(isbn), patron);
+                    checkout.returnBook(isbn, patron);
+                }
+            }
+            // Still open, so not in the archive
+            checkout.checkoutBook(checkout.getInventory().get(IsbnKeys.toIsbn13(FIRST_KEY)), alice);
+
+            assertEquals(20, archive.getLoanCount());
+            archive.flush();
+            assertEquals(5, archive.getSegmentFileCount());
+
+            List<TransactionArchive.Loan> bobs = archive.findByPatron("P-2");
+            assertEquals(8, bobs.size());
+            assertEquals(Patron.PatronType.FACULTY, bobs.get(0).getPatronType());
+            assertEquals(IsbnKeys.toIsbn13(FIRST_KEY), bobs.get(0).getIsbn());
+            assertEquals(LocalDate.now(), bobs.get(0).getReturnDate());
+            assertEquals(LocalDate.now().plusDays(bob.getLoanPeriodDays()), bobs.get(0).getDueDate());
+
+            String third = IsbnKeys.toIsbn13(FIRST_KEY + 3);
+            String hyphenated = third.substring(0, 3) + "-" + third.substring(3);
+            List<TransactionArchive.Loan> loans = archive.findByIsbn(hyphenated);
+            assertEquals(2, loans.size());
+            assertEquals(Book.BookType.TEXTBOOK, loans.get(0).getBookType());
+            assertTrue(archive.findByPatron("P-9").isEmpty());
+        }
+
+        // Segment files outlive the process
+        try (TransactionArchive reopened = TransactionArchive.open(dir, 4)) {
+            assertEquals(20, reopened.getLoanCount());
+            assertEquals(12, reopened.findByPatron("P-1").size());
+        }
+    }
+
+    @Test
+    @DisplayName("Loans still in memory are visible, and a full segment is written in the background")
+    public void testUnflushedLoans() throws Exception {
+        Checkout checkout = new Checkout();
+        String isbn = IsbnKeys.toIsbn13(FIRST_KEY);
+        checkout.addBook(new Book(isbn, "Title", "Author", Book.BookType.CHILDREN, 1));
+        Patron patron = new Patron("P-1", "Cam", "cam@example.com", Patron.PatronType.CHILD);
+        try (TransactionArchive archive = TransactionArchive.open(dir, 1_000)) {
+            checkout.setArchive(archive);
+            for (int i = 0; i < 2_500; i++) {
+                checkout.checkoutBook(checkout.getInventory().get(isbn), patron);
+                checkout.returnBook(isbn, patron);
+            }
+            assertEquals(2_500, archive.findByIsbn(isbn).size());
+            assertEquals(2_500, archive.getLoanCount());
+            assertEquals(0, archive.getDroppedCount());
+        }
+        try (TransactionArchive reopened = TransactionArchive.open(dir, 1_000)) {
+            assertEquals(3, reopened.getSegmentFileCount());
+            assertEquals(2_500, reopened.findByPatron("P-1").size());
+        }
+    }
+
+    @Test
+    @DisplayName("A loan of a book without a type is archived and read back with a null type")
+    public void testUntypedBook() throws Exception {
+        Checkout checkout = new Checkout();
+        String isbn = IsbnKeys.toIsbn13(FIRST_KEY);
+        checkout.addBook(new Book(isbn, "Title", "Author", null, 1));
+        Patron patron = new Patron("P-1", "Cam", "cam@example.com", Patron.PatronType.CHILD);
+        try (TransactionArchive archive = TransactionArchive.open(dir, 4)) {
+            checkout.setArchive(archive);
+            checkout.checkoutBook(checkout.getInventory().get(isbn), patron);
+            checkout.returnBook(isbn, patron);
+        }
+        try (TransactionArchive reopened = TransactionArchive.open(dir, 4)) {
+            List<TransactionArchive.Loan> loans = reopened.findByIsbn(isbn);
+            assertEquals(1, loans.size());
+            assertNull(loans.get(0).getBookType());
+        }
+    }
+
+    @Test
+    @DisplayName("After a crash, replaying the journal re-archives exactly the loans of the lost open segment")
+    public void testRecoverOpenSegmentFromJournal() throws Exception {
+        Path journalFile = dir.resolve("journal.log");
+        Path archiveDir = dir.resolve("archive");
+        String isbn = IsbnKeys.toIsbn13(FIRST_KEY);
+        Checkout checkout = new Checkout();
+        TransactionJournal journal = TransactionJournal.open(journalFile, true);
+        checkout.setJournal(journal);
+        checkout.addBook(new Book(isbn, "Title", "Author", Book.BookType.FICTION, 1));
+        Patron patron = new Patron("P-1", "Cam", "cam@example.com", Patron.PatronType.STUDENT);
+        checkout.registerPatron(patron);
+
+        TransactionArchive archive = TransactionArchive.open(archiveDir, 4);
+        checkout.setArchive(archive);
+        for (int i = 0; i < 10; i++) {
+            checkout.checkoutBook(checkout.getInventory().get(isbn), patron);
+            checkout.returnBook(isbn, patron);
+        }
+        // Two full segments reach disk; the crash loses the open one with two loans
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (archive.getSegmentFileCount() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, archive.getSegmentFileCount());
+        journal.close();
+
+        Checkout recovered = new Checkout();
+        try (TransactionArchive reopened = TransactionArchive.open(archiveDir, 4)) {
+            assertEquals(8, reopened.getLoanCount());
+            recovered.setArchive(reopened);
+            TransactionJournal.replay(journalFile, recovered);
+            assertEquals(10, reopened.getLoanCount());
+            assertEquals(10, reopened.findByPatron("P-1").size());
+        }
+        try (TransactionArchive reopened = TransactionArchive.open(archiveDir, 4)) {
+            assertEquals(10, reopened.getLoanCount());
+        }
+    }
+}
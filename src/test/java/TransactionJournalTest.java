@@ -0,0 +1,165 @@
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the write-ahead journal can rebuild Checkout state after a restart.
+ */
+public class TransactionJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("Replaying the journal restores inventory, loans and fines")
+    public void testReplayRestoresState() throws Exception {
+        Path file = dir.resolve("checkout.journal");
+        Checkout checkout = new Checkout();
+        try (TransactionJournal journal = TransactionJournal.open(file, true)) {
+            checkout.setJournal(journal);
+            checkout.addBook(new Book("9780123456789", "Journaled", "Author", Book.BookType.FICTION, 2));
+            checkout.addBook(new Book("0123456789", "Second", "Writer", Book.BookType.TEXTBOOK, 1));
+            Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+            checkout.registerPatron(patron);
+
+            assertEquals(0.0, checkout.checkoutBook(checkout.getInventory().get("9780123456789"), patron), 0.001);
+            assertEquals(0.0, checkout.checkoutBook(checkout.getInventory().get("0123456789"), patron), 0.001);
+            assertEquals(0.0, checkout.returnBook("0123456789", patron), 0.001);
+            checkout.chargeFine(patron, 7.50);
+            checkout.payFine(patron, 2.25);
+        }
+
+        Checkout restored = new Checkout();
+        assertTrue(TransactionJournal.replay(file, restored) > 0);
+
+        Patron patron = restored.getPatrons().get("P-1");
+        assertNotNull(patron);
+        assertEquals(Patron.PatronType.STUDENT, patron.getType());
+        assertTrue(patron.hasBookCheckedOut("9780123456789"));
+        assertFalse(patron.hasBookCheckedOut("0123456789"));
+        assertEquals(5.25, patron.getFineBalance(), 0.001);
+        assertEquals(1, restored.getInventory().get("9780123456789").getAvailableCopies());
+        assertEquals(1, restored.getInventory().get("0123456789").getAvailableCopies());
+        assertEquals("Writer", restored.getInventory().get("0123456789").getAuthor());
+    }
+
+    @Test
+    @DisplayName("A torn record at the end of the journal is ignored and truncated")
+    public void testTornTailIsDiscarded() throws Exception {
+        Path file = dir.resolve("torn.journal");
+        try (TransactionJournal journal = TransactionJournal.open(file, true)) {
+            Checkout checkout = new Checkout();
+            checkout.setJournal(journal);
+            checkout.addBook(new Book("9780123456789", "Kept", "Author", Book.BookType.FICTION, 1));
+        }
+        long intact = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(java.nio.ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 1, 2, 3}));
+        }
+
+        Checkout restored = new Checkout();
+        assertEquals(intact, TransactionJournal.replay(file, restored));
+        assertEquals(1, restored.getInventory().size());
+
+        TransactionJournal.open(file, false).close();
+        assertEquals(intact, Files.size(file));
+    }
+
+    @Test
+    @DisplayName("Suspensions, copy counts, untyped books and a patron's state at registration are replayed")
+    public void testReplayRestoresStateChanges() throws Exception {
+        Path file = dir.resolve("changes.journal");
+        Checkout checkout = new Checkout();
+        try (TransactionJournal journal = TransactionJournal.open(file, true)) {
+            checkout.setJournal(journal);
+            checkout.addBook(new Book("9780123456789", "Counted", "Author", Book.BookType.FICTION, 5));
+            checkout.addBook(new Book("LOCAL-7", "Untyped", "Author", null, 1));
+            Patron arriving = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+            arriving.setAccountSuspended(true);
+            arriving.setOverdueCount(2);
+            arriving.addFine(12.50);
+            checkout.registerPatron(arriving);
+            Patron bob = new Patron("P-2", "Bob", "bob@example.com", Patron.PatronType.FACULTY);
+            checkout.registerPatron(bob);
+
+            assertTrue(checkout.setAvailableCopies("978-0-12-345678-9", 3));
+            assertFalse(checkout.setAvailableCopies("9789999999999", 3));
+            checkout.setAccountSuspended(bob, true);
+            checkout.setAccountSuspended(arriving, false);
+        }
+
+        Checkout restored = new Checkout();
+        TransactionJournal.replay(file, restored);
+        Patron alice = restored.getPatrons().get("P-1");
+        assertFalse(alice.isAccountSuspended());
+        assertEquals(2, alice.getOverdueCount());
+        assertEquals(1250, alice.getFineBalanceCents());
+        assertEquals(1250, restored.getFineLedger().getOutstandingCents());
+        assertTrue(restored.getPatrons().get("P-2").isAccountSuspended());
+        assertEquals(3, restored.getInventory().get("9780123456789").getAvailableCopies());
+        assertNull(restored.getInventory().get("LOCAL-7").getType());
+    }
+
+    @Test
+    @DisplayName("Replay maps the journal in windows and stops at the same torn record")
+    public void testWindowedReplay() throws Exception {
+        Path file = dir.resolve("windowed.journal");
+        try (TransactionJournal journal = TransactionJournal.open(file, false)) {
+            Checkout checkout = new Checkout();
+            checkout.setJournal(journal);
+            Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.FACULTY);
+            checkout.registerPatron(patron);
+            for (int i = 0; i < 200; i++) {
+                String isbn = IsbnKeys.toIsbn13(9_780_000_000_000L + i);
+                checkout.addBook(new Book(isbn, "Title " + i, "Author", Book.BookType.FICTION, 1));
+                checkout.checkoutBook(checkout.getInventory().get(isbn), patron);
+                if (i < 197) {
+                    checkout.returnBook(isbn, patron);
+                }
+            }
+        }
+        long intact = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(java.nio.ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 1, 2, 3}));
+        }
+
+        Checkout whole = new Checkout();
+        Checkout windowed = new Checkout();
+        assertEquals(intact, TransactionJournal.replay(file, whole));
+        assertEquals(intact, TransactionJournal.replay(file, windowed, 100));
+        assertEquals(200, windowed.getInventory().size());
+        assertEquals(whole.getPatrons().get("P-1").getCheckedOutBooks(),
+                windowed.getPatrons().get("P-1").getCheckedOutBooks());
+        assertEquals(3, windowed.getPatrons().get("P-1").getCheckedOutBooks().size());
+    }
+
+    @Test
+    @DisplayName("A journal that can no longer append rejects changes before they are applied")
+    public void testRejectedAppendLeavesStateUnchanged() throws Exception {
+        Checkout checkout = new Checkout();
+        Book book = new Book("9780123456789", "Journaled", "Author", Book.BookType.FICTION, 1);
+        checkout.addBook(book);
+        Patron patron = new Patron("P-1", "Alice", "alice@example.com", Patron.PatronType.STUDENT);
+        checkout.registerPatron(patron);
+        TransactionJournal journal = TransactionJournal.open(dir.resolve("closed.journal"), true);
+        checkout.setJournal(journal);
+        journal.close();
+
+        assertThrows(IllegalStateException.class, () -> checkout.checkoutBook(book, patron));
+        assertEquals(1, book.getAvailableCopies());
+        assertFalse(patron.hasBookCheckedOut("9780123456789"));
+        assertThrows(IllegalStateException.class, () -> checkout.addBook(
+                new Book("0123456789", "Second", "Writer", Book.BookType.TEXTBOOK, 1)));
+        assertNull(checkout.getInventory().get("0123456789"));
+        assertThrows(IllegalStateException.class, () -> checkout.registerPatron(
+                new Patron("P-2", "Bob", "bob@example.com", Patron.PatronType.STUDENT)));
+        assertNull(checkout.getPatrons().get("P-2"));
+    }
+}